@@ -0,0 +1,75 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+/**
+ * AppHandles - method handles into the application classes.
+ *
+ * JMH rejects benchmarks in the default package, and a named package cannot import the
+ * application's default-package classes, so the benchmarks call them through these handles.
+ * They are static final, so the JIT inlines them like direct calls.
+ */
+final class AppHandles {
+
+    static final MethodHandle NEW_ANALYSIS;            // () -> MovieAnalysis
+    static final MethodHandle SET_ENGINE;              // (MovieAnalysis, String) -> void
+    static final MethodHandle TOP_MOVIES_DATA;         // (MovieAnalysis, int, int) -> List
+    static final MethodHandle RATING_HISTOGRAM_DATA;   // (MovieAnalysis) -> Map
+    static final MethodHandle GENRE_FIVE_NUMBER;       // (MovieAnalysis) -> Map
+    static final MethodHandle SEARCH_MOVIE;            // (MovieAnalysis, String) -> String
+    static final MethodHandle NEW_RATING_COUNTS;       // () -> RatingCounts
+    static final MethodHandle RATING_COUNTS_ADD;       // (RatingCounts, int, long) -> void
+    static final MethodHandle RATING_COUNTS_COUNT;     // (RatingCounts, int) -> long
+    static final MethodHandle HISTOGRAM_FIVE_NUMBER;   // (RatingCounts) -> double[]
+    static final MethodHandle SHUTDOWN_POOL;           // () -> void
+
+    static {
+        try {
+            Class<?> analysis = Class.forName("MovieAnalysis");
+            Class<?> engine = Class.forName("MovieAnalysis$Engine");
+            Class<?> counts = Class.forName("RatingCounts");
+            Class<?> db = Class.forName("DatabaseConnection");
+            // the application is on the class path too, so the unnamed module grants private access
+            MethodHandles.Lookup a = MethodHandles.privateLookupIn(analysis, MethodHandles.lookup());
+            MethodHandles.Lookup c = MethodHandles.privateLookupIn(counts, MethodHandles.lookup());
+            MethodHandles.Lookup d = MethodHandles.privateLookupIn(db, MethodHandles.lookup());
+
+            NEW_ANALYSIS = a.findConstructor(analysis, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+
+            MethodHandle engineOf = MethodHandles.lookup().findStatic(Enum.class, "valueOf",
+                    MethodType.methodType(Enum.class, Class.class, String.class)).bindTo(engine);
+            MethodHandle setEngine = a.findVirtual(analysis, "setEngine", MethodType.methodType(void.class, engine));
+            SET_ENGINE = MethodHandles.filterArguments(setEngine, 1, engineOf.asType(MethodType.methodType(engine, String.class)))
+                    .asType(MethodType.methodType(void.class, Object.class, String.class));
+
+            TOP_MOVIES_DATA = a.findVirtual(analysis, "getTopMoviesData", MethodType.methodType(List.class, int.class, int.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, int.class, int.class));
+            RATING_HISTOGRAM_DATA = a.findVirtual(analysis, "getRatingHistogramData", MethodType.methodType(java.util.Map.class))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            GENRE_FIVE_NUMBER = a.findVirtual(analysis, "getGenreFiveNumberSummary", MethodType.methodType(java.util.Map.class))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            SEARCH_MOVIE = a.findVirtual(analysis, "searchMovie", MethodType.methodType(String.class, String.class))
+                    .asType(MethodType.methodType(String.class, Object.class, String.class));
+
+            NEW_RATING_COUNTS = c.findConstructor(counts, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            RATING_COUNTS_ADD = c.findVirtual(counts, "add", MethodType.methodType(void.class, int.class, long.class))
+                    .asType(MethodType.methodType(void.class, Object.class, int.class, long.class));
+            RATING_COUNTS_COUNT = c.findVirtual(counts, "count", MethodType.methodType(long.class, int.class))
+                    .asType(MethodType.methodType(long.class, Object.class, int.class));
+            HISTOGRAM_FIVE_NUMBER = c.findVirtual(counts, "fiveNumberSummary", MethodType.methodType(double[].class))
+                    .asType(MethodType.methodType(double[].class, Object.class));
+
+            SHUTDOWN_POOL = d.findStatic(db, "shutdown", MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private AppHandles() {
+    }
+}
@@ -0,0 +1,87 @@
+package bench;
+
+import java.sql.*;
+import java.util.Random;
+
+/**
+ * BenchmarkDatabase - embedded H2 database with the movies schema, seeded for the benchmarks.
+ * - in-memory and kept alive for the whole JVM (DB_CLOSE_DELAY=-1)
+ * - the application reaches it through DatabaseConnection via -Dmovies.db.url, set by use()
+ * - seeding is deterministic: the same size always produces the same rows
+ */
+public class BenchmarkDatabase {
+
+    // YEAR is a keyword in H2 but a column name here; H2 would otherwise hand back the previous
+    // result of a repeated query over unchanged tables without running it
+    static final String URL = "jdbc:h2:mem:movies_bench;DB_CLOSE_DELAY=-1;NON_KEYWORDS=YEAR;OPTIMIZE_REUSE_RESULTS=FALSE";
+    static final String USER = "sa";
+
+    private static final String[] GENRES = {"Drama", "Comedy", "Action", "Thriller", "Romance", "Horror", "Sci-Fi", "Documentary"};
+    private static final String[] ADJECTIVES = {"Dark", "Last", "Silent", "Golden", "Lost", "Hidden", "Broken", "Endless", "Wild", "Secret"};
+    private static final String[] NOUNS = {"Night", "River", "Empire", "Garden", "Storm", "Kingdom", "Road", "Dream", "Island", "Machine"};
+
+    /** Point DatabaseConnection at the embedded database; call before the first query. */
+    static void use() {
+        System.setProperty("movies.db.url", URL);
+        System.setProperty("movies.db.user", USER);
+        System.setProperty("movies.db.password", "");
+    }
+
+    /**
+     * (Re)create the tables and fill them with {@code ratings} ratings over
+     * ratings/100 movies and ratings/50 users (at least 100 of each).
+     */
+    static void seed(int ratings) throws SQLException {
+        int movies = Math.max(100, ratings / 100);
+        int users = Math.max(100, ratings / 50);
+        Random random = new Random(42);
+
+        try (Connection conn = DriverManager.getConnection(URL, USER, "");
+             Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS ratings");
+            st.execute("DROP TABLE IF EXISTS users");
+            st.execute("DROP TABLE IF EXISTS movies");
+            st.execute("CREATE TABLE movies (movie_id VARCHAR(20) PRIMARY KEY, title VARCHAR(200), genre VARCHAR(50), year INT)");
+            st.execute("CREATE TABLE users (user_id VARCHAR(20) PRIMARY KEY, first_name VARCHAR(50), last_name VARCHAR(50), age INT)");
+            st.execute("CREATE TABLE ratings (rating_id VARCHAR(20) PRIMARY KEY, user_id VARCHAR(20), movie_id VARCHAR(20), rating INT)");
+
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO movies VALUES (?, ?, ?, ?)")) {
+                for (int i = 0; i < movies; i++) {
+                    ps.setString(1, "m" + i);
+                    ps.setString(2, "The " + ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " "
+                            + NOUNS[random.nextInt(NOUNS.length)] + " " + i);
+                    ps.setString(3, GENRES[random.nextInt(GENRES.length)]);
+                    ps.setInt(4, 1950 + random.nextInt(75));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO users VALUES (?, ?, ?, ?)")) {
+                for (int i = 0; i < users; i++) {
+                    ps.setString(1, "u" + i);
+                    ps.setString(2, "First" + i);
+                    ps.setString(3, "Last" + i);
+                    ps.setInt(4, 12 + random.nextInt(70));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO ratings VALUES (?, ?, ?, ?)")) {
+                for (int i = 0; i < ratings; i++) {
+                    ps.setString(1, "r" + i);
+                    ps.setString(2, "u" + random.nextInt(users));
+                    ps.setString(3, "m" + random.nextInt(movies));
+                    ps.setInt(4, 1 + random.nextInt(10));
+                    ps.addBatch();
+                    if (i % 10_000 == 9_999) ps.executeBatch();
+                }
+                ps.executeBatch();
+            }
+            conn.commit();
+
+            st.execute("CREATE INDEX idx_ratings_movie ON ratings (movie_id)");
+            st.execute("CREATE INDEX idx_ratings_user ON ratings (user_id)");
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * BenchmarkMain - runs the JMH benchmarks with the GC profiler, so every result reports
+ * allocation per operation (gc.alloc.rate.norm) next to throughput and average time.
+ *
+ * Takes the usual JMH arguments, e.g.
+ *   bench.BenchmarkMain QuantileBenchmark
+ *   bench.BenchmarkMain MovieAnalysisBenchmark -p ratings=100000 -p engine=SQL -rf json
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
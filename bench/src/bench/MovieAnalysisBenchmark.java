@@ -0,0 +1,65 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static bench.AppHandles.*;
+
+/**
+ * MovieAnalysisBenchmark - the MovieAnalysis data methods end to end (pool, query, mapping)
+ * against the embedded BenchmarkDatabase, for each dataset size and engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MovieAnalysisBenchmark {
+
+    /** Number of ratings; movies and users scale with it. */
+    @Param({"10000", "100000", "1000000"})
+    public int ratings;
+
+    @Param({"SQL", "SNAPSHOT", "AGGREGATES"})
+    public String engine;
+
+    private Object analysis;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        BenchmarkDatabase.use();
+        BenchmarkDatabase.seed(ratings);
+        analysis = NEW_ANALYSIS.invokeExact();
+        SET_ENGINE.invokeExact(analysis, engine);
+        // load the in-memory engines outside the measurement
+        TOP_MOVIES_DATA.invoke(analysis, 10, 5);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        SHUTDOWN_POOL.invokeExact();
+    }
+
+    @Benchmark
+    public Object topMoviesData() throws Throwable {
+        return (Object) TOP_MOVIES_DATA.invokeExact(analysis, 10, 5);
+    }
+
+    @Benchmark
+    public Object ratingHistogramData() throws Throwable {
+        return (Object) RATING_HISTOGRAM_DATA.invokeExact(analysis);
+    }
+
+    @Benchmark
+    public Object genreFiveNumberSummary() throws Throwable {
+        return (Object) GENRE_FIVE_NUMBER.invokeExact(analysis);
+    }
+
+    // always SQL (LIKE '%...%'), whatever the engine
+    @Benchmark
+    public String searchMovie() throws Throwable {
+        return (String) SEARCH_MOVIE.invokeExact(analysis, "Golden River");
+    }
+}
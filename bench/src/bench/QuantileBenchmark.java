@@ -0,0 +1,95 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static bench.AppHandles.*;
+
+/**
+ * QuantileBenchmark - the pure-Java five-number summary: the list-based version MovieAnalysis
+ * used to compute over every sorted rating, kept here as the baseline, against the
+ * RatingCounts histogram that replaced it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuantileBenchmark {
+
+    /** Number of ratings in the group. */
+    @Param({"100", "10000", "1000000"})
+    public int size;
+
+    private List<Integer> sorted;
+    private Object counts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        counts = NEW_RATING_COUNTS.invokeExact();
+        Random random = new Random(42);
+        sorted = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int rating = 1 + random.nextInt(10);
+            sorted.add(rating);
+            RATING_COUNTS_ADD.invokeExact(counts, rating, 1L);
+        }
+        sorted.sort(null);
+    }
+
+    @Benchmark
+    public double[] listFiveNumberSummary() {
+        return fiveNumberSummary(sorted);
+    }
+
+    @Benchmark
+    public double listMedian() {
+        return medianOfList(sorted, 0, sorted.size() - 1);
+    }
+
+    @Benchmark
+    public double[] histogramFiveNumberSummary() throws Throwable {
+        return (double[]) HISTOGRAM_FIVE_NUMBER.invokeExact(counts);
+    }
+
+    // what the grouped query path pays per group: fill a histogram, then summarize
+    @Benchmark
+    public double[] histogramBuildAndSummary() throws Throwable {
+        Object c = NEW_RATING_COUNTS.invokeExact();
+        for (int r = 1; r <= 10; r++) {
+            RATING_COUNTS_ADD.invokeExact(c, r, (long) RATING_COUNTS_COUNT.invokeExact(counts, r));
+        }
+        return (double[]) HISTOGRAM_FIVE_NUMBER.invokeExact(c);
+    }
+
+    // -------------------------
+    // List-based baseline
+    // -------------------------
+
+    static double[] fiveNumberSummary(List<Integer> sorted) {
+        if (sorted == null || sorted.isEmpty()) return new double[]{0, 0, 0, 0, 0};
+        int n = sorted.size();
+        double min = sorted.get(0);
+        double max = sorted.get(n - 1);
+        double median = medianOfList(sorted, 0, n - 1);
+        int loEnd = n / 2 - 1;
+        int hiStart = n % 2 == 0 ? n / 2 : n / 2 + 1;
+        double q1 = medianOfList(sorted, 0, Math.max(loEnd, 0));
+        double q3 = medianOfList(sorted, hiStart, n - 1);
+        return new double[]{min, q1, median, q3, max};
+    }
+
+    // median of sorted[from..to] inclusive
+    static double medianOfList(List<Integer> sorted, int from, int to) {
+        if (from > to) return 0;
+        int len = to - from + 1;
+        int mid = from + (len - 1) / 2;
+        if (len % 2 == 1) return sorted.get(mid);
+        return (sorted.get(mid) + sorted.get(mid + 1)) / 2.0;
+    }
+}
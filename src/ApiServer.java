@@ -0,0 +1,521 @@
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ApiServer - the dashboard analyses as JSON over HTTP, without the GUI.
+ * - GET /api/top?limit=10&minVotes=5        getTopMoviesData
+ * - GET /api/histogram                      getRatingHistogramData
+ * - GET /api/genres/summary                 getGenreFiveNumberSummary
+ * - GET /api/search?q=TITLE&limit=20&after= searchMoviesPage; pass the returned next to continue
+ * - GET /api/recommendations?user=ID&n=10   getRecommendationsData, top movies for unknown users
+ *
+ * Built on the JDK HttpServer with one virtual thread per request. Queries go through a
+ * CachedMovieAnalysis, and at most -Dmovies.http.maxConcurrent requests (default 8) run at
+ * once; the rest wait up to -Dmovies.http.queueMillis (default 2000) and then get 503.
+ * Keep the limit below -Dmovies.pool.maxSize.
+ *
+ * Responses carry a strong ETag (CRC32C of the body), so a client sending it back in
+ * If-None-Match gets 304 while the result is unchanged, and bodies of 1 KB or more are
+ * gzipped for clients that accept it; the gzipped body's tag ends in -gz, since its bytes
+ * differ. While the cache hands back the same result object, its serialized (and
+ * compressed) bytes are reused instead of being rebuilt. The result of a call whose query
+ * failed is answered with 503 rather than served and tagged as if it were data.
+ *
+ * Usage: ApiServer [--port N]   (default -Dmovies.http.port, 8080)
+ */
+public final class ApiServer implements AutoCloseable {
+
+    private static final int MAX_CONCURRENT = Integer.getInteger("movies.http.maxConcurrent", 8);
+    private static final long QUEUE_MILLIS = Long.getLong("movies.http.queueMillis", 2_000);
+    private static final int GZIP_MIN_BYTES = 1024;
+    private static final int MAX_LIMIT = 500;
+    private static final int RENDERED_MAX_ENTRIES = 256;
+
+    /** A bad query parameter; answered with 400. */
+    private static final class BadRequest extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BadRequest(String message) {
+            super(message);
+        }
+    }
+
+    /** Serialized response for the result object it was built from. */
+    private record Rendered(Object source, byte[] json, byte[] gzip, String etag, String gzipEtag) {}
+
+    @FunctionalInterface
+    private interface Endpoint {
+        /** The result to serialize; its identity decides whether cached bytes can be reused. */
+        Object query(Map<String, String> params);
+    }
+
+    @FunctionalInterface
+    private interface Serializer {
+        void write(Json json, Object result);
+    }
+
+    private final CachedMovieAnalysis analysis = new CachedMovieAnalysis();
+    private final Semaphore permits = new Semaphore(MAX_CONCURRENT, true);
+    private final ConcurrentHashMap<String, Rendered> rendered = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpServer server;
+
+    public ApiServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+
+        route("/api/top", p -> analysis.getTopMoviesData(limit(p, "limit", 10), intParam(p, "minVotes", 5, 0, Integer.MAX_VALUE)),
+                (json, r) -> writeMovieStats(json, cast(r)));
+        route("/api/histogram", p -> analysis.getRatingHistogramData(), ApiServer::writeHistogram);
+        route("/api/genres/summary", p -> analysis.getGenreFiveNumberSummary(), ApiServer::writeFiveNumberSummary);
+        route("/api/search", this::search, ApiServer::writeSearchPage);
+        route("/api/recommendations", this::recommendations, ApiServer::writeRecommendations);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    // -------------------------
+    // Endpoints
+    // -------------------------
+
+    private Object search(Map<String, String> p) {
+        String q = p.get("q");
+        if (q == null || q.isBlank()) throw new BadRequest("q is required");
+        return analysis.searchMoviesPage(q.trim(), parseCursor(p.get("after")), limit(p, "limit", 20));
+    }
+
+    // personalized when the model knows the user, else the top-rated list like getRecommendedText
+    private Object recommendations(Map<String, String> p) {
+        int n = limit(p, "n", 10);
+        List<ItemBasedRecommender.Recommendation> recs = analysis.getRecommendationsData(p.get("user"), n);
+        return recs.isEmpty() ? analysis.getTopMoviesData(n, 5) : recs;
+    }
+
+    private static MovieAnalysis.SearchCursor parseCursor(String token) {
+        if (token == null || token.isEmpty()) return null;
+        int colon = token.indexOf(':');
+        if (colon < 0 || colon == token.length() - 1) throw new BadRequest("Malformed after cursor");
+        try {
+            BigDecimal avg = colon == 0 ? null : new BigDecimal(token.substring(0, colon));
+            return new MovieAnalysis.SearchCursor(avg, token.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            throw new BadRequest("Malformed after cursor");
+        }
+    }
+
+    private static String cursorToken(MovieAnalysis.SearchCursor cursor) {
+        return (cursor.avgRating() == null ? "" : cursor.avgRating().toPlainString()) + ":" + cursor.movieId();
+    }
+
+    // -------------------------
+    // Serialization
+    // -------------------------
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object o) {
+        return (T) o;
+    }
+
+    private static void writeMovieStats(Json json, List<MovieAnalysis.MovieStat> stats) {
+        json.beginArray();
+        for (MovieAnalysis.MovieStat s : stats) {
+            json.beginObject().name("title").value(s.title()).name("avgRating").value(s.avgRating())
+                    .name("votes").value(s.votes()).endObject();
+        }
+        json.endArray();
+    }
+
+    private static void writeHistogram(Json json, Object result) {
+        Map<Integer, Integer> histogram = cast(result);
+        json.beginObject();
+        for (var e : histogram.entrySet()) json.name(String.valueOf(e.getKey())).value(e.getValue());
+        json.endObject();
+    }
+
+    private static void writeFiveNumberSummary(Json json, Object result) {
+        Map<String, double[]> summary = cast(result);
+        json.beginArray();
+        for (var e : summary.entrySet()) {
+            double[] s = e.getValue();
+            json.beginObject().name("genre").value(e.getKey())
+                    .name("min").value(s[0]).name("q1").value(s[1]).name("median").value(s[2])
+                    .name("q3").value(s[3]).name("max").value(s[4]).endObject();
+        }
+        json.endArray();
+    }
+
+    private static void writeSearchPage(Json json, Object result) {
+        MovieAnalysis.SearchPage page = cast(result);
+        json.beginObject().name("hits").beginArray();
+        for (TitleSearchIndex.Hit h : page.hits()) {
+            json.beginObject().name("movieId").value(h.movieId()).name("title").value(h.title())
+                    .name("genre").value(h.genre()).name("avgRating").value(h.avgRating())
+                    .name("votes").value(h.votes()).endObject();
+        }
+        json.endArray().name("next").value(page.next() == null ? null : cursorToken(page.next())).endObject();
+    }
+
+    private static void writeRecommendations(Json json, Object result) {
+        List<?> list = cast(result);
+        boolean personalized = !list.isEmpty() && list.get(0) instanceof ItemBasedRecommender.Recommendation;
+        json.beginObject().name("personalized").value(personalized).name("movies");
+        if (personalized) {
+            json.beginArray();
+            for (Object o : list) {
+                ItemBasedRecommender.Recommendation r = (ItemBasedRecommender.Recommendation) o;
+                json.beginObject().name("movieId").value(r.movieId()).name("title").value(r.title())
+                        .name("predictedRating").value(r.predictedRating()).endObject();
+            }
+            json.endArray();
+        } else {
+            writeMovieStats(json, cast(list));
+        }
+        json.endObject();
+    }
+
+    /**
+     * Minimal streaming JSON writer over one StringBuilder: no intermediate maps or
+     * reflection, commas tracked per nesting level in a bit set.
+     */
+    static final class Json {
+        private final StringBuilder sb = new StringBuilder(256);
+        private long needsComma;   // bit d: the next value at depth d needs a comma
+        private int depth;
+        private boolean afterName;
+
+        Json beginObject() {
+            separate();
+            sb.append('{');
+            depth++;
+            return this;
+        }
+
+        Json endObject() {
+            sb.append('}');
+            close();
+            return this;
+        }
+
+        Json beginArray() {
+            separate();
+            sb.append('[');
+            depth++;
+            return this;
+        }
+
+        Json endArray() {
+            sb.append(']');
+            close();
+            return this;
+        }
+
+        Json name(String name) {
+            separate();
+            string(name);
+            sb.append(':');
+            afterName = true;
+            return this;
+        }
+
+        Json value(String s) {
+            separate();
+            if (s == null) sb.append("null");
+            else string(s);
+            return this;
+        }
+
+        Json value(long v) {
+            separate();
+            sb.append(v);
+            return this;
+        }
+
+        Json value(double v) {
+            separate();
+            if (Double.isNaN(v) || Double.isInfinite(v)) sb.append("null");
+            else sb.append(v);
+            return this;
+        }
+
+        Json value(Double v) {
+            return v == null ? value((String) null) : value(v.doubleValue());
+        }
+
+        Json value(boolean v) {
+            separate();
+            sb.append(v);
+            return this;
+        }
+
+        byte[] toBytes() {
+            return sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        private void separate() {
+            if (afterName) {
+                afterName = false;
+                return;
+            }
+            long bit = 1L << depth;
+            if ((needsComma & bit) != 0) sb.append(',');
+            needsComma |= bit;
+        }
+
+        private void close() {
+            needsComma &= ~(1L << depth);
+            depth--;
+        }
+
+        private void string(String s) {
+            sb.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"' -> sb.append("\\\"");
+                    case '\\' -> sb.append("\\\\");
+                    case '\n' -> sb.append("\\n");
+                    case '\r' -> sb.append("\\r");
+                    case '\t' -> sb.append("\\t");
+                    default -> {
+                        if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                        else sb.append(c);
+                    }
+                }
+            }
+            sb.append('"');
+        }
+    }
+
+    // -------------------------
+    // HTTP
+    // -------------------------
+
+    private void route(String path, Endpoint endpoint, Serializer serializer) {
+        server.createContext(path, exchange -> {
+            try (exchange) {
+                handle(exchange, path, endpoint, serializer);
+            }
+        });
+    }
+
+    private void handle(HttpExchange exchange, String path, Endpoint endpoint, Serializer serializer) throws IOException {
+        try {
+            drain(exchange.getRequestBody());
+            if (!exchange.getRequestURI().getPath().equals(path)) {
+                sendError(exchange, 404, "Not found");
+                return;
+            }
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                sendError(exchange, 405, "Only GET and HEAD are supported");
+                return;
+            }
+            if (!permits.tryAcquire(QUEUE_MILLIS, TimeUnit.MILLISECONDS)) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 503, "Server busy");
+                return;
+            }
+            try {
+                QueryMetrics.CallSummary before = QueryMetrics.lastCallOnThisThread();
+                Object result = endpoint.query(params(exchange.getRequestURI().getRawQuery()));
+                QueryMetrics.CallSummary call = QueryMetrics.lastCallOnThisThread();
+                if (call != null && call != before && call.error()) {
+                    // MovieAnalysis prints the SQLException and returns empty or zero-filled data
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    sendError(exchange, 503, "Database error");
+                    return;
+                }
+                send(exchange, render(exchange.getRequestURI().toString(), result, serializer));
+            } finally {
+                permits.release();
+            }
+        } catch (BadRequest e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            sendError(exchange, 500, "Internal error");
+        }
+    }
+
+    // reuses the bytes built for the same result object, e.g. while CachedMovieAnalysis returns it
+    private Rendered render(String key, Object result, Serializer serializer) {
+        Rendered r = rendered.get(key);
+        if (r != null && r.source() == result) return r;
+
+        Json json = new Json();
+        serializer.write(json, result);
+        byte[] body = json.toBytes();
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        String tag = Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(body.length);
+        r = new Rendered(result, body, body.length >= GZIP_MIN_BYTES ? gzip(body) : null,
+                "\"" + tag + "\"", "\"" + tag + "-gz\"");
+
+        if (rendered.size() >= RENDERED_MAX_ENTRIES) rendered.clear();   // arbitrary query strings must not grow it forever
+        rendered.put(key, r);
+        return r;
+    }
+
+    private static void send(HttpExchange exchange, Rendered r) throws IOException {
+        Headers h = exchange.getResponseHeaders();
+        boolean gzip = r.gzip() != null && acceptsGzip(exchange.getRequestHeaders());
+        String etag = gzip ? r.gzipEtag() : r.etag();
+        h.set("ETag", etag);
+        h.set("Cache-Control", "no-cache");
+        h.set("Vary", "Accept-Encoding");
+        if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        h.set("Content-Type", "application/json; charset=utf-8");
+        byte[] body = r.json();
+        if (gzip) {
+            h.set("Content-Encoding", "gzip");
+            body = r.gzip();
+        }
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        try {
+            Json json = new Json();
+            json.beginObject().name("error").value(message).endObject();
+            byte[] body = json.toBytes();
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (IOException e) {
+            // client went away
+        }
+    }
+
+    // If-None-Match holds a list of tags or *; weak tags (W/) compare equal for GET
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    private static boolean acceptsGzip(Headers headers) {
+        List<String> values = headers.get("Accept-Encoding");
+        if (values == null) return false;
+        for (String v : values) {
+            for (String coding : v.split(",")) {
+                String c = coding.trim().toLowerCase(Locale.ROOT);
+                if (c.equals("gzip") || (c.startsWith("gzip;") && !c.replace(" ", "").endsWith("q=0"))) return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(bytes)) {
+            gz.write(body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);   // in-memory streams don't fail
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        try (in) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private static Map<String, String> params(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return params;
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.putIfAbsent(name, value);
+        }
+        return params;
+    }
+
+    // a result count: 1..MAX_LIMIT
+    private static int limit(Map<String, String> params, String name, int defaultValue) {
+        return intParam(params, name, defaultValue, 1, MAX_LIMIT);
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue, int min, int max) {
+        String v = params.get(name);
+        if (v == null || v.isEmpty()) return defaultValue;
+        try {
+            int n = Integer.parseInt(v);
+            if (n < min || n > max) {
+                throw new BadRequest(max == Integer.MAX_VALUE ? name + " must be at least " + min
+                        : name + " must be between " + min + " and " + max);
+            }
+            return n;
+        } catch (NumberFormatException e) {
+            throw new BadRequest(name + " must be a number");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = Integer.getInteger("movies.http.port", 8080);
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                default -> {
+                    System.err.println("Usage: ApiServer [--port N]");
+                    System.exit(2);
+                }
+            }
+        }
+        ApiServer server = new ApiServer(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            DatabaseConnection.shutdown();
+        }));
+        server.start();
+        System.out.println("Serving the movie analyses on http://localhost:" + server.port() + "/api/");
+    }
+}
@@ -0,0 +1,75 @@
+import javafx.application.Platform;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * AsyncQueryExecutor - runs MovieAnalysis calls off the FX application thread.
+ * - every query runs on its own virtual thread
+ * - results are handed back on the FX thread via Platform.runLater
+ * - latest-wins: submitting a new query cancels the one still in flight,
+ *   including the JDBC statement it is executing (see QueryCancellation)
+ */
+public class AsyncQueryExecutor implements AutoCloseable {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicReference<QueryCancellation.Ticket> latest = new AtomicReference<>();
+    private final Consumer<Boolean> busyListener;
+
+    /**
+     * @param busyListener called on the FX thread with true when a query starts
+     *                     and false when the latest query has delivered its result
+     */
+    public AsyncQueryExecutor(Consumer<Boolean> busyListener) {
+        this.busyListener = busyListener;
+    }
+
+    /**
+     * Run {@code query} in the background and pass its result to {@code onResult} on the FX thread.
+     * The result is dropped if another query was submitted in the meantime.
+     */
+    public <T> void submit(Supplier<T> query, Consumer<T> onResult, Consumer<Throwable> onError) {
+        QueryCancellation.Ticket ticket = new QueryCancellation.Ticket();
+        QueryCancellation.Ticket previous = latest.getAndSet(ticket);
+        if (previous != null) previous.cancel();
+        busyListener.accept(true);
+
+        executor.execute(() -> {
+            T result = null;
+            Throwable error = null;
+            try {
+                result = QueryCancellation.runWith(ticket, query);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+
+            T finalResult = result;
+            Throwable finalError = error;
+            Platform.runLater(() -> {
+                if (latest.get() != ticket) return;   // superseded by a newer click
+                busyListener.accept(false);
+                if (finalError != null) onError.accept(finalError);
+                else onResult.accept(finalResult);
+            });
+        });
+    }
+
+    /** Cancel the query in flight, if any, and drop its result. Call on the FX thread. */
+    public void cancel() {
+        QueryCancellation.Ticket current = latest.getAndSet(null);
+        if (current != null) {
+            current.cancel();
+            busyListener.accept(false);
+        }
+    }
+
+    @Override
+    public void close() {
+        QueryCancellation.Ticket current = latest.getAndSet(null);
+        if (current != null) current.cancel();
+        executor.shutdownNow();
+    }
+}
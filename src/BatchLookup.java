@@ -0,0 +1,88 @@
+import java.sql.*;
+import java.util.*;
+
+/**
+ * BatchLookup - reads the rows for many keys with a few IN (...) queries, not one query per key.
+ * - at most -Dmovies.lookup.batchSize keys per query; a key is one id, or a tuple of ids
+ *   for a composite key such as (user_id, movie_id)
+ * - IN lists are padded to a power of two by repeating the last key, so the pool's
+ *   statement cache sees a handful of SQL strings rather than one per list length
+ * - rows come back under the database's spelling of an id. MySQL's usual collations match
+ *   ids case-insensitively and ignore trailing spaces, so on MySQL key() folds both the ids
+ *   asked for and the ids returned to one form; other databases compare ids exactly
+ * - cancellable() lookups run their statements through QueryCancellation, for reads made
+ *   on behalf of a request; writers use plain ones, so a click never cancels a write
+ */
+final class BatchLookup {
+
+    static final int BATCH_SIZE = Integer.getInteger("movies.lookup.batchSize", 500);
+
+    private final Connection conn;
+    private final boolean mySql;
+    private final boolean cancellable;
+
+    private BatchLookup(Connection conn, boolean mySql, boolean cancellable) {
+        this.conn = conn;
+        this.mySql = mySql;
+        this.cancellable = cancellable;
+    }
+
+    static BatchLookup on(Connection conn) throws SQLException {
+        return new BatchLookup(conn, StreamingQuery.isMySql(conn), false);
+    }
+
+    /** The same lookup, with statements the current QueryCancellation ticket can cancel. */
+    BatchLookup cancellable() {
+        return new BatchLookup(conn, mySql, true);
+    }
+
+    boolean isMySql() {
+        return mySql;
+    }
+
+    /**
+     * Run {@code sql}, whose "%s" stands for the contents of an IN list, once per batch of
+     * {@code keys}, handing every row to {@code handler}. All keys have the same length.
+     */
+    void forEach(String sql, List<String[]> keys, StreamingQuery.RowHandler handler) throws SQLException {
+        forEach(sql, keys, BATCH_SIZE, handler);
+    }
+
+    void forEach(String sql, List<String[]> keys, int batchSize, StreamingQuery.RowHandler handler)
+            throws SQLException {
+        if (keys.isEmpty()) return;
+        int arity = keys.get(0).length;
+        String one = arity == 1 ? "?" : "(" + String.join(", ", Collections.nCopies(arity, "?")) + ")";
+        for (int from = 0; from < keys.size(); from += batchSize) {
+            List<String[]> chunk = keys.subList(from, Math.min(keys.size(), from + batchSize));
+            int slots = Math.min(batchSize, chunk.size() == 1 ? 1 : Integer.highestOneBit(chunk.size() - 1) << 1);
+            PreparedStatement prepared = conn.prepareStatement(
+                    String.format(sql, String.join(", ", Collections.nCopies(slots, one))));
+            try (PreparedStatement ps = cancellable ? QueryCancellation.track(prepared) : prepared) {
+                int p = 1;
+                for (int i = 0; i < slots; i++) {
+                    for (String v : chunk.get(Math.min(i, chunk.size() - 1))) ps.setString(p++, v);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        if (!handler.row(rs)) return;
+                    }
+                }
+            }
+        }
+    }
+
+    /** The form ids are matched on; null stays null. */
+    String key(String id) {
+        return mySql ? fold(id) : id;
+    }
+
+    /** {@code id} as MySQL's usual collations compare it: lower case, trailing spaces removed. */
+    static String fold(String id) {
+        return id == null ? null : id.stripTrailing().toLowerCase(Locale.ROOT);
+    }
+
+    String key(String first, String second) {
+        return key(first) + '\u0000' + key(second);
+    }
+}
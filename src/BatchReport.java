@@ -0,0 +1,235 @@
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * BatchReport - the Main console report, computed with as few ratings scans as possible.
+ *
+ * The report's four sections need only three distinct analyses: "top rated" and
+ * "recommended" are the same query, so it runs once and is printed twice.
+ * - SINGLE_SCAN: one GROUP BY over ratings ⋈ movies ⋈ users yields per-movie sum/count,
+ *   genre × rating and age group × rating counts together
+ * - PARALLEL: the three distinct queries run concurrently on separate pooled connections
+ *
+ * Output matches MovieAnalysis' console methods line for line and in the same order.
+ */
+public class BatchReport {
+
+    public enum Strategy { SINGLE_SCAN, PARALLEL }
+
+    private static final String TOP_MOVIES_SQL = """
+            SELECT m.title, AVG(r.rating) AS avg_rating, COUNT(r.rating) AS rating_count
+            FROM ratings r
+            JOIN movies m ON r.movie_id = m.movie_id
+            GROUP BY m.movie_id, m.title
+            HAVING COUNT(r.rating) >= 5
+            ORDER BY avg_rating DESC
+            LIMIT 10
+            """;
+
+    private static final String GENRE_SQL = """
+            SELECT m.genre, r.rating, COUNT(*) AS count
+            FROM ratings r
+            JOIN movies m ON r.movie_id = m.movie_id
+            GROUP BY m.genre, r.rating
+            ORDER BY m.genre, r.rating
+            """;
+
+    private static final String AGE_GROUP_SQL = """
+            SELECT CASE
+                WHEN u.age < 18 THEN 'Under 18'
+                WHEN u.age BETWEEN 18 AND 35 THEN '18-35'
+                WHEN u.age BETWEEN 36 AND 50 THEN '36-50'
+                ELSE '50+'
+            END AS age_group,
+            r.rating,
+            COUNT(*) AS count
+            FROM ratings r
+            JOIN users u ON r.user_id = u.user_id
+            GROUP BY age_group, r.rating
+            ORDER BY age_group, r.rating
+            """;
+
+    // one scan: every (movie, age group, rating) combination with its count;
+    // movie columns are NULL for ratings without a movie, age_group for ratings without a user
+    private static final String COMBINED_SQL = """
+            SELECT m.movie_id, m.title, m.genre,
+                CASE
+                    WHEN u.user_id IS NULL THEN NULL
+                    WHEN u.age < 18 THEN 'Under 18'
+                    WHEN u.age BETWEEN 18 AND 35 THEN '18-35'
+                    WHEN u.age BETWEEN 36 AND 50 THEN '36-50'
+                    ELSE '50+'
+                END AS age_group,
+                r.rating,
+                COUNT(*) AS cnt
+            FROM ratings r
+            LEFT JOIN movies m ON r.movie_id = m.movie_id
+            LEFT JOIN users u ON r.user_id = u.user_id
+            GROUP BY m.movie_id, m.title, m.genre, age_group, r.rating
+            """;
+
+    private static final Comparator<String> SQL_ORDER = Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER);
+
+    private final Strategy strategy;
+
+    public BatchReport(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /** Print the four report sections (top rated, by genre, by age group, recommended). */
+    public void print(PrintStream out) {
+        List<MovieAnalysis.MovieStat> top;
+        String genreLines;
+        String ageLines;
+
+        if (strategy == Strategy.SINGLE_SCAN) {
+            SingleScan scan = singleScan();
+            top = scan.top;
+            genreLines = scan.genreLines;
+            ageLines = scan.ageLines;
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(3);
+            try {
+                Future<List<MovieAnalysis.MovieStat>> topF = pool.submit(BatchReport::topMovies);
+                Future<String> genreF = pool.submit(() -> countLines(GENRE_SQL, "genre", "%-15s Rating %.1f → %d votes%n"));
+                Future<String> ageF = pool.submit(() -> countLines(AGE_GROUP_SQL, "age_group", "%-10s Rating %.1f → %d users%n"));
+                top = await(topF, List.of());
+                genreLines = await(genreF, "");
+                ageLines = await(ageF, "");
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        out.println("\n🎬 TOP RATED MOVIES");
+        for (var m : top) out.printf("%-40s ⭐ %.2f (%d ratings)%n", m.title(), m.avgRating(), m.votes());
+        out.println("\n📊 RATING BY GENRE");
+        out.print(genreLines);
+        out.println("\n👥 RATING BY AGE GROUP");
+        out.print(ageLines);
+        out.println("\n⭐ RECOMMENDED MOVIES");
+        for (var m : top) out.printf("%-40s ⭐ %.2f (%d votes)%n", m.title(), m.avgRating(), m.votes());
+    }
+
+    // -------------------------
+    // PARALLEL
+    // -------------------------
+
+    private static List<MovieAnalysis.MovieStat> topMovies() throws SQLException {
+        List<MovieAnalysis.MovieStat> list = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(TOP_MOVIES_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                list.add(new MovieAnalysis.MovieStat(rs.getString("title"),
+                        rs.getDouble("avg_rating"), rs.getInt("rating_count")));
+            }
+        }
+        return list;
+    }
+
+    private static String countLines(String sql, String labelColumn, String format) throws SQLException {
+        StringBuilder sb = new StringBuilder();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                sb.append(String.format(format, rs.getString(labelColumn), rs.getDouble("rating"), rs.getInt("count")));
+            }
+        }
+        return sb.toString();
+    }
+
+    // like the sequential report: a failed section prints its stack trace and stays empty
+    private static <T> T await(Future<T> future, T fallback) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return fallback;
+    }
+
+    // -------------------------
+    // SINGLE_SCAN
+    // -------------------------
+
+    private static final class SingleScan {
+        List<MovieAnalysis.MovieStat> top = List.of();
+        String genreLines = "";
+        String ageLines = "";
+    }
+
+    private static final class MovieTotals {
+        final String title;
+        long sum;
+        long count;
+
+        MovieTotals(String title) {
+            this.title = title;
+        }
+    }
+
+    private SingleScan singleScan() {
+        Map<String, MovieTotals> movies = new HashMap<>();
+        Map<String, RatingCounts> byGenre = new TreeMap<>(SQL_ORDER);
+        Map<String, RatingCounts> byAge = new TreeMap<>();
+
+        SingleScan result = new SingleScan();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = StreamingQuery.prepare(conn, COMBINED_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                String movieId = rs.getString("movie_id");
+                String ageGroup = rs.getString("age_group");
+                int rating = rs.getInt("rating");
+                long cnt = rs.getLong("cnt");
+
+                if (movieId != null) {
+                    MovieTotals t = movies.get(movieId);
+                    if (t == null) {
+                        t = new MovieTotals(rs.getString("title"));
+                        movies.put(movieId, t);
+                    }
+                    t.sum += (long) rating * cnt;
+                    t.count += cnt;
+                    byGenre.computeIfAbsent(rs.getString("genre"), k -> new RatingCounts()).add(rating, cnt);
+                }
+                if (ageGroup != null) {
+                    byAge.computeIfAbsent(ageGroup, k -> new RatingCounts()).add(rating, cnt);
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return result;
+        }
+
+        result.top = topByMySqlAverage(movies.values(), 10, 5);
+        result.genreLines = MovieAnalysis.formatRatingCounts(byGenre, "%-15s Rating %.1f → %d votes%n");
+        result.ageLines = MovieAnalysis.formatRatingCounts(byAge, "%-10s Rating %.1f → %d users%n");
+        return result;
+    }
+
+    /**
+     * Top movies by average, with the average rounded the way MySQL's AVG over an INT column
+     * is (4 decimals, half up), so the printed values match the SQL report exactly.
+     */
+    private static List<MovieAnalysis.MovieStat> topByMySqlAverage(Collection<MovieTotals> movies,
+                                                                   int limit, int minVotes) {
+        List<MovieAnalysis.MovieStat> candidates = new ArrayList<>();
+        for (MovieTotals t : movies) {
+            if (t.count < minVotes) continue;
+            double avg = BigDecimal.valueOf(t.sum).divide(BigDecimal.valueOf(t.count), 4, RoundingMode.HALF_UP)
+                    .doubleValue();
+            candidates.add(new MovieAnalysis.MovieStat(t.title, avg, (int) t.count));
+        }
+        candidates.sort(Comparator.comparingDouble(MovieAnalysis.MovieStat::avgRating).reversed());
+        return candidates.subList(0, Math.min(limit, candidates.size()));
+    }
+}
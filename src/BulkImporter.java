@@ -0,0 +1,480 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BulkImporter - loads CSV/TSV dumps into the movies, users and ratings tables.
+ * - the file is streamed in fixed-size line chunks, never read whole
+ * - worker threads parse chunks in parallel and insert them on their own connection
+ *   with multi-row INSERT ... VALUES (...), (...) statements sent in JDBC batches
+ * - each worker commits every commitEvery rows; progress is printed in rows/sec
+ * - committed chunks are recorded in import_chunks (SchemaMigrations V5) in the same
+ *   transaction as their rows, so a failed import can be restarted with --resume and
+ *   skips exactly what was committed
+ *
+ * Each worker holds one pooled connection for the whole run, so --threads is capped at
+ * -Dmovies.pool.maxSize. If the database has SummaryTables they are rebuilt afterwards,
+ * and a reload marker in RatingChangeLog tells its followers to rebuild as well.
+ *
+ * Columns are matched by header name against the model fields (movie_id, title, ...;
+ * camelCase names like movieId also match). Quoted fields may contain the delimiter
+ * but not line breaks.
+ *
+ * Usage: BulkImporter movies|users|ratings FILE [--tsv] [--no-header] [--threads N]
+ *        [--chunk LINES] [--rows-per-insert N] [--batch STATEMENTS] [--commit-every ROWS]
+ *        [--rating-scale F] [--resume]
+ */
+public class BulkImporter {
+
+    /** Target tables with the model fields they accept; int columns are parsed as numbers. */
+    public enum Table {
+        MOVIES("movies", List.of("movie_id", "title", "genre", "year"), Set.of("year")),
+        USERS("users", List.of("user_id", "first_name", "last_name", "age"), Set.of("age")),
+        RATINGS("ratings", List.of("rating_id", "user_id", "movie_id", "rating"), Set.of("rating"));
+
+        final String table;
+        final List<String> columns;
+        final Set<String> intColumns;
+
+        Table(String table, List<String> columns, Set<String> intColumns) {
+            this.table = table;
+            this.columns = columns;
+            this.intColumns = intColumns;
+        }
+    }
+
+    public record Options(char delimiter, boolean header, int threads, int chunkLines, int rowsPerInsert,
+                          int batchStatements, int commitEvery, double ratingScale, boolean resume) {
+
+        public static Options defaults() {
+            return new Options(',', true, Math.max(2, Runtime.getRuntime().availableProcessors() / 2),
+                    10_000, 500, 10, 50_000, 1.0, false);
+        }
+    }
+
+    private record Chunk(long seq, long firstLine, List<String> lines) {}
+
+    private static final Chunk END = new Chunk(-1, -1, List.of());
+
+    private final Table table;
+    private final Path file;
+    private final Options options;
+
+    private final AtomicLong inserted = new AtomicLong();
+    private volatile Throwable failure;
+
+    // source column index for each target column, and the target columns present in the file
+    private int[] sourceIndex;
+    private List<String> targetColumns;
+
+    public BulkImporter(Table table, Path file, Options options) {
+        if ((long) options.rowsPerInsert() * table.columns.size() > 65_535) {
+            throw new IllegalArgumentException("rows-per-insert too large: more than 65535 bind parameters");
+        }
+        this.table = table;
+        this.file = file;
+        this.options = options;
+    }
+
+    /** Run the import; returns the number of rows inserted by this run. */
+    public long run() throws IOException, SQLException, InterruptedException {
+        Checkpoint checkpoint = Checkpoint.open(checkpointKey(), table, options.chunkLines(), options.resume());
+        int threads = workerCount();
+        BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(threads * 2);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+
+        long start = System.nanoTime();
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "import-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        progress.scheduleAtFixedRate(() -> report(start, false), 2, 2, TimeUnit.SECONDS);
+
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            long lineNo = 0;
+            String line;
+            if (options.header()) {
+                line = in.readLine();
+                lineNo++;
+                mapColumns(line == null ? List.of() : parseLine(line, options.delimiter()));
+            } else {
+                mapColumns(table.columns);
+            }
+
+            for (int i = 0; i < threads; i++) {
+                futures.add(workers.submit(() -> work(queue, checkpoint)));
+            }
+
+            long seq = 0;
+            List<String> lines = new ArrayList<>(options.chunkLines());
+            long firstLine = lineNo + 1;
+            while (failure == null && (line = in.readLine()) != null) {
+                lineNo++;
+                if (line.isEmpty()) continue;
+                lines.add(line);
+                if (lines.size() == options.chunkLines()) {
+                    enqueue(queue, checkpoint, new Chunk(seq++, firstLine, lines));
+                    lines = new ArrayList<>(options.chunkLines());
+                    firstLine = lineNo + 1;
+                }
+            }
+            if (!lines.isEmpty() && failure == null) enqueue(queue, checkpoint, new Chunk(seq, firstLine, lines));
+        } finally {
+            for (int i = 0; i < threads; i++) {
+                // workers stop taking after a failure, so don't block on a full queue
+                while (!queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                    if (futures.stream().allMatch(Future::isDone)) break;
+                }
+            }
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            progress.shutdownNow();
+        }
+
+        if (failure != null) {
+            throw new SQLException("Import failed; fix the input and rerun with --resume", failure);
+        }
+        checkpoint.delete();
+        report(start, true);
+        if (SummaryTables.available()) {
+            SummaryTables.rebuild();   // the import bypassed RatingWriter
+            System.out.println("Rebuilt summary tables");
+        }
+        if (RatingChangeLog.available()) RatingChangeLog.appendReload();   // followers of the log rebuild too
+        return inserted.get();
+    }
+
+    // a worker waiting for a connection would hold up its chunks until the acquire timeout
+    private int workerCount() {
+        int max = DatabaseConnection.getPool().config().maxSize();
+        if (options.threads() <= max) return options.threads();
+        System.out.println("Using " + max + " threads, the connection pool's maxSize");
+        return max;
+    }
+
+    private void enqueue(BlockingQueue<Chunk> queue, Checkpoint checkpoint, Chunk chunk) throws InterruptedException {
+        if (checkpoint.isCommitted(chunk.seq())) return;   // committed by an earlier run
+        while (failure == null && !queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+            // backpressure: wait for a worker
+        }
+    }
+
+    private void report(long startNanos, boolean done) {
+        double secs = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        long rows = inserted.get();
+        System.out.printf("%s %,d rows into %s in %.1f s (%,.0f rows/s)%n",
+                done ? "Imported" : "...", rows, table.table, secs, rows / secs);
+    }
+
+    // -------------------------
+    // Workers
+    // -------------------------
+
+    private void work(BlockingQueue<Chunk> queue, Checkpoint checkpoint) {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) throw new SQLException("No database connection");
+            conn.setAutoCommit(false);
+            List<Long> uncommitted = new ArrayList<>();
+            long rowsSinceCommit = 0;
+
+            while (true) {
+                Chunk chunk = queue.take();
+                if (chunk == END || failure != null) break;
+
+                List<Object[]> rows = parseChunk(chunk);
+                insert(conn, rows);
+                inserted.addAndGet(rows.size());
+                uncommitted.add(chunk.seq());
+                rowsSinceCommit += rows.size();
+
+                if (rowsSinceCommit >= options.commitEvery()) {
+                    checkpoint.record(conn, uncommitted);
+                    conn.commit();
+                    uncommitted.clear();
+                    rowsSinceCommit = 0;
+                }
+            }
+
+            if (failure == null && !uncommitted.isEmpty()) {
+                checkpoint.record(conn, uncommitted);
+                conn.commit();
+            } else {
+                conn.rollback();
+            }
+        } catch (Exception e) {
+            if (failure == null) failure = e;
+        }
+    }
+
+    private void insert(Connection conn, List<Object[]> rows) throws SQLException {
+        int perInsert = options.rowsPerInsert();
+        int full = rows.size() / perInsert;
+
+        if (full > 0) {
+            try (PreparedStatement ps = conn.prepareStatement(insertSql(perInsert))) {
+                int statements = 0;
+                for (int s = 0; s < full; s++) {
+                    bindRows(ps, rows, s * perInsert, perInsert);
+                    ps.addBatch();
+                    if (++statements % options.batchStatements() == 0) ps.executeBatch();
+                }
+                if (statements % options.batchStatements() != 0) ps.executeBatch();
+            }
+        }
+
+        int rest = rows.size() - full * perInsert;
+        if (rest > 0) {
+            try (PreparedStatement ps = conn.prepareStatement(insertSql(rest))) {
+                bindRows(ps, rows, full * perInsert, rest);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    private String insertSql(int rowCount) {
+        String placeholders = "(" + String.join(", ", Collections.nCopies(targetColumns.size(), "?")) + ")";
+        return "INSERT INTO " + table.table + " (" + String.join(", ", targetColumns) + ") VALUES "
+                + String.join(", ", Collections.nCopies(rowCount, placeholders));
+    }
+
+    private void bindRows(PreparedStatement ps, List<Object[]> rows, int from, int count) throws SQLException {
+        int p = 1;
+        for (int r = from; r < from + count; r++) {
+            for (Object v : rows.get(r)) {
+                if (v == null) ps.setNull(p++, Types.VARCHAR);
+                else if (v instanceof Integer i) ps.setInt(p++, i);
+                else ps.setString(p++, (String) v);
+            }
+        }
+    }
+
+    // -------------------------
+    // Parsing
+    // -------------------------
+
+    private void mapColumns(List<String> header) {
+        targetColumns = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        for (String column : table.columns) {
+            for (int i = 0; i < header.size(); i++) {
+                if (normalize(header.get(i)).equals(normalize(column))) {
+                    targetColumns.add(column);
+                    indexes.add(i);
+                    break;
+                }
+            }
+        }
+        if (targetColumns.isEmpty()) {
+            throw new IllegalArgumentException("No " + table.table + " columns found in header " + header);
+        }
+        sourceIndex = indexes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // movieId, movie_id and MOVIE_ID all match; MovieLens calls the genre column "genres"
+    private static String normalize(String name) {
+        String n = name.trim().replace("_", "").toLowerCase(Locale.ROOT);
+        return n.equals("genres") ? "genre" : n;
+    }
+
+    private List<Object[]> parseChunk(Chunk chunk) {
+        List<Object[]> rows = new ArrayList<>(chunk.lines().size());
+        long lineNo = chunk.firstLine();
+        for (String line : chunk.lines()) {
+            List<String> fields = parseLine(line, options.delimiter());
+            Object[] row = new Object[targetColumns.size()];
+            for (int c = 0; c < row.length; c++) {
+                String raw = sourceIndex[c] < fields.size() ? fields.get(sourceIndex[c]).trim() : "";
+                try {
+                    row[c] = convert(targetColumns.get(c), raw);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Line " + lineNo + ": bad " + targetColumns.get(c)
+                            + " value '" + raw + "'", e);
+                }
+            }
+            rows.add(row);
+            lineNo++;
+        }
+        return rows;
+    }
+
+    private Object convert(String column, String raw) {
+        if (raw.isEmpty() || raw.equals("\\N")) return null;
+        if (!table.intColumns.contains(column)) return raw;
+        if (column.equals("rating")) {
+            return (int) Math.round(Double.parseDouble(raw) * options.ratingScale());
+        }
+        return Integer.parseInt(raw);
+    }
+
+    /** Split one CSV/TSV line; double-quoted fields may contain the delimiter and "" escapes. */
+    static List<String> parseLine(String line, char delimiter) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        sb.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    sb.append(ch);
+                }
+            } else if (ch == '"' && sb.length() == 0) {
+                quoted = true;
+            } else if (ch == delimiter) {
+                fields.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(ch);
+            }
+        }
+        fields.add(sb.toString());
+        return fields;
+    }
+
+    // -------------------------
+    // Checkpoint
+    // -------------------------
+
+    // import_chunks.source_file holds 255 characters; the end of a long path is the distinctive part
+    private String checkpointKey() {
+        String key = file.toAbsolutePath().normalize().toString();
+        return key.length() <= 255 ? key : key.substring(key.length() - 255);
+    }
+
+    /**
+     * Committed chunk numbers, one import_chunks row each. A worker adds its chunks' rows in
+     * the transaction that inserts them, so a crash never leaves one committed without the other.
+     */
+    private static final class Checkpoint {
+        private final String source;
+        private final Table table;
+        private final int chunkLines;
+        private final Set<Long> committed = new HashSet<>();
+
+        private Checkpoint(String source, Table table, int chunkLines) {
+            this.source = source;
+            this.table = table;
+            this.chunkLines = chunkLines;
+        }
+
+        static Checkpoint open(String source, Table table, int chunkLines, boolean resume) throws SQLException {
+            if (!SchemaMigrations.installed(SchemaMigrations.IMPORT_CHECKPOINT_VERSION)) {
+                throw new SQLException("No import_chunks table; run SchemaMigrations first");
+            }
+            Checkpoint cp = new Checkpoint(source, table, chunkLines);
+            try (Connection conn = DatabaseConnection.getConnection()) {
+                if (conn == null) throw new SQLException("No database connection");
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT target_table, chunk_lines, chunk_seq FROM import_chunks WHERE source_file = ?")) {
+                    ps.setString(1, source);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            if (!table.name().equals(rs.getString(1)) || chunkLines != rs.getInt(2)) {
+                                throw new IllegalStateException("Checkpoint for " + source + " was written for table "
+                                        + rs.getString(1) + " with chunk " + rs.getInt(2));
+                            }
+                            cp.committed.add(rs.getLong(3));
+                        }
+                    }
+                }
+            }
+            if (cp.committed.isEmpty()) return cp;
+            if (!resume) {
+                throw new IllegalStateException("Checkpoint for " + source + " exists; rerun with --resume"
+                        + " or delete its rows from import_chunks");
+            }
+            System.out.println("Resuming: skipping " + cp.committed.size() + " chunks of " + chunkLines + " lines");
+            return cp;
+        }
+
+        // only the reader asks, and only about chunks committed by earlier runs
+        boolean isCommitted(long seq) {
+            return committed.contains(seq);
+        }
+
+        /** Record {@code seqs} inside the worker's transaction; the caller commits. */
+        void record(Connection conn, List<Long> seqs) throws SQLException {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO import_chunks (source_file, target_table, chunk_lines, chunk_seq) VALUES (?, ?, ?, ?)")) {
+                for (long seq : seqs) {
+                    ps.setString(1, source);
+                    ps.setString(2, table.name());
+                    ps.setInt(3, chunkLines);
+                    ps.setLong(4, seq);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+
+        void delete() throws SQLException {
+            try (Connection conn = DatabaseConnection.getConnection()) {
+                if (conn == null) throw new SQLException("No database connection");
+                try (PreparedStatement ps = conn.prepareStatement("DELETE FROM import_chunks WHERE source_file = ?")) {
+                    ps.setString(1, source);
+                    ps.executeUpdate();
+                }
+            }
+        }
+    }
+
+    // -------------------------
+    // Command line
+    // -------------------------
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: BulkImporter movies|users|ratings FILE [--tsv] [--no-header] [--threads N]"
+                    + " [--chunk LINES] [--rows-per-insert N] [--batch STATEMENTS] [--commit-every ROWS]"
+                    + " [--rating-scale F] [--resume]");
+            return;
+        }
+        Table table = Table.valueOf(args[0].toUpperCase(Locale.ROOT));
+        Path file = Paths.get(args[1]);
+
+        Options d = Options.defaults();
+        char delimiter = d.delimiter();
+        boolean header = d.header(), resume = d.resume();
+        int threads = d.threads(), chunk = d.chunkLines(), perInsert = d.rowsPerInsert(),
+                batch = d.batchStatements(), commitEvery = d.commitEvery();
+        double ratingScale = d.ratingScale();
+
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--tsv" -> delimiter = '\t';
+                case "--no-header" -> header = false;
+                case "--resume" -> resume = true;
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--chunk" -> chunk = Integer.parseInt(args[++i]);
+                case "--rows-per-insert" -> perInsert = Integer.parseInt(args[++i]);
+                case "--batch" -> batch = Integer.parseInt(args[++i]);
+                case "--commit-every" -> commitEvery = Integer.parseInt(args[++i]);
+                case "--rating-scale" -> ratingScale = Double.parseDouble(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        Options options = new Options(delimiter, header, threads, chunk, perInsert, batch, commitEvery,
+                ratingScale, resume);
+        try {
+            new BulkImporter(table, file, options).run();
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+}
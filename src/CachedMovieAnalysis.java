@@ -0,0 +1,147 @@
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * CachedMovieAnalysis - MovieAnalysis with a QueryCache in front of the GUI-facing methods.
+ *
+ * The top-movies and recommendations texts are formatted from the cached
+ * getTopMoviesData(10, 5) result, so one click runs that GROUP BY once.
+ * Writing ratings through this instance invalidates the cache.
+ * Cached maps and lists are shared between callers and must not be modified.
+ * The overrides are measured by QueryMetrics themselves, so cache hits show up too.
+ * uncached() runs calls past the cache, for callers that keep results themselves.
+ */
+public class CachedMovieAnalysis extends MovieAnalysis {
+
+    private static final long AGGREGATE_TTL_MILLIS = Long.getLong("movies.cache.ttlMillis", 60_000);
+    private static final long SEARCH_TTL_MILLIS = Long.getLong("movies.cache.searchTtlMillis", 30_000);
+
+    private final QueryCache cache = new QueryCache(Integer.getInteger("movies.cache.maxEntries", 256),
+            AGGREGATE_TTL_MILLIS);
+    private static final ThreadLocal<Boolean> UNCACHED = new ThreadLocal<>();
+
+    public QueryCache.Stats cacheStats() {
+        return cache.stats();
+    }
+
+    /** Drop all cached results, e.g. after ratings were changed outside this instance. */
+    public void invalidateCache() {
+        cache.invalidateAll();
+    }
+
+    /** Run {@code calls} on this thread with the result cache neither read nor filled. */
+    public <T> T uncached(Supplier<T> calls) {
+        UNCACHED.set(Boolean.TRUE);
+        try {
+            return calls.get();
+        } finally {
+            UNCACHED.remove();
+        }
+    }
+
+    @Override
+    public void setEngine(Engine engine) {
+        super.setEngine(engine);
+        cache.invalidateAll();
+    }
+
+    // -------------------------
+    // Write path
+    // -------------------------
+
+    @Override
+    public void submitRatings(List<Ratings> ratings) throws SQLException {
+        try {
+            super.submitRatings(ratings);
+        } finally {
+            cache.invalidateAll();
+        }
+    }
+
+    // -------------------------
+    // Text methods
+    // -------------------------
+
+    @Override
+    public String getTopMoviesText() {
+        return QueryMetrics.measure("getTopMoviesText", () -> {
+            List<MovieStat> top = getTopMoviesData(10, 5);
+            if (top.isEmpty()) return "No top movies found.\n";
+            return formatMovieStats(top, "%s — ⭐ %.2f (%d ratings)%n");
+        });
+    }
+
+    @Override
+    public String getRecommendedText() {
+        return QueryMetrics.measure("getRecommendedText", () -> {
+            List<MovieStat> top = getTopMoviesData(10, 5);
+            if (top.isEmpty()) return "No recommended movies found.\n";
+            return formatMovieStats(top, "%s — ⭐ %.2f (%d votes)%n");
+        });
+    }
+
+    @Override
+    public String getGenreText() {
+        return QueryMetrics.measure("getGenreText", () ->
+                cached("getGenreText", List.of(), AGGREGATE_TTL_MILLIS,
+                        super::getGenreText, CachedMovieAnalysis::isNotError));
+    }
+
+    @Override
+    public String getAgeGroupText() {
+        return QueryMetrics.measure("getAgeGroupText", () ->
+                cached("getAgeGroupText", List.of(), AGGREGATE_TTL_MILLIS,
+                        super::getAgeGroupText, CachedMovieAnalysis::isNotError));
+    }
+
+    @Override
+    public String searchMovie(String title) {
+        return QueryMetrics.measure("searchMovie", () ->
+                cached("searchMovie", List.of(title), SEARCH_TTL_MILLIS,
+                        () -> super.searchMovie(title), CachedMovieAnalysis::isNotError));
+    }
+
+    // -------------------------
+    // Data methods
+    // -------------------------
+
+    @Override
+    public List<MovieStat> getTopMoviesData(int limit, int minVotes) {
+        return QueryMetrics.measure("getTopMoviesData", () ->
+                cached("getTopMoviesData", List.of(limit, minVotes), AGGREGATE_TTL_MILLIS,
+                        () -> List.copyOf(super.getTopMoviesData(limit, minVotes)), CachedMovieAnalysis::loaded));
+    }
+
+    @Override
+    public Map<Integer, Integer> getRatingHistogramData() {
+        return QueryMetrics.measure("getRatingHistogramData", () ->
+                cached("getRatingHistogramData", List.of(), AGGREGATE_TTL_MILLIS,
+                        super::getRatingHistogramData, CachedMovieAnalysis::loaded));
+    }
+
+    @Override
+    public Map<String, double[]> getGenreFiveNumberSummary() {
+        return QueryMetrics.measure("getGenreFiveNumberSummary", () ->
+                cached("getGenreFiveNumberSummary", List.of(), AGGREGATE_TTL_MILLIS,
+                        super::getGenreFiveNumberSummary, CachedMovieAnalysis::loaded));
+    }
+
+    private <T> T cached(String method, List<?> params, long ttlMillis, Supplier<T> loader, Predicate<T> cacheable) {
+        if (UNCACHED.get() != null) return loader.get();
+        return cache.get(method, params, ttlMillis, loader, cacheable);
+    }
+
+    // data methods print a failed query's SQLException and return empty or zero-filled data,
+    // which looks like a result; the call's own failure flag tells them apart
+    private static boolean loaded(Object result) {
+        return !QueryMetrics.currentCallFailed();
+    }
+
+    // text methods report failures as "Error: ..." text, which should not be cached
+    private static boolean isNotError(String text) {
+        return !text.startsWith("Error: ");
+    }
+}
@@ -0,0 +1,353 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * ConnectionPool - bounded pool of JDBC connections.
+ * - keeps between minSize and maxSize physical connections open
+ * - borrowers wait at most acquireTimeoutMillis for a free connection
+ * - idle connections above minSize are closed after idleTimeoutMillis
+ * - connections are validated on borrow if they sat idle for a while
+ * - with leakThresholdMillis > 0 (-Dmovies.pool.leakThresholdMillis; off by default),
+ *   connections held longer than that are reported once, with the stack that borrowed
+ *   them; the stack is only captured while leak detection is on
+ *
+ * Borrowed connections are proxies: close() hands the connection back to the
+ * pool, and prepareStatement(sql) is served from a small per-connection LRU
+ * cache so the same SQL string is only parsed once per physical connection.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    /** Pool settings. Every field can be overridden with a -Dmovies.pool.* system property. */
+    public record Config(int minSize, int maxSize, long acquireTimeoutMillis, long idleTimeoutMillis,
+                         long validateIdleMillis, long leakThresholdMillis, int statementCacheSize) {
+
+        public static Config fromSystemProperties() {
+            return new Config(
+                    Integer.getInteger("movies.pool.minSize", 1),
+                    Integer.getInteger("movies.pool.maxSize", 8),
+                    Long.getLong("movies.pool.acquireTimeoutMillis", 5_000),
+                    Long.getLong("movies.pool.idleTimeoutMillis", 60_000),
+                    Long.getLong("movies.pool.validateIdleMillis", 1_000),
+                    Long.getLong("movies.pool.leakThresholdMillis", 0),
+                    Integer.getInteger("movies.pool.statementCacheSize", 32));
+        }
+    }
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Config config;
+
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String user, String password, Config config) {
+        if (config.maxSize() < 1 || config.minSize() < 0 || config.minSize() > config.maxSize()) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + config.minSize() + ", max=" + config.maxSize());
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.config = config;
+        this.permits = new Semaphore(config.maxSize(), true);
+
+        for (int i = 0; i < config.minSize(); i++) {
+            try {
+                idle.push(new PooledConnection(DriverManager.getConnection(url, user, password)));
+            } catch (SQLException e) {
+                System.out.println("db connection failed!");
+                e.printStackTrace();
+                break;
+            }
+        }
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000, (leakDetection()
+                ? Math.min(config.idleTimeoutMillis(), config.leakThresholdMillis())
+                : config.idleTimeoutMillis()) / 2);
+        housekeeper.scheduleAtFixedRate(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrow a connection. Closing the returned connection gives it back to the pool.
+     * @throws SQLTimeoutException if no connection became free within acquireTimeoutMillis
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        try {
+            if (!permits.tryAcquire(config.acquireTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out after " + config.acquireTimeoutMillis()
+                        + " ms waiting for a connection (" + borrowed.size() + " in use)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        try {
+            PooledConnection pc;
+            while ((pc = pollIdle()) != null) {
+                if (isUsable(pc)) break;
+                pc.destroy();
+            }
+            if (pc == null) {
+                pc = new PooledConnection(DriverManager.getConnection(url, user, password));
+            }
+            pc.onBorrow();
+            borrowed.add(pc);
+            return pc.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public Config config() {
+        return config;
+    }
+
+    /** Number of physical connections currently open (idle + borrowed). */
+    public int size() {
+        synchronized (idle) {
+            return idle.size() + borrowed.size();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        synchronized (idle) {
+            idle.forEach(PooledConnection::destroy);
+            idle.clear();
+        }
+    }
+
+    // -------------------------
+    // Internals
+    // -------------------------
+
+    private PooledConnection pollIdle() {
+        synchronized (idle) {
+            return idle.pollFirst();
+        }
+    }
+
+    private boolean isUsable(PooledConnection pc) {
+        try {
+            if (pc.raw.isClosed()) return false;
+            long idleFor = System.currentTimeMillis() - pc.lastReturned;
+            return idleFor < config.validateIdleMillis() || pc.raw.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pc) {
+        if (!borrowed.remove(pc)) return;
+        boolean healthy;
+        try {
+            healthy = !pc.raw.isClosed();
+            if (healthy && !pc.raw.getAutoCommit()) {
+                pc.raw.rollback();
+                pc.raw.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            healthy = false;
+        }
+
+        if (healthy && !closed) {
+            pc.lastReturned = System.currentTimeMillis();
+            synchronized (idle) {
+                idle.addFirst(pc);   // LIFO keeps hot connections hot, cold ones age out
+            }
+        } else {
+            pc.destroy();
+        }
+        permits.release();
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+
+        // idle eviction: oldest idle connections sit at the tail of the deque
+        List<PooledConnection> evicted = new ArrayList<>();
+        synchronized (idle) {
+            while (idle.size() + borrowed.size() > config.minSize()) {
+                PooledConnection last = idle.peekLast();
+                if (last == null || now - last.lastReturned < config.idleTimeoutMillis()) break;
+                evicted.add(idle.pollLast());
+            }
+        }
+        evicted.forEach(PooledConnection::destroy);
+
+        // leak detection
+        if (!leakDetection()) return;
+        for (PooledConnection pc : borrowed) {
+            if (!pc.leakReported && now - pc.borrowedAt > config.leakThresholdMillis()) {
+                pc.leakReported = true;
+                System.err.println("Possible connection leak: connection held for "
+                        + (now - pc.borrowedAt) + " ms, borrowed at:");
+                pc.borrowSite.printStackTrace();
+            }
+        }
+    }
+
+    private boolean leakDetection() {
+        return config.leakThresholdMillis() > 0;
+    }
+
+    /** One physical connection plus its statement cache and bookkeeping. */
+    private final class PooledConnection {
+        final Connection raw;
+        final Map<String, PreparedStatement> statements;
+        volatile long borrowedAt;
+        volatile long lastReturned = System.currentTimeMillis();
+        volatile boolean leakReported;
+        volatile Throwable borrowSite;
+
+        PooledConnection(Connection raw) {
+            this.raw = raw;
+            this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() <= config.statementCacheSize()) return false;
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+            };
+        }
+
+        void onBorrow() {
+            borrowedAt = System.currentTimeMillis();
+            leakReported = false;
+            // filling in a stack trace on every borrow is costly; only pay for it when it can be reported
+            borrowSite = leakDetection() ? new Throwable("connection borrowed here") : null;
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Handle(this));
+        }
+
+        PreparedStatement cachedStatement(String sql) throws SQLException {
+            PreparedStatement ps = statements.get(sql);
+            if (ps == null || ps.isClosed()) {
+                ps = raw.prepareStatement(sql);
+                statements.put(sql, ps);
+            }
+            return ps;
+        }
+
+        void destroy() {
+            statements.values().forEach(ConnectionPool::closeQuietly);
+            statements.clear();
+            try {
+                raw.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    /** Per-borrow view of a pooled connection; becomes unusable once closed. */
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pc;
+        private boolean closed;
+
+        Handle(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pc.raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pc.raw + "]";
+                default:
+                    break;
+            }
+            if (closed) throw new SQLException("Connection has been returned to the pool");
+
+            // reported to QueryMetrics when the thread is inside a measured call; drivers that
+            // parse on prepare (H2) fail here, before there is a statement to instrument
+            try {
+                if (method.getName().equals("prepareStatement")) {
+                    PreparedStatement ps = args.length == 1
+                            ? cachedHandle(pc.cachedStatement((String) args[0]))
+                            : (PreparedStatement) invokeRaw(method, args);
+                    return QueryMetrics.instrument(ps, (String) args[0]);
+                }
+                return invokeRaw(method, args);
+            } catch (SQLException e) {
+                QueryMetrics.recordFailure();
+                throw e;
+            }
+        }
+
+        private Object invokeRaw(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(pc.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /** Wraps a cached statement so close() only resets it instead of discarding the parse. */
+    private static PreparedStatement cachedHandle(PreparedStatement ps) {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            ps.clearParameters();
+                            ps.clearBatch();
+                            return null;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            try {
+                                return method.invoke(ps, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                    }
+                });
+    }
+
+    private static void closeQuietly(AutoCloseable c) {
+        try {
+            c.close();
+        } catch (Exception ignored) {
+        }
+    }
+}
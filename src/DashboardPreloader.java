@@ -0,0 +1,112 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * DashboardPreloader - loads the dashboard views ahead of the first click and keeps them fresh.
+ * - each view is registered as an Entry with the call that loads it
+ * - start() loads every entry at once, then again every -Dmovies.preload.refreshSeconds
+ *   (default 60)
+ * - at most -Dmovies.preload.concurrency loads run at the same time (default 3), each on
+ *   its own pooled connection, so keep it below -Dmovies.pool.maxSize
+ * - readers get the last loaded value straight away, even when it is stale; a stale read
+ *   only starts a background refresh. Before the first load finishes they wait for it.
+ * - a load fails if its loader throws or returns a value the entry's failed predicate
+ *   accepts (error text, a failed query); a failed refresh keeps the previous value
+ */
+public final class DashboardPreloader implements AutoCloseable {
+
+    public static final long REFRESH_MILLIS = Long.getLong("movies.preload.refreshSeconds", 60) * 1_000;
+    public static final int CONCURRENCY = Integer.getInteger("movies.preload.concurrency", 3);
+
+    /** A loaded value and when its load started. */
+    public record Preloaded<T>(T value, long loadedAt) {}
+
+    /** One preloaded view. */
+    public final class Entry<T> {
+        private final String name;
+        private final Supplier<T> loader;
+        private final Predicate<T> failed;
+        private volatile Preloaded<T> latest;
+        private CompletableFuture<Preloaded<T>> inFlight;   // guarded by this
+
+        private Entry(String name, Supplier<T> loader, Predicate<T> failed) {
+            this.name = name;
+            this.loader = loader;
+            this.failed = failed;
+        }
+
+        /**
+         * The last loaded value, already completed if there is one (starting a background
+         * refresh if it is older than REFRESH_MILLIS); otherwise the load in flight.
+         */
+        public CompletableFuture<Preloaded<T>> get() {
+            Preloaded<T> p = latest;
+            if (p == null) return refresh();
+            if (System.currentTimeMillis() - p.loadedAt() >= REFRESH_MILLIS) refresh();
+            return CompletableFuture.completedFuture(p);
+        }
+
+        /** Load again in the background unless a load is already running; returns that load. */
+        public synchronized CompletableFuture<Preloaded<T>> refresh() {
+            if (inFlight != null) return inFlight;
+            CompletableFuture<Preloaded<T>> load = CompletableFuture.supplyAsync(() -> {
+                long start = System.currentTimeMillis();
+                T value = loader.get();
+                if (failed.test(value)) throw new IllegalStateException("could not load " + name);
+                return new Preloaded<>(value, start);
+            }, loads);
+            inFlight = load;
+            load.whenComplete((p, err) -> {
+                synchronized (this) {
+                    if (p != null) latest = p;
+                    else System.err.println("Preloading " + name + " failed: " + err);
+                    inFlight = null;
+                }
+            });
+            return load;
+        }
+    }
+
+    private final ExecutorService loads = Executors.newFixedThreadPool(CONCURRENCY, daemon("preload"));
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(daemon("preload-timer"));
+    private final List<Entry<?>> entries = new ArrayList<>();
+
+    /** Register a view; call before start(). */
+    public synchronized <T> Entry<T> register(String name, Supplier<T> loader) {
+        return register(name, loader, value -> false);
+    }
+
+    /** Register a view whose loader reports failure through its result rather than by throwing. */
+    public synchronized <T> Entry<T> register(String name, Supplier<T> loader, Predicate<T> failed) {
+        Entry<T> entry = new Entry<>(name, loader, failed);
+        entries.add(entry);
+        return entry;
+    }
+
+    /** Load every entry now and schedule the periodic refresh. */
+    public synchronized void start() {
+        refreshAll();
+        timer.scheduleAtFixedRate(this::refreshAll, REFRESH_MILLIS, REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void refreshAll() {
+        for (Entry<?> e : entries) e.refresh();
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        loads.shutdownNow();
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -1,26 +1,75 @@
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 public class DatabaseConnection {
 
-    private static final String URL = "jdbc:mysql://localhost:3306/movieratings_db";
-    private static final String USER = "root";
-    private static final String PASSWORD = "";
+    // -Dmovies.db.backend picks the database (see StorageBackend); the MySQL URL asks for
+    // server-side prepared statements, so the pool's statement cache saves the parse on the server too,
+    // and cursor fetch, so StreamingQuery statements with a fetch size read from a server-side cursor;
+    // -Dmovies.db.url/user/password point the app at another database (e.g. an embedded one for benchmarks)
+    public static final StorageBackend BACKEND = StorageBackend.fromSystemProperties();
+    private static final String URL = System.getProperty("movies.db.url", BACKEND.defaultUrl());
+    private static final String USER = System.getProperty("movies.db.user", BACKEND.defaultUser());
+    private static final String PASSWORD = System.getProperty("movies.db.password", "");
 
+    private static volatile ConnectionPool pool;
+
+    /**
+     * Borrow a pooled connection. Closing it returns it to the pool.
+     * Returns null if no connection could be obtained.
+     */
     public static Connection getConnection() {
         Connection connection = null;
+        long start = System.nanoTime();
         try {
-            connection = DriverManager.getConnection(URL, USER, PASSWORD);
-            System.out.println("Connected to db");
+            connection = getPool().getConnection();
         } catch (SQLException e) {
             System.out.println("db connection failed!");
             e.printStackTrace();
         }
+        QueryMetrics.recordAcquire(System.nanoTime() - start, connection == null);
         return connection;
     }
 
+    public static ConnectionPool getPool() {
+        ConnectionPool p = pool;
+        if (p == null) {
+            synchronized (DatabaseConnection.class) {
+                p = pool;
+                if (p == null) {
+                    p = new ConnectionPool(URL, USER, PASSWORD, ConnectionPool.Config.fromSystemProperties());
+                    if (BACKEND.migrateOnStart()) migrate(p);
+                    pool = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    // embedded databases start empty: create the schema before anyone else gets a connection
+    private static void migrate(ConnectionPool p) {
+        try (Connection conn = p.getConnection()) {
+            SchemaMigrations.migrate(conn);
+        } catch (SQLException e) {
+            System.out.println("schema migration failed!");
+            e.printStackTrace();
+        }
+    }
+
+    /** Close every pooled connection. */
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
     public static void main(String[] args) {
-        getConnection();
+        try (Connection conn = getConnection()) {
+            if (conn != null) System.out.println("Connected to db");
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        shutdown();
     }
 }
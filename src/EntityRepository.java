@@ -0,0 +1,292 @@
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * EntityRepository - loads Movies, Users and Ratings instead of formatting rows in place.
+ * - lookups by id run in batches through BatchLookup: one IN (...) query per
+ *   -Dmovies.repository.batchSize ids, never one query per id
+ * - results are keyed by the id asked for, even when MySQL's collation returns the row
+ *   under another spelling of it (case, trailing spaces)
+ * - movies and users go through a bounded LRU identity map (-Dmovies.repository.cacheSize
+ *   per type): while an entity is cached, every lookup returns the same instance
+ * - ids, genres and names are interned (up to 100,000 distinct strings), so entities
+ *   share their repeated strings
+ * - compactRatings() holds ratings as int surrogate ids and byte values in parallel
+ *   arrays, 9 bytes per rating, and materializes a Ratings only on request; each
+ *   CompactRatings has its own id dictionary, which lives and dies with it
+ *
+ * Movies, users and interned strings are kept until clear(), so call it after importing
+ * into those tables.
+ */
+public class EntityRepository {
+
+    private static final int BATCH_SIZE = Integer.getInteger("movies.repository.batchSize", 500);
+    private static final int CACHE_SIZE = Integer.getInteger("movies.repository.cacheSize", 10_000);
+    private static final int MAX_INTERNED = 100_000;
+
+    private final IdentityMap<Movies> movies = new IdentityMap<>(CACHE_SIZE);
+    private final IdentityMap<Users> users = new IdentityMap<>(CACHE_SIZE);
+    private final Map<String, String> interned = new ConcurrentHashMap<>();
+
+    // -------------------------
+    // Entities
+    // -------------------------
+
+    /** The movie with this id, or null if there is none. */
+    public Movies movie(String movieId) throws SQLException {
+        return movies(List.of(movieId)).get(movieId);
+    }
+
+    /** Movies by id, in the order asked for; unknown ids are left out. */
+    public Map<String, Movies> movies(Collection<String> ids) throws SQLException {
+        return load(ids, movies, "SELECT movie_id, title, genre, year FROM movies", "movie_id",
+                rs -> new Movies(intern(rs.getString("movie_id")), rs.getString("title"),
+                        intern(rs.getString("genre")), rs.getInt("year")),
+                Movies::getMovie_id);
+    }
+
+    /** The user with this id, or null if there is none. */
+    public Users user(String userId) throws SQLException {
+        return users(List.of(userId)).get(userId);
+    }
+
+    /** Users by id, in the order asked for; unknown ids are left out. */
+    public Map<String, Users> users(Collection<String> ids) throws SQLException {
+        return load(ids, users, "SELECT user_id, first_name, last_name, age FROM users", "user_id",
+                rs -> new Users(intern(rs.getString("user_id")), intern(rs.getString("first_name")),
+                        intern(rs.getString("last_name")), rs.getInt("age")),   // NULL age reads as 0
+                Users::getUser_id);
+    }
+
+    /** Ratings by rating id, in no particular order; not cached, since ratings change. */
+    public List<Ratings> ratings(Collection<String> ratingIds) throws SQLException {
+        return fetch(new ArrayList<>(new LinkedHashSet<>(ratingIds)), RATINGS_SQL, "rating_id", this::rating);
+    }
+
+    /** Every rating by one user. */
+    public List<Ratings> ratingsOfUser(String userId) throws SQLException {
+        return fetch(List.of(userId), RATINGS_SQL, "user_id", this::rating);
+    }
+
+    /** Every rating of one movie. */
+    public List<Ratings> ratingsOfMovie(String movieId) throws SQLException {
+        return fetch(List.of(movieId), RATINGS_SQL, "movie_id", this::rating);
+    }
+
+    /** Forget the cached movies and users and the interned strings. */
+    public void clear() {
+        movies.clear();
+        users.clear();
+        interned.clear();
+    }
+
+    private static final String RATINGS_SQL = "SELECT rating_id, user_id, movie_id, rating FROM ratings";
+
+    private Ratings rating(ResultSet rs) throws SQLException {
+        return new Ratings(rs.getString("rating_id"), intern(rs.getString("user_id")),
+                intern(rs.getString("movie_id")), rs.getInt("rating"));
+    }
+
+    // cached entities plus one batched fetch of the rest
+    private <T> Map<String, T> load(Collection<String> ids, IdentityMap<T> cache, String select, String idColumn,
+                                    StreamingQuery.RowMapper<T> mapper, Function<T, String> idOf)
+            throws SQLException {
+        Map<String, T> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(ids)) {
+            T cached = cache.get(id);
+            if (cached != null) found.put(id, cached);
+            else if (id != null) missing.add(id);
+        }
+
+        // a row matches the id asked for exactly or, where the database compared them
+        // case-insensitively, after folding both; either way it is cached under that id too
+        Map<String, T> byId = new HashMap<>();
+        Map<String, T> byFolded = new HashMap<>();
+        for (T entity : fetch(missing, select, idColumn, mapper)) {
+            T cached = cache.putIfAbsent(idOf.apply(entity), entity);
+            byId.put(idOf.apply(entity), cached);
+            byFolded.putIfAbsent(BatchLookup.fold(idOf.apply(entity)), cached);
+        }
+        for (String id : missing) {
+            T entity = byId.get(id);
+            if (entity == null) entity = byFolded.get(BatchLookup.fold(id));
+            if (entity != null) found.put(id, cache.putIfAbsent(id, entity));
+        }
+
+        Map<String, T> result = new LinkedHashMap<>();
+        for (String id : ids) {
+            T entity = found.get(id);
+            if (entity != null) result.put(id, entity);
+        }
+        return result;
+    }
+
+    // SELECT ... WHERE idColumn IN (...), BATCH_SIZE ids per query, all on one pooled connection
+    private static <T> List<T> fetch(List<String> ids, String select, String idColumn,
+                                     StreamingQuery.RowMapper<T> mapper) throws SQLException {
+        List<T> rows = new ArrayList<>();
+        if (ids.isEmpty()) return rows;
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) throw new SQLException("No database connection");
+            BatchLookup.on(conn).cancellable().forEach(select + " WHERE " + idColumn + " IN (%s)",
+                    ids.stream().map(id -> new String[]{id}).toList(), BATCH_SIZE, rs -> rows.add(mapper.map(rs)));
+        }
+        return rows;
+    }
+
+    private String intern(String s) {
+        if (s == null) return null;
+        String canonical = interned.get(s);
+        if (canonical != null) return canonical;
+        if (interned.size() >= MAX_INTERNED) return s;   // mostly unique values: stop collecting them
+        canonical = interned.putIfAbsent(s, s);
+        return canonical != null ? canonical : s;
+    }
+
+    // -------------------------
+    // Compact ratings
+    // -------------------------
+
+    /** Every rating, streamed into surrogate-id columns; rating ids are not kept. */
+    public CompactRatings compactRatings() throws SQLException {
+        CompactRatings ratings = new CompactRatings();
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) throw new SQLException("No database connection");
+            StreamingQuery.forEach(conn, "SELECT user_id, movie_id, rating FROM ratings", rs -> {
+                ratings.add(ratings.userIds.key(rs.getString("user_id")), ratings.movieIds.key(rs.getString("movie_id")),
+                        (byte) rs.getInt("rating"));
+                return true;
+            });
+        }
+        ratings.trim();
+        return ratings;
+    }
+
+    /**
+     * Ratings as three parallel columns; row i is (userKey(i), movieKey(i), rating(i)).
+     * Keys are dense surrogates for the ids in these ratings, assigned while loading.
+     */
+    public static final class CompactRatings {
+        private final IdDictionary movieIds = new IdDictionary();
+        private final IdDictionary userIds = new IdDictionary();
+        private int[] users = new int[1024];
+        private int[] movies = new int[1024];
+        private byte[] values = new byte[1024];
+        private int size;
+
+        private void add(int user, int movie, byte value) {
+            if (size == values.length) {
+                users = Arrays.copyOf(users, size * 2);
+                movies = Arrays.copyOf(movies, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            users[size] = user;
+            movies[size] = movie;
+            values[size++] = value;
+        }
+
+        private void trim() {
+            users = Arrays.copyOf(users, size);
+            movies = Arrays.copyOf(movies, size);
+            values = Arrays.copyOf(values, size);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int userKey(int i) {
+            return users[Objects.checkIndex(i, size)];
+        }
+
+        public int movieKey(int i) {
+            return movies[Objects.checkIndex(i, size)];
+        }
+
+        public int rating(int i) {
+            return values[Objects.checkIndex(i, size)];
+        }
+
+        public String movieId(int movieKey) {
+            return movieIds.id(movieKey);
+        }
+
+        public String userId(int userKey) {
+            return userIds.id(userKey);
+        }
+
+        /** Surrogate key of a movie or user id, or -1 if none of these ratings has it. */
+        public int movieKeyOf(String movieId) {
+            return movieIds.find(movieId);
+        }
+
+        public int userKeyOf(String userId) {
+            return userIds.find(userId);
+        }
+
+        /** Row i as a Ratings, with the shared id strings and no rating id. */
+        public Ratings get(int i) {
+            return new Ratings(null, userId(userKey(i)), movieId(movieKey(i)), rating(i));
+        }
+    }
+
+    // -------------------------
+    // Helpers
+    // -------------------------
+
+    /** String id <-> dense int surrogate, keeping one copy of each id string. */
+    private static final class IdDictionary {
+        private final Map<String, Integer> keys = new HashMap<>();
+        private final List<String> ids = new ArrayList<>();
+
+        synchronized int key(String id) {
+            Integer key = keys.get(id);
+            if (key == null) {
+                key = ids.size();
+                keys.put(id, key);
+                ids.add(id);
+            }
+            return key;
+        }
+
+        synchronized int find(String id) {
+            Integer key = keys.get(id);
+            return key == null ? -1 : key;
+        }
+
+        synchronized String id(int key) {
+            return ids.get(key);
+        }
+    }
+
+    /** Bounded LRU map from id to the one materialized instance of an entity. */
+    private static final class IdentityMap<T> {
+        private final LinkedHashMap<String, T> map;
+
+        IdentityMap(int capacity) {
+            map = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized T get(String id) {
+            return map.get(id);
+        }
+
+        /** Cache {@code entity} unless another instance got there first; returns the cached one. */
+        synchronized T putIfAbsent(String id, T entity) {
+            T existing = map.putIfAbsent(id, entity);
+            return existing != null ? existing : entity;
+        }
+
+        synchronized void clear() {
+            map.clear();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+import javafx.animation.PauseTransition;
+import javafx.scene.control.*;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.util.Duration;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * FacetFilterPanel - sidebar controls for FacetIndex filters, in a collapsible pane.
+ * - one row per genre: the check box includes it, the ✕ toggle next to it excludes it
+ *   (each clears the other); "Match all" requires every included genre instead of any
+ * - year range and a minimum vote count
+ * - every control shows how many movies it would match, from the last Result
+ *
+ * Changes are reported through {@code onChange} once the controls have been still for
+ * a moment; the first expansion reports the open filter, which also fills in the genres.
+ */
+public final class FacetFilterPanel extends TitledPane {
+
+    private final Consumer<FacetIndex.Filter> onChange;
+    private final PauseTransition debounce = new PauseTransition(Duration.millis(200));
+    private final Map<String, GenreRow> genreRows = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final VBox genreList = new VBox(4);
+    private final CheckBox matchAll = new CheckBox("Match all selected genres");
+    private final TextField fromYear = new TextField();
+    private final TextField toYear = new TextField();
+    private final ComboBox<Integer> minVotes = new ComboBox<>();
+    private Map<Integer, Integer> voteCounts = Map.of();
+    private boolean loaded;
+
+    public FacetFilterPanel(Consumer<FacetIndex.Filter> onChange) {
+        this.onChange = onChange;
+        setText("🎛 Filter Movies");
+        setExpanded(false);
+        getStyleClass().add("facet-panel");
+
+        ScrollPane genres = new ScrollPane(genreList);
+        genres.setFitToWidth(true);
+        genres.setPrefViewportHeight(160);
+        genreList.getChildren().add(new Label("Loading genres..."));
+
+        fromYear.setPromptText("From year");
+        toYear.setPromptText("To year");
+        fromYear.setPrefColumnCount(5);
+        toYear.setPrefColumnCount(5);
+
+        for (int bucket : FacetIndex.VOTE_BUCKETS) minVotes.getItems().add(bucket);
+        minVotes.setValue(0);
+        minVotes.setMaxWidth(Double.MAX_VALUE);
+        minVotes.setCellFactory(list -> new VoteCell());
+        minVotes.setButtonCell(new VoteCell());
+
+        Button reset = new Button("Reset");
+        reset.setMaxWidth(Double.MAX_VALUE);
+        reset.setOnAction(e -> reset());
+
+        setContent(new VBox(8,
+                new Label("Genres"), genres, matchAll,
+                new Label("Years"), new HBox(6, fromYear, new Label("–"), toYear),
+                new Label("Votes"), minVotes,
+                reset));
+
+        debounce.setOnFinished(e -> onChange.accept(filter()));
+        matchAll.selectedProperty().addListener((obs, o, n) -> changed());
+        fromYear.textProperty().addListener((obs, o, n) -> changed());
+        toYear.textProperty().addListener((obs, o, n) -> changed());
+        minVotes.valueProperty().addListener((obs, o, n) -> changed());
+        expandedProperty().addListener((obs, o, expanded) -> {
+            if (expanded && !loaded) onChange.accept(filter());
+        });
+    }
+
+    /** The filter the controls describe; unparsable years are ignored. */
+    public FacetIndex.Filter filter() {
+        Set<String> include = new LinkedHashSet<>();
+        Set<String> exclude = new LinkedHashSet<>();
+        for (var e : genreRows.entrySet()) {
+            GenreRow row = e.getValue();
+            if (row.exclude.isSelected()) exclude.add(e.getKey());
+            else if (row.include.isSelected()) include.add(e.getKey());
+        }
+        Integer votes = minVotes.getValue();
+        return new FacetIndex.Filter(include,
+                matchAll.isSelected() ? FacetIndex.GenreMode.ALL : FacetIndex.GenreMode.ANY, exclude,
+                year(fromYear), year(toYear), votes == null ? 0 : votes);
+    }
+
+    /** Update the counts (and add any new genres) from the result of filter(). */
+    public void showCounts(FacetIndex.Result result) {
+        if (!loaded) genreList.getChildren().clear();
+        loaded = true;
+        for (var e : result.genreCounts().entrySet()) {
+            GenreRow row = genreRows.computeIfAbsent(e.getKey(), GenreRow::new);
+            row.include.setText(e.getKey() + " (" + e.getValue() + ")");
+        }
+        genreList.getChildren().setAll(genreRows.values());
+
+        StringBuilder decades = new StringBuilder();
+        for (var e : result.decadeCounts().entrySet()) {
+            if (!decades.isEmpty()) decades.append('\n');
+            decades.append(e.getKey()).append("s: ").append(e.getValue());
+        }
+        fromYear.setTooltip(decades.isEmpty() ? null : new Tooltip(decades.toString()));
+        toYear.setTooltip(fromYear.getTooltip());
+
+        voteCounts = result.voteCounts();
+        minVotes.setButtonCell(new VoteCell());   // redraw the selected item with its new count
+    }
+
+    private void reset() {
+        for (GenreRow row : genreRows.values()) {
+            row.include.setSelected(false);
+            row.exclude.setSelected(false);
+        }
+        matchAll.setSelected(false);
+        fromYear.clear();
+        toYear.clear();
+        minVotes.setValue(0);
+    }
+
+    private void changed() {
+        debounce.playFromStart();
+    }
+
+    private static Integer year(TextField field) {
+        String text = field.getText().trim();
+        if (text.isEmpty()) return null;
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** "≥ 50 votes (123)", counting every bucket from this one up. */
+    private final class VoteCell extends ListCell<Integer> {
+        @Override
+        protected void updateItem(Integer bucket, boolean empty) {
+            super.updateItem(bucket, empty);
+            if (empty || bucket == null) {
+                setText(null);
+                return;
+            }
+            int count = 0;
+            for (var e : voteCounts.entrySet()) {
+                if (e.getKey() >= bucket) count += e.getValue();
+            }
+            String label = bucket == 0 ? "Any number of votes" : "≥ " + bucket + " votes";
+            setText(voteCounts.isEmpty() ? label : label + " (" + count + ")");
+        }
+    }
+
+    /** Include check box and exclude toggle for one genre; selecting either clears the other. */
+    private final class GenreRow extends HBox {
+        final CheckBox include;
+        final ToggleButton exclude = new ToggleButton("✕");
+
+        GenreRow(String genre) {
+            super(6);
+            include = new CheckBox(genre);
+            include.setMaxWidth(Double.MAX_VALUE);
+            HBox.setHgrow(include, Priority.ALWAYS);
+            exclude.setTooltip(new Tooltip("Exclude " + genre));
+            exclude.getStyleClass().add("facet-exclude");
+            include.selectedProperty().addListener((obs, o, n) -> {
+                if (n) exclude.setSelected(false);
+                changed();
+            });
+            exclude.selectedProperty().addListener((obs, o, n) -> {
+                if (n) include.setSelected(false);
+                changed();
+            });
+            getChildren().addAll(include, exclude);
+        }
+    }
+}
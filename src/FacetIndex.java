@@ -0,0 +1,287 @@
+import java.sql.*;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * FacetIndex - in-memory bitmap indexes for filtering movies by genre, year and vote count.
+ * - one bitmap per genre; multi-genre strings ("Comedy|Drama", "Comedy, Drama") are split
+ *   on | , / ; and the movie is set in each genre's bitmap, matched case-insensitively
+ * - one bitmap per year, OR-ed together for a year range
+ * - one bitmap per vote bucket (VOTE_BUCKETS), cumulative, so "at least N votes" is one
+ *   bitmap plus a check of the movies in N's bucket
+ * - a Filter combines the facets with AND; genres inside it with OR (ANY) or AND (ALL),
+ *   and excluded genres with AND NOT
+ * - doc ids are assigned by descending average rating, so walking the result bitmap
+ *   yields the matches already sorted by average
+ *
+ * filter() also returns the facet counts for refining the filter, from the same bitmaps:
+ * per genre, decade and vote bucket, each counted with the other facets applied (and, for
+ * genres in ANY mode, without the genre selection itself, so alternatives keep their counts).
+ *
+ * Bitmaps are plain long[] words, 1 bit per movie; at a million movies that is 122 KB each.
+ * The index is immutable; rebuild it to pick up changed movies or ratings.
+ */
+public class FacetIndex {
+
+    /** A movie with its rating stats; avgRating is null for movies without ratings. */
+    public record Entry(Movies movie, Double avgRating, int votes) {}
+
+    public enum GenreMode { ANY, ALL }
+
+    /**
+     * Which movies to return. Empty genres and null years leave that facet open;
+     * years are inclusive. Movies without a year only match when no year range is set.
+     */
+    public record Filter(Set<String> genres, GenreMode genreMode, Set<String> excludedGenres,
+                         Integer fromYear, Integer toYear, int minVotes) {
+        public static Filter all() {
+            return new Filter(Set.of(), GenreMode.ANY, Set.of(), null, null, 0);
+        }
+    }
+
+    /**
+     * The first {@code limit} matches by average rating, how many matched in total, and the
+     * counts per genre, per decade (first year) and per vote bucket (lower bound).
+     */
+    public record Result(int total, List<Entry> movies, Map<String, Integer> genreCounts,
+                         Map<Integer, Integer> decadeCounts, Map<Integer, Integer> voteCounts) {}
+
+    /** Lower bounds of the vote-count buckets. */
+    public static final int[] VOTE_BUCKETS = {0, 1, 10, 50, 100, 500, 1_000, 5_000};
+
+    private static final Pattern GENRE_SEPARATORS = Pattern.compile("\\s*[|,/;]\\s*");
+
+    private final Entry[] docs;                              // doc id -> movie, best average first
+    private final int[] votes;                               // parallel to docs
+    private final Map<String, String> genreNames;            // lower case -> name as first seen
+    private final Map<String, long[]> genreBitmaps;          // lower case -> movies
+    private final TreeMap<Integer, long[]> yearBitmaps;
+    private final long[][] votesAtLeast;                     // parallel to VOTE_BUCKETS
+    private final long[] allDocs;
+    private final long builtAt = System.currentTimeMillis();
+
+    private FacetIndex(Entry[] docs, int[] votes, Map<String, String> genreNames, Map<String, long[]> genreBitmaps,
+                       TreeMap<Integer, long[]> yearBitmaps, long[][] votesAtLeast, long[] allDocs) {
+        this.docs = docs;
+        this.votes = votes;
+        this.genreNames = genreNames;
+        this.genreBitmaps = genreBitmaps;
+        this.yearBitmaps = yearBitmaps;
+        this.votesAtLeast = votesAtLeast;
+        this.allDocs = allDocs;
+    }
+
+    /** Build the index through a pooled connection. */
+    public static FacetIndex load() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) throw new SQLException("No database connection");
+            return load(conn);
+        }
+    }
+
+    public static FacetIndex load(Connection conn) throws SQLException {
+        String sql = """
+            SELECT m.movie_id, m.title, m.genre, m.year, AVG(r.rating) AS avg_rating, COUNT(r.rating) AS votes
+            FROM movies m
+            LEFT JOIN ratings r ON m.movie_id = r.movie_id
+            GROUP BY m.movie_id, m.title, m.genre, m.year
+            """;
+        List<Entry> movies = new ArrayList<>();
+        try (PreparedStatement ps = StreamingQuery.prepare(conn, sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                double avg = rs.getDouble("avg_rating");
+                Double avgRating = rs.wasNull() ? null : avg;
+                Movies movie = new Movies(rs.getString("movie_id"), rs.getString("title"),
+                        rs.getString("genre"), rs.getInt("year"));   // NULL year reads as 0, i.e. unknown
+                movies.add(new Entry(movie, avgRating, rs.getInt("votes")));
+            }
+        }
+        return build(movies);
+    }
+
+    public static FacetIndex build(Collection<Entry> movies) {
+        Comparator<Entry> byAverage = Comparator.comparing(Entry::avgRating,
+                Comparator.nullsLast(Comparator.reverseOrder()));
+        Entry[] docs = movies.stream()
+                .sorted(byAverage.thenComparing(Comparator.comparingInt(Entry::votes).reversed())
+                        .thenComparing(e -> e.movie().getMovie_id()))
+                .toArray(Entry[]::new);
+        int n = docs.length;
+        int[] votes = new int[n];
+
+        Map<String, String> genreNames = new TreeMap<>();
+        Map<String, long[]> genreBitmaps = new HashMap<>();
+        TreeMap<Integer, long[]> yearBitmaps = new TreeMap<>();
+        long[][] votesAtLeast = new long[VOTE_BUCKETS.length][];
+        for (int b = 0; b < VOTE_BUCKETS.length; b++) votesAtLeast[b] = bitmap(n);
+
+        for (int d = 0; d < n; d++) {
+            Movies m = docs[d].movie();
+            votes[d] = docs[d].votes();
+            for (String genre : splitGenres(m.getGenre())) {
+                String key = genre.toLowerCase(Locale.ROOT);
+                genreNames.putIfAbsent(key, genre);
+                set(genreBitmaps.computeIfAbsent(key, k -> bitmap(n)), d);
+            }
+            if (m.getYear() > 0) set(yearBitmaps.computeIfAbsent(m.getYear(), k -> bitmap(n)), d);
+            for (int b = 0; b < VOTE_BUCKETS.length && votes[d] >= VOTE_BUCKETS[b]; b++) set(votesAtLeast[b], d);
+        }
+        return new FacetIndex(docs, votes, genreNames, genreBitmaps, yearBitmaps, votesAtLeast, votesAtLeast[0]);
+    }
+
+    static List<String> splitGenres(String genre) {
+        if (genre == null || genre.isBlank()) return List.of();
+        List<String> genres = new ArrayList<>(2);
+        for (String g : GENRE_SEPARATORS.split(genre.trim())) {
+            if (!g.isEmpty()) genres.add(g);
+        }
+        return genres;
+    }
+
+    public long builtAt() {
+        return builtAt;
+    }
+
+    public int size() {
+        return docs.length;
+    }
+
+    /** Genre names in alphabetical order. */
+    public List<String> genres() {
+        return new ArrayList<>(genreNames.values());
+    }
+
+    // -------------------------
+    // Queries
+    // -------------------------
+
+    public Result filter(Filter f, int limit) {
+        long[] genreSel = genreSelection(f);                 // included genres, or all
+        long[] excluded = union(f.excludedGenres().stream().map(this::genreBitmap).toList());
+        long[] years = yearSelection(f.fromYear(), f.toYear());
+        long[] minVotes = votesAtLeast(f.minVotes());
+
+        long[] notGenre = and(andNot(years, excluded), minVotes);         // every facet but the genres
+        long[] result = and(notGenre, genreSel);
+
+        List<Entry> movies = new ArrayList<>(Math.min(limit, docs.length));
+        for (int d = nextSetBit(result, 0); d >= 0 && movies.size() < limit; d = nextSetBit(result, d + 1)) {
+            movies.add(docs[d]);
+        }
+
+        // genre alternatives count without the selection in ANY mode, refinements within it in ALL mode
+        long[] genreBase = f.genreMode() == GenreMode.ALL ? result : notGenre;
+        Map<String, Integer> genreCounts = new LinkedHashMap<>();
+        for (var e : genreNames.entrySet()) {
+            genreCounts.put(e.getValue(), andCardinality(genreBase, genreBitmaps.get(e.getKey())));
+        }
+
+        long[] notYears = and(andNot(genreSel, excluded), minVotes);
+        Map<Integer, Integer> decadeCounts = new TreeMap<>();
+        for (var e : yearBitmaps.entrySet()) {
+            int c = andCardinality(notYears, e.getValue());
+            if (c > 0) decadeCounts.merge(e.getKey() / 10 * 10, c, Integer::sum);
+        }
+
+        long[] notVotes = and(andNot(genreSel, excluded), years);
+        Map<Integer, Integer> voteCounts = new LinkedHashMap<>();
+        for (int b = 0; b < VOTE_BUCKETS.length; b++) {
+            int atLeast = andCardinality(notVotes, votesAtLeast[b]);
+            int above = b + 1 < VOTE_BUCKETS.length ? andCardinality(notVotes, votesAtLeast[b + 1]) : 0;
+            voteCounts.put(VOTE_BUCKETS[b], atLeast - above);
+        }
+
+        return new Result(cardinality(result), movies, genreCounts, decadeCounts, voteCounts);
+    }
+
+    private long[] genreBitmap(String genre) {
+        long[] b = genreBitmaps.get(genre.toLowerCase(Locale.ROOT));
+        return b != null ? b : bitmap(docs.length);
+    }
+
+    private long[] genreSelection(Filter f) {
+        if (f.genres().isEmpty()) return allDocs;
+        List<long[]> selected = f.genres().stream().map(this::genreBitmap).toList();
+        if (f.genreMode() == GenreMode.ANY) return union(selected);
+        long[] all = allDocs;
+        for (long[] g : selected) all = and(all, g);
+        return all;
+    }
+
+    private long[] yearSelection(Integer from, Integer to) {
+        if (from == null && to == null) return allDocs;
+        int lo = from != null ? from : Integer.MIN_VALUE;
+        int hi = to != null ? to : Integer.MAX_VALUE;
+        if (lo > hi) return bitmap(docs.length);
+        return union(yearBitmaps.subMap(lo, true, hi, true).values());
+    }
+
+    // the cumulative bucket at or below min, minus the movies in it that have fewer than min votes
+    private long[] votesAtLeast(int min) {
+        int b = 0;
+        while (b + 1 < VOTE_BUCKETS.length && VOTE_BUCKETS[b + 1] <= min) b++;
+        if (VOTE_BUCKETS[b] == min || min <= 0) return votesAtLeast[b];
+        long[] result = votesAtLeast[b].clone();
+        long[] partial = b + 1 < VOTE_BUCKETS.length ? andNot(result, votesAtLeast[b + 1]) : result.clone();
+        for (int d = nextSetBit(partial, 0); d >= 0; d = nextSetBit(partial, d + 1)) {
+            if (votes[d] < min) result[d >>> 6] &= ~(1L << d);
+        }
+        return result;
+    }
+
+    // -------------------------
+    // Bitmaps
+    // -------------------------
+
+    private static long[] bitmap(int bits) {
+        return new long[(bits + 63) >>> 6];
+    }
+
+    private static void set(long[] b, int bit) {
+        b[bit >>> 6] |= 1L << bit;
+    }
+
+    private long[] union(Collection<long[]> bitmaps) {
+        long[] r = bitmap(docs.length);
+        for (long[] b : bitmaps) {
+            for (int i = 0; i < r.length; i++) r[i] |= b[i];
+        }
+        return r;
+    }
+
+    private static long[] and(long[] a, long[] b) {
+        long[] r = new long[a.length];
+        for (int i = 0; i < r.length; i++) r[i] = a[i] & b[i];
+        return r;
+    }
+
+    private static long[] andNot(long[] a, long[] b) {
+        long[] r = new long[a.length];
+        for (int i = 0; i < r.length; i++) r[i] = a[i] & ~b[i];
+        return r;
+    }
+
+    private static int cardinality(long[] a) {
+        int c = 0;
+        for (long w : a) c += Long.bitCount(w);
+        return c;
+    }
+
+    private static int andCardinality(long[] a, long[] b) {
+        int c = 0;
+        for (int i = 0; i < a.length; i++) c += Long.bitCount(a[i] & b[i]);
+        return c;
+    }
+
+    private static int nextSetBit(long[] b, int from) {
+        int i = from >>> 6;
+        if (i >= b.length) return -1;
+        long w = b[i] & (-1L << from);
+        while (true) {
+            if (w != 0) return (i << 6) + Long.numberOfTrailingZeros(w);
+            if (++i == b.length) return -1;
+            w = b[i];
+        }
+    }
+}
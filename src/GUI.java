@@ -1,20 +1,50 @@
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
+import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.chart.*;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class GUI extends Application {
 
-    private final MovieAnalysis analysis = new MovieAnalysis();
+    private final CachedMovieAnalysis analysis = new CachedMovieAnalysis();
+    private final DashboardPreloader preloader = new DashboardPreloader();
+    private static final DateTimeFormatter AS_OF = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final ProgressIndicator progress = new ProgressIndicator();
+    private final PauseTransition searchDebounce = new PauseTransition(Duration.millis(250));
+    private final AsyncQueryExecutor queries = new AsyncQueryExecutor(busy -> progress.setVisible(busy));
+    // separate, so a selection change doesn't cancel the search table's page loads
+    private final AsyncQueryExecutor similarQueries = new AsyncQueryExecutor(busy -> {});
+    private final Label statusBar = new Label();
+    private final Timeline statusRefresh = new Timeline(new KeyFrame(Duration.seconds(1), e -> updateStatusBar()));
+
+    private static final int FILTER_LIMIT = 500;
+    private static final int SIMILAR_LIMIT = 10;
+
+    // results of the views that need more than one query
+    private record TopMoviesResult(String text, List<MovieAnalysis.MovieStat> data) {}
+    private record GenreResult(String text, Map<String, double[]> summary) {}
 
     private VBox outputTextArea;     // Text section
     private VBox chartsArea;         // Charts section
+    private FacetFilterPanel facets;  // Filter controls
 
     @Override
     public void start(Stage stage) {
@@ -32,24 +62,35 @@ public class GUI extends Application {
         Button btnGenre = createSidebarButton("📊 Rating by Genre");
         Button btnHistogram = createSidebarButton("📉 Rating Histogram");
         Button btnAgeGroup = createSidebarButton("👥 Rating by Age Group");
+        Button btnGenreAge = createSidebarButton("🧊 Genre × Age Group");
         Button btnRecommended = createSidebarButton("🔮 Recommendations");
 
+        TextField userField = new TextField();
+        userField.setPromptText("User id (optional)");
+        userField.getStyleClass().add("search-box");
+
         TextField searchField = new TextField();
         searchField.setPromptText("Search movie...");
         searchField.getStyleClass().add("search-box");
 
         Button btnSearch = createSidebarButton("🔍 Search");
 
+        facets = new FacetFilterPanel(this::runFilter);
+
         sidebar.getChildren().addAll(
                 menuLabel,
                 btnTopMovies,
                 btnGenre,
                 btnHistogram,     // << added
                 btnAgeGroup,
+                btnGenreAge,
+                userField,
                 btnRecommended,
                 new Separator(),
                 searchField,
-                btnSearch
+                btnSearch,
+                new Separator(),
+                facets
         );
 
         /* ------------------ CENTER CONTENT ------------------ */
@@ -59,7 +100,10 @@ public class GUI extends Application {
         chartsArea = new VBox(20);
         chartsArea.setPadding(new Insets(15));
 
-        VBox mainContent = new VBox(20, outputTextArea, chartsArea);
+        progress.setMaxSize(40, 40);
+        progress.setVisible(false);
+
+        VBox mainContent = new VBox(20, progress, outputTextArea, chartsArea);
         mainContent.setPadding(new Insets(20));
         mainContent.getStyleClass().add("main-content");
 
@@ -67,63 +111,88 @@ public class GUI extends Application {
         BorderPane root = new BorderPane();
         root.setLeft(sidebar);
         root.setCenter(mainContent);
+        root.setBottom(statusBar);
 
-        root.getStylesheets().add(getClass().getResource("/style/style.css").toExternalForm());
-
-        /* ---------------- BUTTON ACTIONS ---------------- */
-        btnTopMovies.setOnAction(e -> {
-            clearOutput();
-            outputTextArea.getChildren().add(new Label("⭐ TOP RATED MOVIES"));
-            outputTextArea.getChildren().add(new Label(analysis.getTopMoviesText()));
-            chartsArea.getChildren().add(generateBarChart());
-        });
-
-        btnGenre.setOnAction(e -> {
-            clearOutput();
-            outputTextArea.getChildren().add(new Label("📊 RATING DISTRIBUTION BY GENRE"));
-            outputTextArea.getChildren().add(new Label(analysis.getGenreText()));
-            chartsArea.getChildren().add(generateBoxPlot());
-        });
-
-        btnHistogram.setOnAction(e -> {
-            clearOutput();
-            outputTextArea.getChildren().add(new Label("📉 RATING DISTRIBUTION"));
-            Map<Integer, Integer> hist = analysis.getRatingHistogramData();
-
-            StringBuilder sb = new StringBuilder();
-            for (int i = 1; i <= 10; i++) {
-                sb.append("Rating ").append(i).append(" → ")
-                        .append(hist.get(i)).append(" votes\n");
-            }
+        statusBar.getStyleClass().add("status-bar");
+        statusBar.setMaxWidth(Double.MAX_VALUE);
+        statusRefresh.setCycleCount(Animation.INDEFINITE);
+        statusRefresh.play();
 
-            outputTextArea.getChildren().add(new Label(sb.toString()));
-            chartsArea.getChildren().add(generateHistogram());
-        });
+        root.getStylesheets().add(getClass().getResource("/style/style.css").toExternalForm());
 
+        /* ---------------- PRELOADED VIEWS ---------------- */
+        // loaded in parallel now and refreshed in the background; clicks show the latest result.
+        // The preloader is their cache, so they skip the result cache. Error text, or a data
+        // call that QueryMetrics saw fail (the data methods return empty or zero-filled
+        // results then), counts as a failed load; the data call is the loader's last one.
+        var topMovies = preloader.register("top movies", () -> analysis.uncached(() -> new TopMoviesResult(
+                        analysis.getTopMoviesText(), analysis.getTopMoviesData(10, 5))),
+                r -> isError(r.text()) || QueryMetrics.lastCallFailed());
+        var genre = preloader.register("genre summary", () -> analysis.uncached(() -> new GenreResult(
+                        analysis.getGenreText(), analysis.getGenreFiveNumberSummary())),
+                r -> isError(r.text()) || QueryMetrics.lastCallFailed());
+        var histogram = preloader.register("histogram",
+                () -> analysis.uncached(analysis::getRatingHistogramData), h -> QueryMetrics.lastCallFailed());
+        var ageGroup = preloader.register("age groups",
+                () -> analysis.uncached(analysis::getAgeGroupText), GUI::isError);
+        var recommended = preloader.register("recommendations",
+                () -> analysis.uncached(analysis::getRecommendedText), GUI::isError);
+        preloader.start();
 
-        btnAgeGroup.setOnAction(e -> {
-            clearOutput();
-            outputTextArea.getChildren().add(new Label("👥 RATING BY AGE GROUP"));
-            outputTextArea.getChildren().add(new Label(analysis.getAgeGroupText()));
-        });
+        /* ---------------- BUTTON ACTIONS ---------------- */
+        // queries run in the background; the handlers only build the UI from the results
+        btnTopMovies.setOnAction(e -> showPreloaded("⭐ TOP RATED MOVIES", topMovies,
+                r -> {
+                    outputTextArea.getChildren().add(new Label(r.text()));
+                    chartsArea.getChildren().add(generateBarChart(r.data()));
+                }));
+
+        btnGenre.setOnAction(e -> showPreloaded("📊 RATING DISTRIBUTION BY GENRE", genre,
+                r -> {
+                    outputTextArea.getChildren().add(new Label(r.text()));
+                    chartsArea.getChildren().add(generateBoxPlot(r.summary()));
+                }));
+
+        btnHistogram.setOnAction(e -> showPreloaded("📉 RATING DISTRIBUTION", histogram,
+                hist -> {
+                    StringBuilder sb = new StringBuilder();
+                    for (int i = 1; i <= 10; i++) {
+                        sb.append("Rating ").append(i).append(" → ")
+                                .append(hist.get(i)).append(" votes\n");
+                    }
+
+                    outputTextArea.getChildren().add(new Label(sb.toString()));
+                    chartsArea.getChildren().add(generateHistogram(hist));
+                }));
+
+        btnAgeGroup.setOnAction(e -> showPreloaded("👥 RATING BY AGE GROUP", ageGroup,
+                text -> outputTextArea.getChildren().add(new Label(text))));
+
+        btnGenreAge.setOnAction(e -> runQuery("🧊 RATING BY GENRE AND AGE GROUP",
+                analysis::getGenreAgeGroupText,
+                text -> outputTextArea.getChildren().add(new Label(text))));
 
         btnRecommended.setOnAction(e -> {
-            clearOutput();
-            outputTextArea.getChildren().add(new Label("🔮 RECOMMENDED MOVIES"));
-            outputTextArea.getChildren().add(new Label(analysis.getRecommendedText()));
+            String userId = userField.getText();
+            if (userId.isBlank()) {
+                showPreloaded("🔮 RECOMMENDED MOVIES", recommended,
+                        text -> outputTextArea.getChildren().add(new Label(text)));
+            } else {
+                runQuery("🔮 RECOMMENDED MOVIES",
+                        () -> analysis.getRecommendedText(userId),
+                        text -> outputTextArea.getChildren().add(new Label(text)));
+            }
         });
 
         btnSearch.setOnAction(e -> {
-            clearOutput();
-            String query = searchField.getText();
-            if (query.isEmpty()) {
-                outputTextArea.getChildren().add(new Label("❌ Enter a movie to search"));
-            } else {
-                outputTextArea.getChildren().add(new Label("🔍 SEARCH RESULTS"));
-                outputTextArea.getChildren().add(new Label(analysis.searchMovie(query)));
-            }
+            searchDebounce.stop();
+            runSearch(searchField.getText());
         });
 
+        // search as you type, once typing pauses
+        searchDebounce.setOnFinished(e -> runSearch(searchField.getText()));
+        searchField.textProperty().addListener((obs, oldText, newText) -> searchDebounce.playFromStart());
+
         /* ------------------ SCENE ------------------ */
         Scene scene = new Scene(root, 1200, 720);
         stage.setScene(scene);
@@ -138,17 +207,104 @@ public class GUI extends Application {
         return btn;
     }
 
+    private void runSearch(String query) {
+        if (query.isBlank()) {
+            queries.cancel();
+            clearOutput();
+            outputTextArea.getChildren().add(new Label("❌ Enter a movie to search"));
+        } else {
+            // first page here; the table fetches the rest as it is scrolled
+            runQuery("🔍 SEARCH RESULTS",
+                    () -> analysis.searchMoviesPage(query, null, SearchResultsTable.PAGE_SIZE),
+                    page -> {
+                        SearchResultsTable table = new SearchResultsTable(analysis, queries, query, page);
+                        table.getSelectionModel().selectedItemProperty().addListener((obs, old, hit) -> {
+                            if (hit != null) showSimilar(hit);
+                        });
+                        outputTextArea.getChildren().add(table);
+                    });
+        }
+    }
+
+    // "movies like this one" for the selected search result, below the table
+    private void showSimilar(TitleSearchIndex.Hit hit) {
+        Label list = new Label("Finding similar movies...");
+        chartsArea.getChildren().setAll(new Label("🎯 MOVIES LIKE " + hit.title()), list);
+        similarQueries.submit(() -> analysis.getSimilarMovies(hit.movieId(), SIMILAR_LIMIT), similar -> {
+            if (similar == null) {
+                list.setText("The similarity model is still training; select the movie again in a moment.");
+                return;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (var s : similar) sb.append(String.format("%s — %.0f%% similar%n", s.title(), s.similarity() * 100));
+            list.setText(sb.isEmpty() ? "No similar movies found." : sb.toString());
+        }, err -> list.setText("Error: " + err.getMessage()));
+    }
+
+    private void runFilter(FacetIndex.Filter filter) {
+        runQuery("🎛 FILTERED MOVIES", () -> analysis.filterMovies(filter, FILTER_LIMIT), result -> {
+            if (result == null) {
+                outputTextArea.getChildren().add(new Label("Error: the movie index could not be loaded"));
+                return;
+            }
+            facets.showCounts(result);
+            outputTextArea.getChildren().add(new Label(result.total() + " movies match"
+                    + (result.total() > FILTER_LIMIT ? ", best " + FILTER_LIMIT + " by average shown" : "")));
+            outputTextArea.getChildren().add(generateFilterTable(result.movies()));
+        });
+    }
+
     private void clearOutput() {
         outputTextArea.getChildren().clear();
         chartsArea.getChildren().clear();
     }
 
+    /** Show {@code title}, run {@code query} off the FX thread, then render its result. */
+    private <T> void runQuery(String title, Supplier<T> query, Consumer<T> render) {
+        clearOutput();
+        outputTextArea.getChildren().add(new Label(title));
+        queries.submit(query, render,
+                err -> outputTextArea.getChildren().add(new Label("Error: " + err.getMessage())));
+    }
+
+    /** Like runQuery, for a preloaded view: waits only if its first load is still running. */
+    private <T> void showPreloaded(String title, DashboardPreloader.Entry<T> entry, Consumer<T> render) {
+        runQuery(title, () -> entry.get().join(), p -> {
+            Label asOf = new Label("🕒 Data as of " + AS_OF.format(Instant.ofEpochMilli(p.loadedAt())));
+            asOf.getStyleClass().add("data-as-of");
+            outputTextArea.getChildren().add(asOf);
+            render.accept(p.value());
+        });
+    }
+
+    private static boolean isError(String text) {
+        return text.startsWith("Error: ");
+    }
+
+    // last call's phase breakdown, then totals over all calls so far
+    private void updateStatusBar() {
+        QueryMetrics.CallSummary last = QueryMetrics.lastCall();
+        if (last == null) return;
+        QueryMetricsMXBean all = QueryMetrics.overall();
+        statusBar.setText(String.format("%s   |   %d queries · p95 %.1f ms · %d errors",
+                last, all.getCalls(), all.getP95Millis(), all.getErrors()));
+    }
+
+    @Override
+    public void stop() {
+        statusRefresh.stop();
+        preloader.close();
+        queries.close();
+        similarQueries.close();
+        DatabaseConnection.shutdown();
+    }
+
     /* ===========================================================
                        CHARTS (REAL DATA)
        =========================================================== */
 
     /** BAR CHART — Top Movies */
-    private BarChart<String, Number> generateBarChart() {
+    private BarChart<String, Number> generateBarChart(List<MovieAnalysis.MovieStat> data) {
         CategoryAxis x = new CategoryAxis();
         NumberAxis y = new NumberAxis(0, 10, 1);
         BarChart<String, Number> chart = new BarChart<>(x, y);
@@ -158,7 +314,6 @@ public class GUI extends Application {
 
         XYChart.Series<String, Number> series = new XYChart.Series<>();
 
-        List<MovieAnalysis.MovieStat> data = analysis.getTopMoviesData(10, 5);
         for (var item : data) {
             series.getData().add(new XYChart.Data<>(item.title(), item.avgRating()));
         }
@@ -169,8 +324,46 @@ public class GUI extends Application {
         return chart;
     }
 
+    /** TABLE — Filtered Movies, best average first */
+    private TableView<FacetIndex.Entry> generateFilterTable(List<FacetIndex.Entry> movies) {
+        TableColumn<FacetIndex.Entry, String> title = new TableColumn<>("🎬 Title");
+        title.setCellValueFactory(c -> new SimpleStringProperty(c.getValue().movie().getTitle()));
+        title.setPrefWidth(380);
+
+        TableColumn<FacetIndex.Entry, String> genre = new TableColumn<>("Genre");
+        genre.setCellValueFactory(c -> new SimpleStringProperty(c.getValue().movie().getGenre()));
+        genre.setPrefWidth(150);
+
+        TableColumn<FacetIndex.Entry, String> year = new TableColumn<>("Year");
+        year.setCellValueFactory(c -> new SimpleStringProperty(c.getValue().movie().getYear() > 0
+                ? String.valueOf(c.getValue().movie().getYear()) : ""));
+        year.setPrefWidth(70);
+
+        TableColumn<FacetIndex.Entry, String> rating = new TableColumn<>("⭐ Rating");
+        rating.setCellValueFactory(c -> new SimpleStringProperty(c.getValue().avgRating() == null
+                ? "N/A" : String.format("%.2f", c.getValue().avgRating())));
+        rating.setPrefWidth(100);
+
+        TableColumn<FacetIndex.Entry, Integer> votes = new TableColumn<>("🗳 Votes");
+        votes.setCellValueFactory(c -> new SimpleObjectProperty<>(c.getValue().votes()));
+        votes.setPrefWidth(100);
+
+        TableView<FacetIndex.Entry> table = new TableView<>();
+        table.getColumns().add(title);
+        table.getColumns().add(genre);
+        table.getColumns().add(year);
+        table.getColumns().add(rating);
+        table.getColumns().add(votes);
+        table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+        table.setSortPolicy(t -> false);   // already sorted by average
+        table.setPlaceholder(new Label("❌ No movie matches these filters"));
+        table.setPrefHeight(480);
+        table.getItems().setAll(movies);
+        return table;
+    }
+
     /** HISTOGRAM — Rating Distribution */
-    private BarChart<String, Number> generateHistogram() {
+    private BarChart<String, Number> generateHistogram(Map<Integer, Integer> map) {
         CategoryAxis x = new CategoryAxis();
         NumberAxis y = new NumberAxis();
         BarChart<String, Number> chart = new BarChart<>(x, y);
@@ -180,7 +373,6 @@ public class GUI extends Application {
 
         XYChart.Series<String, Number> series = new XYChart.Series<>();
 
-        Map<Integer, Integer> map = analysis.getRatingHistogramData();
         for (int i = 1; i <= 10; i++)
             series.getData().add(new XYChart.Data<>(String.valueOf(i), map.get(i)));
 
@@ -191,7 +383,7 @@ public class GUI extends Application {
     }
 
     /** BOXPLOT (Simplified using Min, Median, Max) */
-    private BarChart<String, Number> generateBoxPlot() {
+    private BarChart<String, Number> generateBoxPlot(Map<String, double[]> bx) {
         CategoryAxis x = new CategoryAxis();
         NumberAxis y = new NumberAxis(0, 10, 1);
 
@@ -206,8 +398,6 @@ public class GUI extends Application {
         medS.setName("Median");
         maxS.setName("Max");
 
-        Map<String, double[]> bx = analysis.getGenreFiveNumberSummary();
-
         for (var entry : bx.entrySet()) {
             String genre = entry.getKey();
             double[] v = entry.getValue();
@@ -0,0 +1,31 @@
+import java.util.List;
+import java.util.Map;
+
+/**
+ * InMemoryAnalytics - the aggregates MovieAnalysis can answer without scanning ratings:
+ * from memory (RatingsSnapshot, RatingAggregates) or from the SummaryTables.
+ * Every method returns the same data as the matching SQL path in MovieAnalysis.
+ */
+public interface InMemoryAnalytics {
+
+    /** Top movies by average rating, like MovieAnalysis.getTopMoviesData. */
+    List<MovieAnalysis.MovieStat> topMovies(int limit, int minVotes);
+
+    /** (genre, rating) counts, genres in SQL ORDER BY order. */
+    Map<String, RatingCounts> genreRatingCounts();
+
+    /** (age group, rating) counts, groups in SQL ORDER BY order. */
+    Map<String, RatingCounts> ageGroupRatingCounts();
+
+    /** rating -> count over all ratings (keys 1..10 are filled in by the caller). */
+    Map<Integer, Integer> ratingHistogram();
+
+    /** Five-number summary per genre. */
+    default Map<String, double[]> genreFiveNumberSummary() {
+        Map<String, double[]> result = new java.util.LinkedHashMap<>();
+        for (var entry : genreRatingCounts().entrySet()) {
+            result.put(entry.getKey(), entry.getValue().fiveNumberSummary());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,292 @@
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.stream.IntStream;
+
+/**
+ * ItemBasedRecommender - item-item collaborative filtering over the ratings table.
+ * - ratings are held as a sparse user x item matrix in CSR form (int/float arrays),
+ *   both by user and by item, with each rating centred on its user's mean
+ * - item-item adjusted-cosine similarities are computed in parallel, one item per task,
+ *   keeping only each item's top-K neighbours
+ * - a user's top-N is predicted from the neighbours of the items they rated and
+ *   selected with a bounded heap
+ */
+public class ItemBasedRecommender implements Recommender {
+
+    /** One recommended movie with its predicted rating. */
+    public record Recommendation(String movieId, String title, double predictedRating) {}
+
+    private static final int DEFAULT_NEIGHBOURS = Integer.getInteger("movies.recommender.neighbours", 50);
+
+    // dictionaries
+    private final String[] itemIds;
+    private final String[] itemTitles;
+    private final Map<String, Integer> userIndex;
+
+    // by user: items rated and centred ratings; plus each user's mean
+    private final int[] userPtr;
+    private final int[] userItems;
+    private final float[] userVals;
+    private final float[] userMean;
+
+    // pruned neighbour lists per item, most similar first
+    private final int[][] neighbours;
+    private final float[][] similarities;
+
+    // idle accumulators for recommend(); calls run on virtual threads, so a per-thread cache
+    // would allocate one per request, while a pool bounded by the core count keeps a few hot
+    private final BlockingQueue<Scratch> scratch =
+            new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+    private final long builtAt = System.currentTimeMillis();
+
+    private ItemBasedRecommender(String[] itemIds, String[] itemTitles, Map<String, Integer> userIndex,
+                                 int[] userPtr, int[] userItems, float[] userVals, float[] userMean,
+                                 int[][] neighbours, float[][] similarities) {
+        this.itemIds = itemIds;
+        this.itemTitles = itemTitles;
+        this.userIndex = userIndex;
+        this.userPtr = userPtr;
+        this.userItems = userItems;
+        this.userVals = userVals;
+        this.userMean = userMean;
+        this.neighbours = neighbours;
+        this.similarities = similarities;
+    }
+
+    /** Build the model from the database through a pooled connection. */
+    public static ItemBasedRecommender load() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) throw new SQLException("No database connection");
+            return load(conn, DEFAULT_NEIGHBOURS);
+        }
+    }
+
+    public static ItemBasedRecommender load(Connection conn, int maxNeighbours) throws SQLException {
+        Map<String, Integer> itemIndex = new HashMap<>();
+        List<String> itemIds = new ArrayList<>();
+        List<String> titles = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT movie_id, title FROM movies");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                itemIndex.put(rs.getString("movie_id"), itemIds.size());
+                itemIds.add(rs.getString("movie_id"));
+                titles.add(rs.getString("title"));
+            }
+        }
+
+        Map<String, Integer> userIndex = new HashMap<>();
+        int[] us = new int[1024], is = new int[1024];
+        float[] vs = new float[1024];
+        int n = 0;
+        try (PreparedStatement ps = StreamingQuery.prepare(conn, "SELECT user_id, movie_id, rating FROM ratings");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                Integer item = itemIndex.get(rs.getString("movie_id"));
+                if (item == null) continue;
+                if (n == us.length) {
+                    us = Arrays.copyOf(us, n * 2);
+                    is = Arrays.copyOf(is, n * 2);
+                    vs = Arrays.copyOf(vs, n * 2);
+                }
+                us[n] = userIndex.computeIfAbsent(rs.getString("user_id"), k -> userIndex.size());
+                is[n] = item;
+                vs[n] = rs.getInt("rating");
+                n++;
+            }
+        }
+        return build(itemIds.toArray(new String[0]), titles.toArray(new String[0]), userIndex,
+                Arrays.copyOf(us, n), Arrays.copyOf(is, n), Arrays.copyOf(vs, n), maxNeighbours);
+    }
+
+    /**
+     * Build from rating triples (user index, item index, rating). If a user rated an item
+     * more than once, every rating counts.
+     */
+    static ItemBasedRecommender build(String[] itemIds, String[] itemTitles, Map<String, Integer> userIndex,
+                                      int[] users, int[] items, float[] ratings, int maxNeighbours) {
+        int userCount = userIndex.size();
+        int itemCount = itemIds.length;
+        int n = ratings.length;
+
+        // user means, then centre
+        double[] sum = new double[userCount];
+        int[] cnt = new int[userCount];
+        for (int k = 0; k < n; k++) {
+            sum[users[k]] += ratings[k];
+            cnt[users[k]]++;
+        }
+        float[] userMean = new float[userCount];
+        for (int u = 0; u < userCount; u++) userMean[u] = cnt[u] == 0 ? 0 : (float) (sum[u] / cnt[u]);
+
+        // CSR by user and by item
+        int[] userPtr = new int[userCount + 1];
+        int[] itemPtr = new int[itemCount + 1];
+        for (int k = 0; k < n; k++) {
+            userPtr[users[k] + 1]++;
+            itemPtr[items[k] + 1]++;
+        }
+        for (int u = 0; u < userCount; u++) userPtr[u + 1] += userPtr[u];
+        for (int i = 0; i < itemCount; i++) itemPtr[i + 1] += itemPtr[i];
+
+        int[] userItems = new int[n];
+        float[] userVals = new float[n];
+        int[] itemUsers = new int[n];
+        float[] itemVals = new float[n];
+        int[] uFill = Arrays.copyOf(userPtr, userCount);
+        int[] iFill = Arrays.copyOf(itemPtr, itemCount);
+        for (int k = 0; k < n; k++) {
+            float centred = ratings[k] - userMean[users[k]];
+            int u = users[k], i = items[k];
+            userItems[uFill[u]] = i;
+            userVals[uFill[u]++] = centred;
+            itemUsers[iFill[i]] = u;
+            itemVals[iFill[i]++] = centred;
+        }
+
+        // item norms
+        double[] norm = new double[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            double s = 0;
+            for (int p = itemPtr[i]; p < itemPtr[i + 1]; p++) s += (double) itemVals[p] * itemVals[p];
+            norm[i] = Math.sqrt(s);
+        }
+
+        // similarities, one item per task, each worker reusing its own dense accumulator
+        int[][] neighbours = new int[itemCount][];
+        float[][] similarities = new float[itemCount][];
+        ThreadLocal<double[]> dots = ThreadLocal.withInitial(() -> new double[itemCount]);
+        ThreadLocal<int[]> touchedBuf = ThreadLocal.withInitial(() -> new int[itemCount]);
+
+        IntStream.range(0, itemCount).parallel().forEach(i -> {
+            if (norm[i] == 0) {
+                neighbours[i] = new int[0];
+                similarities[i] = new float[0];
+                return;
+            }
+            double[] dot = dots.get();
+            int[] touched = touchedBuf.get();
+            int touchedCount = 0;
+
+            for (int p = itemPtr[i]; p < itemPtr[i + 1]; p++) {
+                int u = itemUsers[p];
+                double vi = itemVals[p];
+                for (int q = userPtr[u]; q < userPtr[u + 1]; q++) {
+                    int j = userItems[q];
+                    if (j == i) continue;
+                    if (dot[j] == 0) touched[touchedCount++] = j;
+                    dot[j] += vi * userVals[q];
+                    if (dot[j] == 0) dot[j] = Double.MIN_VALUE;   // keep it marked as touched
+                }
+            }
+
+            // bounded min-heap of the best neighbours
+            PriorityQueue<double[]> heap = new PriorityQueue<>(maxNeighbours + 1, Comparator.comparingDouble(a -> a[1]));
+            for (int t = 0; t < touchedCount; t++) {
+                int j = touched[t];
+                double sim = norm[j] == 0 ? 0 : dot[j] / (norm[i] * norm[j]);
+                dot[j] = 0;
+                if (sim <= 0) continue;
+                if (heap.size() < maxNeighbours) {
+                    heap.add(new double[]{j, sim});
+                } else if (sim > heap.peek()[1]) {
+                    heap.poll();
+                    heap.add(new double[]{j, sim});
+                }
+            }
+
+            int k = heap.size();
+            int[] nb = new int[k];
+            float[] sm = new float[k];
+            while (!heap.isEmpty()) {
+                double[] top = heap.poll();
+                k--;
+                nb[k] = (int) top[0];
+                sm[k] = (float) top[1];
+            }
+            neighbours[i] = nb;
+            similarities[i] = sm;
+        });
+
+        return new ItemBasedRecommender(itemIds, itemTitles, userIndex, userPtr, userItems, userVals, userMean,
+                neighbours, similarities);
+    }
+
+    @Override
+    public long builtAt() {
+        return builtAt;
+    }
+
+    @Override
+    public boolean knowsUser(String userId) {
+        return userIndex.containsKey(userId);
+    }
+
+    /**
+     * Top {@code n} unrated movies for {@code userId}, by predicted rating
+     * (user mean plus similarity-weighted centred ratings of the neighbours they rated).
+     * Empty for unknown users.
+     */
+    @Override
+    public List<Recommendation> recommend(String userId, int n) {
+        Integer u = userIndex.get(userId);
+        if (u == null || n <= 0) return new ArrayList<>();
+
+        Scratch sc = scratch.poll();
+        if (sc == null) sc = new Scratch(itemIds.length);   // all in use: allocate, and keep it if there is room
+        int from = userPtr[u], to = userPtr[u + 1];
+        for (int p = from; p < to; p++) sc.rated[userItems[p]] = true;
+
+        // similarity-weighted sum of the user's centred ratings, per candidate item
+        int touchedCount = 0;
+        for (int p = from; p < to; p++) {
+            float r = userVals[p];
+            int[] nb = neighbours[userItems[p]];
+            float[] sm = similarities[userItems[p]];
+            for (int k = 0; k < nb.length; k++) {
+                int j = nb[k];
+                if (sc.rated[j]) continue;
+                if (sc.weight[j] == 0) sc.touched[touchedCount++] = j;
+                sc.num[j] += sm[k] * r;
+                sc.weight[j] += sm[k];
+            }
+        }
+
+        PriorityQueue<Recommendation> heap = new PriorityQueue<>(n + 1,
+                Comparator.comparingDouble(Recommendation::predictedRating));
+        for (int t = 0; t < touchedCount; t++) {
+            int j = sc.touched[t];
+            double predicted = Math.max(1, Math.min(10, userMean[u] + sc.num[j] / sc.weight[j]));
+            sc.num[j] = 0;
+            sc.weight[j] = 0;
+            if (heap.size() < n) {
+                heap.add(new Recommendation(itemIds[j], itemTitles[j], predicted));
+            } else if (predicted > heap.peek().predictedRating()) {
+                heap.poll();
+                heap.add(new Recommendation(itemIds[j], itemTitles[j], predicted));
+            }
+        }
+        for (int p = from; p < to; p++) sc.rated[userItems[p]] = false;
+        scratch.offer(sc);
+
+        List<Recommendation> list = new ArrayList<>(heap);
+        list.sort(Comparator.comparingDouble(Recommendation::predictedRating).reversed());
+        return list;
+    }
+
+    // dense accumulators for one call at a time, left zeroed after every call
+    private static final class Scratch {
+        final double[] num;
+        final double[] weight;
+        final boolean[] rated;
+        final int[] touched;
+
+        Scratch(int items) {
+            num = new double[items];
+            weight = new double[items];
+            rated = new boolean[items];
+            touched = new int[items];
+        }
+    }
+}
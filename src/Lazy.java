@@ -0,0 +1,109 @@
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lazy - a value loaded from the database on first use and then kept current in the background.
+ * - get() loads it on the caller's thread the first time, under this holder's own lock;
+ *   getIfReady() starts that load in the background instead and returns null until it is done
+ * - after markStale(), or once the value is older than maxAgeMillis, get() starts one
+ *   background reload and keeps returning the old value until the new one is in
+ * - a failed load is printed and leaves the previous value (null on first use) in place
+ */
+final class Lazy<T> {
+
+    @FunctionalInterface
+    interface Loader<T> {
+        T load() throws SQLException;
+    }
+
+    private final Loader<T> initial;
+    private final Loader<T> reload;
+    private final long maxAgeMillis;
+    private volatile T value;
+    private volatile long loadedAt;
+    private volatile boolean stale;
+    private final AtomicBoolean loading = new AtomicBoolean();
+
+    Lazy(Loader<T> loader, long maxAgeMillis) {
+        this(loader, loader, maxAgeMillis);
+    }
+
+    /** {@code initial} for the first load (e.g. from a file), {@code reload} for every later one. */
+    Lazy(Loader<T> initial, Loader<T> reload, long maxAgeMillis) {
+        this.initial = initial;
+        this.reload = reload;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /** The value, loading it now on first use; null if that load failed. */
+    T get() {
+        T v = value;
+        if (v == null) {
+            synchronized (this) {
+                if (value == null) {
+                    try {
+                        set(QueryMetrics.build(initial::load));
+                    } catch (SQLException e) {
+                        e.printStackTrace();
+                    }
+                }
+                return value;
+            }
+        }
+        if (isStale()) loadInBackground(false);
+        return v;
+    }
+
+    /**
+     * The value, or null while the first load runs in the background (or after it failed;
+     * the next call tries again). For values too slow to build on a caller's thread.
+     */
+    T getIfReady() {
+        T v = value;
+        if (v == null) loadInBackground(true);
+        else if (isStale()) loadInBackground(false);
+        return v;
+    }
+
+    /** The value as it is, without loading or reloading it; null before the first load. */
+    T current() {
+        return value;
+    }
+
+    /** Reload on the caller's thread now. */
+    void refresh() throws SQLException {
+        set(QueryMetrics.build(reload::load));
+    }
+
+    /** The data changed: reload in the background on the next get(). */
+    void markStale() {
+        stale = true;
+    }
+
+    private void set(T v) {
+        if (v == null) return;
+        loadedAt = System.currentTimeMillis();
+        value = v;
+    }
+
+    private boolean isStale() {
+        return stale || System.currentTimeMillis() - loadedAt > maxAgeMillis;
+    }
+
+    // runs on a pool thread, so no QueryCancellation ticket is bound and no click can cancel it
+    private void loadInBackground(boolean first) {
+        if (!loading.compareAndSet(false, true)) return;
+        if (!first) stale = false;
+        CompletableFuture.runAsync(() -> {
+            try {
+                if (!first) set(reload.load());
+                else if (value == null) set(initial.load());   // unless an earlier first load just finished
+            } catch (SQLException e) {
+                e.printStackTrace();
+            } finally {
+                loading.set(false);
+            }
+        });
+    }
+}
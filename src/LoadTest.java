@@ -0,0 +1,194 @@
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * LoadTest - drives N concurrent simulated dashboard sessions through MovieAnalysis and
+ * reports p50/p95/p99 latency and throughput per method.
+ * - each session is a virtual thread that clicks the GUI's actions in a weighted mix
+ *   (search most often), pausing for an exponentially distributed think time in between
+ * - searches use words from real titles, recommendations real user ids
+ * - calls during the warm-up period are not recorded
+ * - a call counts as an error if it throws or returns "Error: ..." text
+ *
+ * Runs against whatever DatabaseConnection points at (-Dmovies.db.url), with the engine
+ * from -Dmovies.engine; --cached goes through CachedMovieAnalysis like the GUI does.
+ *
+ * Usage: LoadTest [--sessions N] [--duration SECONDS] [--warmup SECONDS] [--think MILLIS]
+ *        [--seed S] [--cached]
+ */
+public class LoadTest {
+
+    public record Options(int sessions, int durationSeconds, int warmupSeconds, int thinkMillis,
+                          long seed, boolean cached) {
+
+        public static Options defaults() {
+            return new Options(20, 60, 10, 500, 42, false);
+        }
+    }
+
+    /** One dashboard action and how often a session picks it, relative to the others. */
+    private record Action(String name, int weight, Function<Random, Object> call) {}
+
+    private static final class MethodStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+    }
+
+    private final Options options;
+    private final MovieAnalysis analysis;
+    private final Map<String, MethodStats> stats = new ConcurrentHashMap<>();
+    private List<String> searchTerms = List.of();
+    private List<String> userIds = List.of();
+
+    public LoadTest(Options options) {
+        this.options = options;
+        this.analysis = options.cached() ? new CachedMovieAnalysis() : new MovieAnalysis();
+    }
+
+    /** Run the sessions and print the report to stdout. */
+    public void run() throws SQLException, InterruptedException {
+        loadSamples();
+
+        List<Action> actions = List.of(
+                new Action("searchMovie", 30,
+                        r -> analysis.searchMovie(searchTerms.get(r.nextInt(searchTerms.size())))),
+                new Action("getTopMovies", 15, r -> {
+                    analysis.getTopMoviesText();
+                    return analysis.getTopMoviesData(10, 5);
+                }),
+                new Action("getGenre", 10, r -> {
+                    analysis.getGenreText();
+                    return analysis.getGenreFiveNumberSummary();
+                }),
+                new Action("getRatingHistogramData", 10, r -> analysis.getRatingHistogramData()),
+                new Action("getAgeGroupText", 10, r -> analysis.getAgeGroupText()),
+                new Action("getRecommendedText", 25,
+                        r -> analysis.getRecommendedText(userIds.isEmpty() ? "" : userIds.get(r.nextInt(userIds.size())))));
+        for (Action a : actions) stats.put(a.name(), new MethodStats());
+
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds());
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(options.durationSeconds());
+
+        try (ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int s = 0; s < options.sessions(); s++) {
+                Random random = new Random(options.seed() + s);
+                sessions.submit(() -> session(actions, random, measureFrom, end));
+            }
+        }
+        report(options.durationSeconds());
+    }
+
+    private Void session(List<Action> actions, Random random, long measureFrom, long end) throws InterruptedException {
+        int totalWeight = actions.stream().mapToInt(Action::weight).sum();
+        while (System.nanoTime() < end) {
+            int pick = random.nextInt(totalWeight);
+            Action action = actions.get(0);
+            for (Action a : actions) {
+                pick -= a.weight();
+                if (pick < 0) {
+                    action = a;
+                    break;
+                }
+            }
+
+            long t0 = System.nanoTime();
+            boolean error;
+            try {
+                Object result = action.call().apply(random);
+                error = result instanceof String text && text.startsWith("Error:");
+            } catch (RuntimeException e) {
+                error = true;
+            }
+            long t1 = System.nanoTime();
+
+            if (t0 >= measureFrom && t1 <= end) {
+                MethodStats m = stats.get(action.name());
+                m.latency.record(t1 - t0);
+                if (error) m.errors.incrementAndGet();
+            }
+
+            double think = -Math.log(1 - random.nextDouble()) * options.thinkMillis();
+            Thread.sleep((long) think);
+        }
+        return null;
+    }
+
+    // title words to search for and users to recommend to, sampled from the database
+    private void loadSamples() throws SQLException {
+        Set<String> terms = new LinkedHashSet<>();
+        List<String> users = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) throw new SQLException("No database connection");
+            try (PreparedStatement ps = conn.prepareStatement("SELECT title FROM movies LIMIT 500");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String title = rs.getString("title");
+                    if (title == null) continue;
+                    for (String word : title.split("\\s+")) {
+                        if (word.length() >= 3) terms.add(word);
+                    }
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement("SELECT DISTINCT user_id FROM ratings LIMIT 500");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) users.add(rs.getString("user_id"));
+            }
+        }
+        searchTerms = terms.isEmpty() ? List.of("the") : new ArrayList<>(terms);
+        userIds = users;
+    }
+
+    private void report(int seconds) {
+        System.out.printf("%n%d sessions, %ds measured, think %dms, engine %s%s%n", options.sessions(), seconds,
+                options.thinkMillis(), analysis.getEngine(), options.cached() ? ", cached" : "");
+        System.out.printf("%-24s %8s %8s %9s %9s %9s %9s %7s%n",
+                "method", "calls", "ops/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "errors");
+
+        LatencyHistogram all = new LatencyHistogram();
+        long errors = 0;
+        for (var e : new TreeMap<>(stats).entrySet()) {
+            LatencyHistogram h = e.getValue().latency;
+            printRow(e.getKey(), h, e.getValue().errors.get(), seconds);
+            all.add(h);
+            errors += e.getValue().errors.get();
+        }
+        printRow("TOTAL", all, errors, seconds);
+    }
+
+    private static void printRow(String name, LatencyHistogram h, long errors, int seconds) {
+        System.out.printf("%-24s %8d %8.1f %9.2f %9.2f %9.2f %9.2f %7d%n", name, h.count(),
+                (double) h.count() / seconds,
+                h.percentileNanos(50) / 1e6, h.percentileNanos(95) / 1e6, h.percentileNanos(99) / 1e6,
+                h.maxNanos() / 1e6, errors);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options d = Options.defaults();
+        int sessions = d.sessions(), duration = d.durationSeconds(), warmup = d.warmupSeconds(),
+                think = d.thinkMillis();
+        long seed = d.seed();
+        boolean cached = d.cached();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sessions" -> sessions = Integer.parseInt(args[++i]);
+                case "--duration" -> duration = Integer.parseInt(args[++i]);
+                case "--warmup" -> warmup = Integer.parseInt(args[++i]);
+                case "--think" -> think = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--cached" -> cached = true;
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        try {
+            new LoadTest(new Options(sessions, duration, warmup, think, seed, cached)).run();
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+}
@@ -1,15 +1,35 @@
+import java.util.Arrays;
+
 public class Main {
-    public static void main(String[] args) {
+    // Usage: Main [--batch | --batch=parallel | --serve]
+    // --batch computes the same report from a single ratings scan,
+    // --batch=parallel runs its distinct queries concurrently,
+    // --serve starts the HTTP/JSON ApiServer instead of printing the report.
+    public static void main(String[] args) throws java.io.IOException {
+        if (Arrays.asList(args).contains("--serve")) {
+            ApiServer.main(new String[0]);
+            return;
+        }
 
-        MovieAnalysis analysis = new MovieAnalysis();
+        BatchReport.Strategy batch = null;
+        for (String arg : args) {
+            if (arg.equals("--batch")) batch = BatchReport.Strategy.SINGLE_SCAN;
+            else if (arg.equals("--batch=parallel")) batch = BatchReport.Strategy.PARALLEL;
+        }
 
         System.out.println("=== MOVIE ANALYSIS REPORT ===");
 
-        analysis.topRatedMovies();
-        analysis.ratingDistributionByGenre();
-        analysis.ratingByAgeGroup();
-        analysis.recommendedMovies();
+        if (batch != null) {
+            new BatchReport(batch).print(System.out);
+        } else {
+            MovieAnalysis analysis = new MovieAnalysis();
+            analysis.topRatedMovies();
+            analysis.ratingDistributionByGenre();
+            analysis.ratingByAgeGroup();
+            analysis.recommendedMovies();
+        }
 
         System.out.println("\n=== END OF REPORT ===");
+        DatabaseConnection.shutdown();
     }
 }
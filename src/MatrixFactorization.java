@@ -0,0 +1,738 @@
+import java.io.*;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * MatrixFactorization - latent-factor model of the ratings table, trained with ALS.
+ * - a rating is predicted as the global mean plus the dot product of a user vector
+ *   and a movie vector, both dense float arrays of -Dmovies.mf.rank factors
+ * - each ALS half-step solves one rank × rank ridge regression per user (then per movie)
+ *   in parallel, regularized by -Dmovies.mf.lambda times the row's rating count
+ * - a fixed fraction of ratings (-Dmovies.mf.holdout) is held out of training and the
+ *   RMSE on it is reported, so rank and lambda can be tuned against it
+ * - similar(movieId, n) finds the nearest movie vectors by cosine similarity through an
+ *   inverted-file index: unit vectors are clustered by spherical k-means into about
+ *   sqrt(movies) lists, and a query scans only the -Dmovies.mf.probes lists whose
+ *   centroids are closest. The index is built on the first similar() call
+ * - save()/open() keep a trained model in a checksummed binary file, so serving does
+ *   not retrain on every start
+ *
+ * Usage: MatrixFactorization train FILE | info FILE | similar FILE MOVIE_ID
+ */
+public class MatrixFactorization implements Recommender {
+
+    /** A movie near another one in factor space. */
+    public record Similar(String movieId, String title, double similarity) {}
+
+    /** Training settings; fromProperties() reads the -Dmovies.mf.* overrides. */
+    public record Config(int rank, double lambda, int iterations, double holdout, long seed) {
+
+        public Config {
+            if (rank <= 0) throw new IllegalArgumentException("rank must be positive: " + rank);
+            if (lambda < 0) throw new IllegalArgumentException("lambda must not be negative: " + lambda);
+            if (iterations < 0) throw new IllegalArgumentException("iterations must not be negative: " + iterations);
+            if (holdout < 0 || holdout >= 1) throw new IllegalArgumentException("holdout must be in [0, 1): " + holdout);
+        }
+
+        public static Config fromProperties() {
+            return new Config(Integer.getInteger("movies.mf.rank", 16),
+                    Double.parseDouble(System.getProperty("movies.mf.lambda", "0.2")),
+                    Integer.getInteger("movies.mf.iterations", 10),
+                    Double.parseDouble(System.getProperty("movies.mf.holdout", "0.1")),
+                    Long.getLong("movies.mf.seed", 42));
+        }
+    }
+
+    private static final long MAGIC = 0x4D_4F_56_4D_46_41_43_31L;   // "MOVMFAC1"
+    private static final int VERSION = 1;
+    // lists scanned per similar() query; more probes trade speed for recall
+    private static final int PROBES = Integer.getInteger("movies.mf.probes", 12);
+    private static final int KMEANS_ITERATIONS = 10;
+    private static final int KMEANS_SAMPLE_PER_LIST = 64;
+
+    private final int rank;
+    private final double lambda;
+    private final float mean;
+    private final String[] itemIds;
+    private final String[] itemTitles;
+    private final String[] userIds;
+    private final Map<String, Integer> itemIndex = new HashMap<>();
+    private final Map<String, Integer> userIndex = new HashMap<>();
+
+    // row-major factors: user u at u * rank, movie i at i * rank; all zero if untrained
+    private final float[] userFactors;
+    private final float[] itemFactors;
+    // movie vectors scaled to unit length, for cosine similarity
+    private final float[] itemUnit;
+    private volatile VectorIndex vectorIndex;
+
+    // every movie each user rated, held out or not, ascending per user (CSR)
+    private final int[] ratedPtr;
+    private final int[] ratedItems;
+
+    private final double trainRmse;
+    private final double heldOutRmse;
+    private final long builtAt;
+
+    private MatrixFactorization(int rank, double lambda, float mean, String[] itemIds, String[] itemTitles,
+                                String[] userIds, float[] userFactors, float[] itemFactors,
+                                int[] ratedPtr, int[] ratedItems, double trainRmse, double heldOutRmse, long builtAt) {
+        this.rank = rank;
+        this.lambda = lambda;
+        this.mean = mean;
+        this.itemIds = itemIds;
+        this.itemTitles = itemTitles;
+        this.userIds = userIds;
+        this.userFactors = userFactors;
+        this.itemFactors = itemFactors;
+        this.ratedPtr = ratedPtr;
+        this.ratedItems = ratedItems;
+        this.trainRmse = trainRmse;
+        this.heldOutRmse = heldOutRmse;
+        this.builtAt = builtAt;
+        for (int i = 0; i < itemIds.length; i++) itemIndex.put(itemIds[i], i);
+        for (int u = 0; u < userIds.length; u++) userIndex.put(userIds[u], u);
+
+        itemUnit = new float[itemFactors.length];
+        for (int i = 0; i < itemIds.length; i++) {
+            double norm = 0;
+            for (int f = 0; f < rank; f++) norm += (double) itemFactors[i * rank + f] * itemFactors[i * rank + f];
+            if (norm == 0) continue;
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int f = 0; f < rank; f++) itemUnit[i * rank + f] = itemFactors[i * rank + f] * scale;
+        }
+    }
+
+    // -------------------------
+    // Training
+    // -------------------------
+
+    /** Train with Config.fromProperties() through a pooled connection. */
+    public static MatrixFactorization train() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) throw new SQLException("No database connection");
+            return train(conn, Config.fromProperties(), null);
+        }
+    }
+
+    /** Train on the ratings table; per-iteration RMSE goes to {@code log} unless it is null. */
+    public static MatrixFactorization train(Connection conn, Config config, PrintStream log) throws SQLException {
+        Map<String, Integer> itemIndex = new HashMap<>();
+        List<String> itemIds = new ArrayList<>();
+        List<String> titles = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT movie_id, title FROM movies");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                itemIndex.put(rs.getString("movie_id"), itemIds.size());
+                itemIds.add(rs.getString("movie_id"));
+                titles.add(rs.getString("title"));
+            }
+        }
+
+        Map<String, Integer> userIndex = new LinkedHashMap<>();
+        int[] us = new int[1024], is = new int[1024];
+        float[] vs = new float[1024];
+        int n = 0;
+        try (PreparedStatement ps = StreamingQuery.prepare(conn, "SELECT user_id, movie_id, rating FROM ratings");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                Integer item = itemIndex.get(rs.getString("movie_id"));
+                if (item == null) continue;
+                if (n == us.length) {
+                    us = Arrays.copyOf(us, n * 2);
+                    is = Arrays.copyOf(is, n * 2);
+                    vs = Arrays.copyOf(vs, n * 2);
+                }
+                us[n] = userIndex.computeIfAbsent(rs.getString("user_id"), k -> userIndex.size());
+                is[n] = item;
+                vs[n] = rs.getInt("rating");
+                n++;
+            }
+        }
+        return train(itemIds.toArray(new String[0]), titles.toArray(new String[0]),
+                userIndex.keySet().toArray(new String[0]),
+                Arrays.copyOf(us, n), Arrays.copyOf(is, n), Arrays.copyOf(vs, n), config, log);
+    }
+
+    /** Train from rating triples (user index, item index, rating). */
+    static MatrixFactorization train(String[] itemIds, String[] itemTitles, String[] userIds,
+                                     int[] users, int[] items, float[] ratings, Config config, PrintStream log) {
+        int rank = config.rank();
+        int userCount = userIds.length;
+        int itemCount = itemIds.length;
+        int n = ratings.length;
+
+        // split off the held-out ratings, by a hash of the pair so the split is repeatable
+        boolean[] held = new boolean[n];
+        int trainCount = 0;
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            held[k] = config.holdout() > 0 && unitHash(users[k], items[k], config.seed()) < config.holdout();
+            if (!held[k]) {
+                trainCount++;
+                sum += ratings[k];
+            }
+        }
+        float mean = trainCount == 0 ? 0 : (float) (sum / trainCount);
+        int[] trainUsers = new int[trainCount], trainItems = new int[trainCount];
+        float[] trainVals = new float[trainCount];
+        int[] testUsers = new int[n - trainCount], testItems = new int[n - trainCount];
+        float[] testVals = new float[n - trainCount];
+        for (int k = 0, t = 0, h = 0; k < n; k++) {
+            if (held[k]) {
+                testUsers[h] = users[k];
+                testItems[h] = items[k];
+                testVals[h++] = ratings[k];
+            } else {
+                trainUsers[t] = users[k];
+                trainItems[t] = items[k];
+                trainVals[t++] = ratings[k];
+            }
+        }
+
+        // training ratings, centred on the mean, as CSR by user and by item
+        Csr byUser = Csr.of(userCount, trainUsers, trainItems, trainVals, mean);
+        Csr byItem = Csr.of(itemCount, trainItems, trainUsers, trainVals, mean);
+
+        float[] userFactors = new float[userCount * rank];
+        float[] itemFactors = new float[itemCount * rank];
+        SplittableRandom random = new SplittableRandom(config.seed());
+        for (int i = 0; i < itemFactors.length; i++) itemFactors[i] = (float) (random.nextGaussian() * 0.1);
+
+        ThreadLocal<double[][]> scratch = ThreadLocal.withInitial(() -> new double[][]{new double[rank * rank], new double[rank]});
+        for (int it = 1; it <= config.iterations(); it++) {
+            solve(byUser, itemFactors, userFactors, rank, config.lambda(), scratch);
+            solve(byItem, userFactors, itemFactors, rank, config.lambda(), scratch);
+            if (log != null) {
+                log.printf("Iteration %d: train RMSE %.4f, held-out RMSE %.4f%n", it,
+                        rmse(trainUsers, trainItems, trainVals, mean, userFactors, itemFactors, rank),
+                        rmse(testUsers, testItems, testVals, mean, userFactors, itemFactors, rank));
+            }
+        }
+
+        // every rated movie per user, ascending, so recommend() can skip them in one merge
+        Csr rated = Csr.of(userCount, users, items, ratings, 0);
+        for (int u = 0; u < userCount; u++) Arrays.sort(rated.idx, rated.ptr[u], rated.ptr[u + 1]);
+
+        return new MatrixFactorization(rank, config.lambda(), mean, itemIds, itemTitles, userIds,
+                userFactors, itemFactors, rated.ptr, rated.idx,
+                rmse(trainUsers, trainItems, trainVals, mean, userFactors, itemFactors, rank),
+                rmse(testUsers, testItems, testVals, mean, userFactors, itemFactors, rank),
+                System.currentTimeMillis());
+    }
+
+    /**
+     * One ALS half-step: for every row, (Qᵀ Q + λ n I) x = Qᵀ r over the row's ratings,
+     * with Q the fixed side's vectors. Rows run in parallel, each worker reusing its own
+     * normal-equation buffers; rows without ratings get a zero vector.
+     */
+    private static void solve(Csr rows, float[] fixed, float[] target, int rank, double lambda,
+                              ThreadLocal<double[][]> scratch) {
+        IntStream.range(0, rows.ptr.length - 1).parallel().forEach(row -> {
+            int from = rows.ptr[row], to = rows.ptr[row + 1];
+            if (from == to) {
+                Arrays.fill(target, row * rank, (row + 1) * rank, 0f);
+                return;
+            }
+            double[][] buf = scratch.get();
+            double[] a = buf[0], b = buf[1];
+            Arrays.fill(a, 0);
+            Arrays.fill(b, 0);
+            for (int p = from; p < to; p++) {
+                int q = rows.idx[p] * rank;
+                double v = rows.vals[p];
+                for (int x = 0; x < rank; x++) {
+                    double qx = fixed[q + x];
+                    b[x] += v * qx;
+                    for (int y = 0; y <= x; y++) a[x * rank + y] += qx * fixed[q + y];
+                }
+            }
+            double reg = lambda * (to - from);
+            for (int x = 0; x < rank; x++) a[x * rank + x] += reg;
+
+            choleskySolve(a, b, rank);
+            for (int x = 0; x < rank; x++) target[row * rank + x] = (float) b[x];
+        });
+    }
+
+    /** Solve A x = b in place (x into b) for symmetric positive definite A, lower triangle given. */
+    static void choleskySolve(double[] a, double[] b, int n) {
+        for (int j = 0; j < n; j++) {
+            double d = a[j * n + j];
+            for (int k = 0; k < j; k++) d -= a[j * n + k] * a[j * n + k];
+            d = Math.sqrt(Math.max(d, 1e-9));   // lambda 0 and too few ratings: keep it solvable
+            a[j * n + j] = d;
+            for (int i = j + 1; i < n; i++) {
+                double s = a[i * n + j];
+                for (int k = 0; k < j; k++) s -= a[i * n + k] * a[j * n + k];
+                a[i * n + j] = s / d;
+            }
+        }
+        for (int i = 0; i < n; i++) {             // L z = b
+            double s = b[i];
+            for (int k = 0; k < i; k++) s -= a[i * n + k] * b[k];
+            b[i] = s / a[i * n + i];
+        }
+        for (int i = n - 1; i >= 0; i--) {        // Lᵀ x = z
+            double s = b[i];
+            for (int k = i + 1; k < n; k++) s -= a[k * n + i] * b[k];
+            b[i] = s / a[i * n + i];
+        }
+    }
+
+    private static double rmse(int[] users, int[] items, float[] ratings, float mean,
+                               float[] userFactors, float[] itemFactors, int rank) {
+        if (ratings.length == 0) return Double.NaN;
+        double squared = IntStream.range(0, ratings.length).parallel().mapToDouble(k -> {
+            double e = predict(mean, userFactors, users[k] * rank, itemFactors, items[k] * rank, rank) - ratings[k];
+            return e * e;
+        }).sum();
+        return Math.sqrt(squared / ratings.length);
+    }
+
+    private static double predict(float mean, float[] userFactors, int u, float[] itemFactors, int i, int rank) {
+        double dot = 0;
+        for (int f = 0; f < rank; f++) dot += userFactors[u + f] * itemFactors[i + f];
+        return Math.max(1, Math.min(10, mean + dot));
+    }
+
+    // uniform in [0, 1) from a (user, item) pair
+    private static double unitHash(int user, int item, long seed) {
+        long h = seed ^ ((long) user << 32 | (item & 0xFFFFFFFFL));
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    // compressed rows: row r's entries are idx/vals[ptr[r] .. ptr[r + 1])
+    private record Csr(int[] ptr, int[] idx, float[] vals) {
+        static Csr of(int rows, int[] row, int[] col, float[] val, float centre) {
+            int[] ptr = new int[rows + 1];
+            for (int r : row) ptr[r + 1]++;
+            for (int r = 0; r < rows; r++) ptr[r + 1] += ptr[r];
+            int[] idx = new int[row.length];
+            float[] vals = new float[row.length];
+            int[] fill = Arrays.copyOf(ptr, rows);
+            for (int k = 0; k < row.length; k++) {
+                int p = fill[row[k]]++;
+                idx[p] = col[k];
+                vals[p] = val[k] - centre;
+            }
+            return new Csr(ptr, idx, vals);
+        }
+    }
+
+    // -------------------------
+    // Serving
+    // -------------------------
+
+    @Override
+    public long builtAt() {
+        return builtAt;
+    }
+
+    public int rank() {
+        return rank;
+    }
+
+    public double lambda() {
+        return lambda;
+    }
+
+    /** RMSE over the training ratings and over the held-out ones (NaN without a holdout). */
+    public double trainRmse() {
+        return trainRmse;
+    }
+
+    public double heldOutRmse() {
+        return heldOutRmse;
+    }
+
+    @Override
+    public boolean knowsUser(String userId) {
+        return userIndex.containsKey(userId);
+    }
+
+    /** Predicted rating of a movie by a user, or NaN if either is unknown. */
+    public double predict(String userId, String movieId) {
+        Integer u = userIndex.get(userId);
+        Integer i = itemIndex.get(movieId);
+        if (u == null || i == null) return Double.NaN;
+        return predict(mean, userFactors, u * rank, itemFactors, i * rank, rank);
+    }
+
+    /**
+     * Top {@code n} movies the user has not rated, by predicted rating; movies without
+     * training ratings are skipped. Empty for unknown users.
+     */
+    @Override
+    public List<ItemBasedRecommender.Recommendation> recommend(String userId, int n) {
+        Integer u = userIndex.get(userId);
+        if (u == null || n <= 0) return new ArrayList<>();
+
+        PriorityQueue<ItemBasedRecommender.Recommendation> heap = new PriorityQueue<>(n + 1,
+                Comparator.comparingDouble(ItemBasedRecommender.Recommendation::predictedRating));
+        int p = ratedPtr[u], end = ratedPtr[u + 1];
+        for (int i = 0; i < itemIds.length; i++) {
+            while (p < end && ratedItems[p] < i) p++;
+            if ((p < end && ratedItems[p] == i) || !trained(i)) continue;
+            double predicted = predict(mean, userFactors, u * rank, itemFactors, i * rank, rank);
+            if (heap.size() < n) {
+                heap.add(new ItemBasedRecommender.Recommendation(itemIds[i], itemTitles[i], predicted));
+            } else if (predicted > heap.peek().predictedRating()) {
+                heap.poll();
+                heap.add(new ItemBasedRecommender.Recommendation(itemIds[i], itemTitles[i], predicted));
+            }
+        }
+        List<ItemBasedRecommender.Recommendation> list = new ArrayList<>(heap);
+        list.sort(Comparator.comparingDouble(ItemBasedRecommender.Recommendation::predictedRating).reversed());
+        return list;
+    }
+
+    /**
+     * The {@code n} movies whose vectors are most cosine-similar to this one's, among the
+     * PROBES index lists nearest to it; empty if it is unknown or untrained.
+     */
+    public List<Similar> similar(String movieId, int n) {
+        Integer target = itemIndex.get(movieId);
+        if (target == null || n <= 0 || !trained(target)) return new ArrayList<>();
+        return vectorIndex().nearest(target, n, PROBES);
+    }
+
+    /** Exact top {@code n} by one scan over every movie vector; the baseline similar() approximates. */
+    List<Similar> similarExact(String movieId, int n) {
+        Integer target = itemIndex.get(movieId);
+        if (target == null || n <= 0 || !trained(target)) return new ArrayList<>();
+        return vectorIndex().nearest(target, n, Integer.MAX_VALUE);
+    }
+
+    private VectorIndex vectorIndex() {
+        VectorIndex index = vectorIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = vectorIndex;
+                if (index == null) vectorIndex = index = buildIndex();
+            }
+        }
+        return index;
+    }
+
+    // -------------------------
+    // Similar-movie index
+    // -------------------------
+
+    /**
+     * Inverted-file index over the trained movies' unit vectors: list l holds
+     * items[ptr[l], ptr[l + 1]), whose vectors are copied alongside in the same order so a
+     * list scans contiguous memory. Centroids are unit length too.
+     */
+    private final class VectorIndex {
+        private final float[] centroids;
+        private final int lists;
+        private final int[] ptr;
+        private final int[] items;
+        private final float[] vectors;
+
+        VectorIndex(float[] centroids, int lists, int[] ptr, int[] items, float[] vectors) {
+            this.centroids = centroids;
+            this.lists = lists;
+            this.ptr = ptr;
+            this.items = items;
+            this.vectors = vectors;
+        }
+
+        List<Similar> nearest(int target, int n, int probes) {
+            int t = target * rank;
+            float[] score = new float[lists];
+            for (int l = 0; l < lists; l++) score[l] = dot(itemUnit, t, centroids, l * rank);
+
+            PriorityQueue<Similar> heap = new PriorityQueue<>(n + 1, Comparator.comparingDouble(Similar::similarity));
+            boolean[] probed = new boolean[lists];
+            for (int p = 0; p < Math.min(probes, lists); p++) {
+                int best = -1;
+                for (int l = 0; l < lists; l++) {
+                    if (!probed[l] && (best < 0 || score[l] > score[best])) best = l;
+                }
+                probed[best] = true;
+                for (int k = ptr[best]; k < ptr[best + 1]; k++) {
+                    int i = items[k];
+                    if (i == target) continue;
+                    float dot = dot(itemUnit, t, vectors, k * rank);
+                    if (heap.size() < n) {
+                        heap.add(new Similar(itemIds[i], itemTitles[i], dot));
+                    } else if (dot > heap.peek().similarity()) {
+                        heap.poll();
+                        heap.add(new Similar(itemIds[i], itemTitles[i], dot));
+                    }
+                }
+            }
+            List<Similar> list = new ArrayList<>(heap);
+            list.sort(Comparator.comparingDouble(Similar::similarity).reversed());
+            return list;
+        }
+    }
+
+    // spherical k-means on a sample of the trained movies, then every movie to its nearest centroid
+    private VectorIndex buildIndex() {
+        int[] trained = IntStream.range(0, itemIds.length).filter(this::trained).toArray();
+        int lists = Math.max(1, (int) Math.round(Math.sqrt(trained.length)));
+        Random random = new Random(42);
+
+        int[] sample = trained.clone();
+        for (int i = sample.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = sample[i];
+            sample[i] = sample[j];
+            sample[j] = tmp;
+        }
+        sample = Arrays.copyOf(sample, Math.min(sample.length, lists * KMEANS_SAMPLE_PER_LIST));
+
+        float[] centroids = new float[lists * rank];
+        for (int l = 0; l < lists && l < sample.length; l++) {
+            System.arraycopy(itemUnit, sample[l] * rank, centroids, l * rank, rank);
+        }
+        int[] sampled = sample;
+        for (int iteration = 0; iteration < KMEANS_ITERATIONS; iteration++) {
+            float[] current = centroids;
+            int[] assigned = IntStream.range(0, sampled.length).parallel()
+                    .map(s -> nearestCentroid(current, lists, sampled[s] * rank)).toArray();
+            double[] sums = new double[lists * rank];
+            for (int s = 0; s < sampled.length; s++) {
+                for (int f = 0; f < rank; f++) sums[assigned[s] * rank + f] += itemUnit[sampled[s] * rank + f];
+            }
+            float[] next = current.clone();   // an empty list keeps its centroid
+            for (int l = 0; l < lists; l++) {
+                double norm = 0;
+                for (int f = 0; f < rank; f++) norm += sums[l * rank + f] * sums[l * rank + f];
+                if (norm == 0) continue;
+                for (int f = 0; f < rank; f++) next[l * rank + f] = (float) (sums[l * rank + f] / Math.sqrt(norm));
+            }
+            centroids = next;
+        }
+
+        float[] finalCentroids = centroids;
+        int[] list = Arrays.stream(trained).parallel()
+                .map(i -> nearestCentroid(finalCentroids, lists, i * rank)).toArray();
+        int[] ptr = new int[lists + 1];
+        for (int l : list) ptr[l + 1]++;
+        for (int l = 0; l < lists; l++) ptr[l + 1] += ptr[l];
+        int[] fill = Arrays.copyOf(ptr, lists);
+        int[] items = new int[trained.length];
+        float[] vectors = new float[trained.length * rank];
+        for (int k = 0; k < trained.length; k++) {
+            int slot = fill[list[k]]++;
+            items[slot] = trained[k];
+            System.arraycopy(itemUnit, trained[k] * rank, vectors, slot * rank, rank);
+        }
+        return new VectorIndex(finalCentroids, lists, ptr, items, vectors);
+    }
+
+    private int nearestCentroid(float[] centroids, int lists, int offset) {
+        int best = 0;
+        float bestDot = Float.NEGATIVE_INFINITY;
+        for (int l = 0; l < lists; l++) {
+            float dot = dot(itemUnit, offset, centroids, l * rank);
+            if (dot > bestDot) {
+                bestDot = dot;
+                best = l;
+            }
+        }
+        return best;
+    }
+
+    private float dot(float[] a, int aOffset, float[] b, int bOffset) {
+        float dot = 0;
+        for (int f = 0; f < rank; f++) dot += a[aOffset + f] * b[bOffset + f];
+        return dot;
+    }
+
+    private boolean trained(int item) {
+        for (int f = item * rank, end = f + rank; f < end; f++) {
+            if (itemUnit[f] != 0) return true;
+        }
+        return false;
+    }
+
+    // -------------------------
+    // Model file
+    // -------------------------
+
+    /**
+     * Write the model to a temporary file, force it to disk and atomically rename it over
+     * {@code file}. The body is followed by its CRC32C.
+     */
+    public void save(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+                CRC32C crc = new CRC32C();
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fos, 1 << 16), crc));
+                out.writeLong(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(builtAt);
+                out.writeInt(rank);
+                out.writeDouble(lambda);
+                out.writeFloat(mean);
+                out.writeDouble(trainRmse);
+                out.writeDouble(heldOutRmse);
+                out.writeInt(itemIds.length);
+                out.writeInt(userIds.length);
+                out.writeInt(ratedItems.length);
+                for (int i = 0; i < itemIds.length; i++) {
+                    writeString(out, itemIds[i]);
+                    writeString(out, itemTitles[i]);
+                }
+                for (String id : userIds) writeString(out, id);
+                for (float v : itemFactors) out.writeFloat(v);
+                for (float v : userFactors) out.writeFloat(v);
+                for (int p : ratedPtr) out.writeInt(p);
+                for (int i : ratedItems) out.writeInt(i);
+                out.writeLong(crc.getValue());
+                out.flush();
+                fos.getFD().sync();
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Read a model written by save(); fails on a bad magic, version or checksum. */
+    public static MatrixFactorization open(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16), crc))) {
+            if (in.readLong() != MAGIC) throw new IOException(file + " is not a model file");
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException(file + " has format version " + version + ", expected " + VERSION);
+            long builtAt = in.readLong();
+            int rank = in.readInt();
+            double lambda = in.readDouble();
+            float mean = in.readFloat();
+            double trainRmse = in.readDouble();
+            double heldOutRmse = in.readDouble();
+            int items = in.readInt();
+            int users = in.readInt();
+            int rated = in.readInt();
+            if (rank <= 0 || items < 0 || users < 0 || rated < 0) throw new IOException(file + " has a corrupt header");
+
+            String[] itemIds = new String[items];
+            String[] itemTitles = new String[items];
+            for (int i = 0; i < items; i++) {
+                itemIds[i] = readString(in);
+                itemTitles[i] = readString(in);
+            }
+            String[] userIds = new String[users];
+            for (int u = 0; u < users; u++) userIds[u] = readString(in);
+            float[] itemFactors = new float[Math.multiplyExact(items, rank)];
+            for (int i = 0; i < itemFactors.length; i++) itemFactors[i] = in.readFloat();
+            float[] userFactors = new float[Math.multiplyExact(users, rank)];
+            for (int i = 0; i < userFactors.length; i++) userFactors[i] = in.readFloat();
+            int[] ratedPtr = new int[users + 1];
+            for (int i = 0; i < ratedPtr.length; i++) ratedPtr[i] = in.readInt();
+            int[] ratedItems = new int[rated];
+            for (int i = 0; i < rated; i++) ratedItems[i] = in.readInt();
+
+            long expected = crc.getValue();
+            if (in.readLong() != expected) throw new IOException(file + " fails its checksum");
+            return new MatrixFactorization(rank, lambda, mean, itemIds, itemTitles, userIds,
+                    userFactors, itemFactors, ratedPtr, ratedItems, trainRmse, heldOutRmse, builtAt);
+        }
+    }
+
+    /**
+     * The model in {@code file} if it can be read, else a newly trained one, which is
+     * written to {@code file} for the next start.
+     */
+    public static MatrixFactorization openOrTrain(Path file) throws SQLException {
+        if (Files.exists(file)) {
+            try {
+                return open(file);
+            } catch (IOException e) {
+                System.err.println("Ignoring model " + file + ": " + e.getMessage());
+            }
+        }
+        return trainAndSave(file);
+    }
+
+    /** Train a new model and write it to {@code file}. */
+    public static MatrixFactorization trainAndSave(Path file) throws SQLException {
+        MatrixFactorization model = train();
+        try {
+            model.save(file);
+        } catch (IOException e) {
+            System.err.println("Could not write model " + file + ": " + e.getMessage());
+        }
+        return model;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) out.writeUTF(s);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // -------------------------
+    // Command line
+    // -------------------------
+
+    public static void main(String[] args) throws Exception {
+        boolean ok = (args.length == 2 && (args[0].equals("train") || args[0].equals("info")))
+                || (args.length == 3 && args[0].equals("similar"));
+        if (!ok) {
+            System.err.println("Usage: MatrixFactorization train FILE | info FILE | similar FILE MOVIE_ID");
+            System.exit(2);
+        }
+        Path file = Path.of(args[1]);
+        try {
+            if (args[0].equals("train")) {
+                Config config = Config.fromProperties();
+                System.out.printf("Training rank %d, lambda %.3f, %d iterations, %.0f%% held out%n",
+                        config.rank(), config.lambda(), config.iterations(), config.holdout() * 100);
+                long start = System.nanoTime();
+                MatrixFactorization model;
+                try (Connection conn = DatabaseConnection.getConnection()) {
+                    if (conn == null) throw new SQLException("No database connection");
+                    model = train(conn, config, System.out);
+                }
+                model.save(file);
+                System.out.printf("Wrote %s (%,d bytes) in %.1f s%n", file, Files.size(file),
+                        (System.nanoTime() - start) / 1e9);
+            } else {
+                long start = System.nanoTime();
+                MatrixFactorization model = open(file);
+                double openMillis = (System.nanoTime() - start) / 1e6;
+                if (args[0].equals("info")) {
+                    System.out.printf("%s: %,d movies, %,d users, rank %d, lambda %.3f, trained %s%n", file,
+                            model.itemIds.length, model.userIds.length, model.rank, model.lambda,
+                            new java.util.Date(model.builtAt));
+                    System.out.printf("train RMSE %.4f, held-out RMSE %.4f, opened in %.1f ms%n",
+                            model.trainRmse, model.heldOutRmse, openMillis);
+                } else {
+                    start = System.nanoTime();
+                    model.vectorIndex();
+                    double indexMillis = (System.nanoTime() - start) / 1e6;
+                    start = System.nanoTime();
+                    List<Similar> similar = model.similar(args[2], 10);
+                    long micros = (System.nanoTime() - start) / 1_000;
+                    if (similar.isEmpty()) System.out.println("No similar movies for " + args[2]);
+                    for (Similar s : similar) System.out.printf("%-40s %.3f%n", s.title(), s.similarity());
+                    System.out.printf("Index built in %.1f ms, answered in %d µs%n", indexMillis, micros);
+                }
+            }
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+}
@@ -1,3 +1,6 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
 import java.sql.*;
 import java.util.*;
 
@@ -7,18 +10,348 @@ import java.util.*;
  * - text-return methods (for GUI)
  * - data-return methods (for charts)
  *
- * Relies on DatabaseConnection.getConnection()
+ * Relies on DatabaseConnection.getConnection(), which hands out pooled connections
+ * that cache prepared statements per SQL string.
+ *
+ * Where answers come from:
+ * - aggregates: SQL, over the SummaryTables once SchemaMigrations has created them, or
+ *   in memory with the SNAPSHOT or AGGREGATES engine
+ * - searchMovie: SQL; searchMovieIndexed and searchMoviesPage: TitleSearchIndex
+ * - filterMovies: FacetIndex
+ * - getRecommendedText(userId): ItemBasedRecommender, or MatrixFactorization with
+ *   -Dmovies.recommender=factors, titled through EntityRepository; getSimilarMovies:
+ *   MatrixFactorization
+ * - getGenreAgeGroupText: RatingCube
+ *
+ * Indexes and models are built on first use and rebuilt in the background (see Lazy).
+ * Ratings are written through submitRating/submitRatings, which keep the running
+ * aggregates current. Every query method runs through QueryMetrics.measure.
  */
 public class MovieAnalysis {
 
     // Simple record to hold top-movie stats
     public record MovieStat(String title, double avgRating, int votes) {}
 
+    /**
+     * Position after the last row of a search page: its exact average (null for movies
+     * without ratings, which sort last) and movie_id.
+     */
+    public record SearchCursor(BigDecimal avgRating, String movieId) {}
+
+    /** One page of search results; next is null on the last page. */
+    public record SearchPage(List<TitleSearchIndex.Hit> hits, SearchCursor next) {}
+
+    /**
+     * Where aggregates are computed: a SQL query per call (over SummaryTables when the
+     * schema has them), scans over a RatingsSnapshot (mapped from a SnapshotFile when
+     * -Dmovies.snapshot.file is set), or the running totals in RatingAggregates.
+     */
+    public enum Engine { SQL, SNAPSHOT, AGGREGATES }
+
+    private volatile Engine engine = Engine.valueOf(System.getProperty("movies.engine", "SQL").toUpperCase());
+    private volatile RatingAggregates aggregates;
+    private final SummaryTables summaryTables = new SummaryTables();
+
+    private static final long DELTA_POLL_MILLIS = Long.getLong("movies.delta.pollMillis", 1_000);
+    private volatile long aggregatesCheckedAt;
+
+    private static final String SNAPSHOT_FILE = System.getProperty("movies.snapshot.file");
+    // columns are immutable: a write marks the snapshot stale and reads keep the old one until
+    // the background reload is in, so a burst of writes costs one reload rather than one each
+    private final Lazy<InMemoryAnalytics> snapshot = new Lazy<>(MovieAnalysis::loadSnapshot,
+            MovieAnalysis::reloadSnapshot, Long.MAX_VALUE);
+
+    private static final long TITLE_INDEX_MAX_AGE_MILLIS = Long.getLong("movies.search.refreshMillis", 300_000);
+    private final Lazy<TitleSearchIndex> titleIndex = new Lazy<>(TitleSearchIndex::load, TITLE_INDEX_MAX_AGE_MILLIS);
+
+    private static final long FACET_INDEX_MAX_AGE_MILLIS = Long.getLong("movies.facets.refreshMillis", 300_000);
+    private final Lazy<FacetIndex> facetIndex = new Lazy<>(FacetIndex::load, FACET_INDEX_MAX_AGE_MILLIS);
+
+    private static final RatingCube.AgeBuckets AGE_BUCKETS = RatingCube.AgeBuckets.parse(System.getProperty("movies.ageBuckets"));
+    private final Lazy<RatingCube> cube = new Lazy<>(this::buildCube, MovieAnalysis::buildFreshCube, Long.MAX_VALUE);
+
+    private final Lazy<ItemBasedRecommender> recommender = new Lazy<>(ItemBasedRecommender::load, Long.MAX_VALUE);
+
+    // the models keep the titles they were built with; recommendations show the movies as they are now
+    private final EntityRepository entities = new EntityRepository();
+
+    // -Dmovies.recommender=factors serves personal recommendations from the MatrixFactorization
+    private static final boolean FACTOR_RECOMMENDER = "factors".equalsIgnoreCase(System.getProperty("movies.recommender"));
+    private static final String FACTORS_FILE = System.getProperty("movies.mf.file");
+    private final Lazy<MatrixFactorization> factors = new Lazy<>(
+            () -> FACTORS_FILE != null ? MatrixFactorization.openOrTrain(Path.of(FACTORS_FILE)) : MatrixFactorization.train(),
+            () -> FACTORS_FILE != null ? MatrixFactorization.trainAndSave(Path.of(FACTORS_FILE)) : MatrixFactorization.train(),
+            Long.MAX_VALUE);
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    /** Reload the in-memory snapshot from the database (used by the SNAPSHOT engine). */
+    public void refreshSnapshot() throws SQLException {
+        snapshot.refresh();
+    }
+
+    // the snapshot file when it matches the database, else a fresh load (written back to the file)
+    private static InMemoryAnalytics loadSnapshot() throws SQLException {
+        return (SNAPSHOT_FILE != null) ? SnapshotFile.openOrLoad(Path.of(SNAPSHOT_FILE)) : RatingsSnapshot.load();
+    }
+
+    private static InMemoryAnalytics reloadSnapshot() throws SQLException {
+        return (SNAPSHOT_FILE != null) ? SnapshotFile.loadAndWrite(Path.of(SNAPSHOT_FILE)) : RatingsSnapshot.load();
+    }
+
+    // in-memory or summary-table source to answer from, or null to group ratings in SQL
+    // (also when loading it fails)
+    private InMemoryAnalytics inMemory() {
+        Engine e = engine;
+        if (e == Engine.SQL) return SummaryTables.available() ? summaryTables : null;
+        if (e == Engine.SNAPSHOT) return snapshot.get();
+        InMemoryAnalytics mem = aggregates;
+        if (mem instanceof RatingAggregates agg && agg.following()
+                && System.currentTimeMillis() - aggregatesCheckedAt >= DELTA_POLL_MILLIS) {
+            mem = catchUp(agg);
+        }
+        if (mem == null) {
+            synchronized (this) {
+                try {
+                    if (aggregates == null) aggregates = QueryMetrics.build(RatingAggregates::load);
+                    mem = aggregates;
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+        return mem;
+    }
+
+    // apply the changes logged by any writer since the last poll; reload if the log can't be followed
+    private InMemoryAnalytics catchUp(RatingAggregates agg) {
+        aggregatesCheckedAt = System.currentTimeMillis();
+        try {
+            if (agg.catchUp()) return agg;
+            synchronized (this) {
+                if (aggregates == agg) aggregates = QueryMetrics.build(RatingAggregates::load);
+                return aggregates;
+            }
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return agg;
+        }
+    }
+
+    // -------------------------
+    // Write path
+    // -------------------------
+
+    /** Store a rating, replacing the user's earlier rating of the same movie. */
+    public void submitRating(Ratings rating) throws SQLException {
+        submitRatings(List.of(rating));
+    }
+
+    /** Store a batch of ratings in one transaction and update the in-memory aggregates. */
+    public void submitRatings(List<Ratings> ratings) throws SQLException {
+        // only aggregates loaded before the commit lack this write; one loaded while it ran
+        // may already hold it, so applying the changes to that one could count them twice
+        RatingAggregates before = aggregates;
+        List<RatingWriter.RatingChange> changes;
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) throw new SQLException("No database connection");
+            changes = RatingWriter.write(conn, ratings);
+        }
+
+        RatingAggregates following = aggregates;
+        if (following != null && following.following()) catchUp(following);   // includes this write
+        synchronized (this) {
+            RatingAggregates agg = aggregates;
+            if (agg != null && !agg.following()) {
+                if (agg == before) {
+                    for (var c : changes) agg.apply(c.movieId(), c.userKnown(), c.age(), c.oldRating(), c.newRating());
+                } else {
+                    aggregates = null;   // reload on next AGGREGATES read
+                }
+            }
+        }
+        snapshot.markStale();
+        cube.markStale();
+        titleIndex.markStale();   // vote counts changed
+        facetIndex.markStale();
+        recommender.markStale();
+        factors.markStale();
+    }
+
     // -------------------------
     // Console / original methods
     // -------------------------
     public void topRatedMovies() {
-        String query = """
+        QueryMetrics.measure("topRatedMovies", () -> {
+            InMemoryAnalytics mem = inMemory();
+            if (mem != null) {
+                System.out.println("\n🎬 TOP RATED MOVIES");
+                System.out.print(formatMovieStats(mem.topMovies(10, 5), "%-40s ⭐ %.2f (%d ratings)%n"));
+                return;
+            }
+
+            String query = """
+                    SELECT m.title, AVG(r.rating) AS avg_rating, COUNT(r.rating) AS rating_count
+                    FROM ratings r
+                    JOIN movies m ON r.movie_id = m.movie_id
+                    GROUP BY m.movie_id, m.title
+                    HAVING COUNT(r.rating) >= 5
+                    ORDER BY avg_rating DESC
+                    LIMIT 10;
+                    """;
+
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = QueryCancellation.track(conn.prepareStatement(query));
+                 ResultSet rs = stmt.executeQuery()) {
+
+                System.out.println("\n🎬 TOP RATED MOVIES");
+                while (rs.next()) {
+                    System.out.printf("%-40s ⭐ %.2f (%d ratings)%n",
+                            rs.getString("title"),
+                            rs.getDouble("avg_rating"),
+                            rs.getInt("rating_count"));
+                }
+
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    public void ratingDistributionByGenre() {
+        QueryMetrics.measure("ratingDistributionByGenre", () -> {
+            InMemoryAnalytics mem = inMemory();
+            if (mem != null) {
+                System.out.println("\n📊 RATING BY GENRE");
+                System.out.print(formatRatingCounts(mem.genreRatingCounts(), "%-15s Rating %.1f → %d votes%n"));
+                return;
+            }
+
+            String query = """
+                    SELECT m.genre, r.rating, COUNT(*) AS count
+                    FROM ratings r
+                    JOIN movies m ON r.movie_id = m.movie_id
+                    GROUP BY m.genre, r.rating
+                    ORDER BY m.genre, r.rating;
+                    """;
+
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = QueryCancellation.track(conn.prepareStatement(query));
+                 ResultSet rs = stmt.executeQuery()) {
+
+                System.out.println("\n📊 RATING BY GENRE");
+                while (rs.next()) {
+                    System.out.printf("%-15s Rating %.1f → %d votes%n",
+                            rs.getString("genre"),
+                            rs.getDouble("rating"),
+                            rs.getInt("count"));
+                }
+
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    public void ratingByAgeGroup() {
+        QueryMetrics.measure("ratingByAgeGroup", () -> {
+            InMemoryAnalytics mem = inMemory();
+            if (mem != null) {
+                System.out.println("\n👥 RATING BY AGE GROUP");
+                System.out.print(formatRatingCounts(mem.ageGroupRatingCounts(), "%-10s Rating %.1f → %d users%n"));
+                return;
+            }
+
+            String query = """
+                    SELECT CASE
+                        WHEN u.age < 18 THEN 'Under 18'
+                        WHEN u.age BETWEEN 18 AND 35 THEN '18-35'
+                        WHEN u.age BETWEEN 36 AND 50 THEN '36-50'
+                        ELSE '50+'
+                    END AS age_group,
+                    r.rating,
+                    COUNT(*) AS count
+                    FROM ratings r
+                    JOIN users u ON r.user_id = u.user_id
+                    GROUP BY age_group, r.rating
+                    ORDER BY age_group, r.rating;
+                    """;
+
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = QueryCancellation.track(conn.prepareStatement(query));
+                 ResultSet rs = stmt.executeQuery()) {
+
+                System.out.println("\n👥 RATING BY AGE GROUP");
+                while (rs.next()) {
+                    System.out.printf("%-10s Rating %.1f → %d users%n",
+                            rs.getString("age_group"),
+                            rs.getDouble("rating"),
+                            rs.getInt("count"));
+                }
+
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    public void recommendedMovies() {
+        QueryMetrics.measure("recommendedMovies", () -> {
+            InMemoryAnalytics mem = inMemory();
+            if (mem != null) {
+                System.out.println("\n⭐ RECOMMENDED MOVIES");
+                System.out.print(formatMovieStats(mem.topMovies(10, 5), "%-40s ⭐ %.2f (%d votes)%n"));
+                return;
+            }
+
+            String query = """
+                    SELECT m.title, AVG(r.rating) AS avg_rating, COUNT(r.rating) AS votes
+                    FROM ratings r
+                    JOIN movies m ON r.movie_id = m.movie_id
+                    GROUP BY m.movie_id, m.title
+                    HAVING COUNT(r.rating) >= 5
+                    ORDER BY avg_rating DESC
+                    LIMIT 10;
+                    """;
+
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = QueryCancellation.track(conn.prepareStatement(query));
+                 ResultSet rs = stmt.executeQuery()) {
+
+                System.out.println("\n⭐ RECOMMENDED MOVIES");
+                while (rs.next()) {
+                    System.out.printf("%-40s ⭐ %.2f (%d votes)%n",
+                            rs.getString("title"),
+                            rs.getDouble("avg_rating"),
+                            rs.getInt("votes"));
+                }
+
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    // -------------------------
+    // Text-return methods for GUI
+    // -------------------------
+    public String getTopMoviesText() {
+        return QueryMetrics.measure("getTopMoviesText", () -> {
+            StringBuilder sb = new StringBuilder();
+            InMemoryAnalytics mem = inMemory();
+            if (mem != null) {
+                sb.append(formatMovieStats(mem.topMovies(10, 5), "%s — ⭐ %.2f (%d ratings)%n"));
+                if (sb.length() == 0) sb.append("No top movies found.\n");
+                return sb.toString();
+            }
+
+            String query = """
                 SELECT m.title, AVG(r.rating) AS avg_rating, COUNT(r.rating) AS rating_count
                 FROM ratings r
                 JOIN movies m ON r.movie_id = m.movie_id
@@ -28,25 +361,37 @@ public class MovieAnalysis {
                 LIMIT 10;
                 """;
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = QueryCancellation.track(conn.prepareStatement(query));
+                 ResultSet rs = stmt.executeQuery()) {
 
-            System.out.println("\n🎬 TOP RATED MOVIES");
-            while (rs.next()) {
-                System.out.printf("%-40s ⭐ %.2f (%d ratings)%n",
-                        rs.getString("title"),
-                        rs.getDouble("avg_rating"),
-                        rs.getInt("rating_count"));
+                while (rs.next()) {
+                    sb.append(String.format("%s — ⭐ %.2f (%d ratings)%n",
+                            rs.getString("title"),
+                            rs.getDouble("avg_rating"),
+                            rs.getInt("rating_count")));
+                }
+
+            } catch (Exception e) {
+                sb.append("Error: ").append(e.getMessage()).append("\n");
             }
 
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+            if (sb.length() == 0) sb.append("No top movies found.\n");
+            return sb.toString();
+        });
     }
 
-    public void ratingDistributionByGenre() {
-        String query = """
+    public String getGenreText() {
+        return QueryMetrics.measure("getGenreText", () -> {
+            StringBuilder sb = new StringBuilder();
+            InMemoryAnalytics mem = inMemory();
+            if (mem != null) {
+                sb.append(formatRatingCounts(mem.genreRatingCounts(), "%-15s Rating %.1f → %d votes%n"));
+                if (sb.length() == 0) sb.append("No genre data found.\n");
+                return sb.toString();
+            }
+
+            String query = """
                 SELECT m.genre, r.rating, COUNT(*) AS count
                 FROM ratings r
                 JOIN movies m ON r.movie_id = m.movie_id
@@ -54,58 +399,134 @@ public class MovieAnalysis {
                 ORDER BY m.genre, r.rating;
                 """;
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = QueryCancellation.track(conn.prepareStatement(query));
+                 ResultSet rs = stmt.executeQuery()) {
+
+                while (rs.next()) {
+                    sb.append(String.format("%-15s Rating %.1f → %d votes%n",
+                            rs.getString("genre"),
+                            rs.getDouble("rating"),
+                            rs.getInt("count")));
+                }
 
-            System.out.println("\n📊 RATING BY GENRE");
-            while (rs.next()) {
-                System.out.printf("%-15s Rating %.1f → %d votes%n",
-                        rs.getString("genre"),
-                        rs.getDouble("rating"),
-                        rs.getInt("count"));
+            } catch (Exception e) {
+                sb.append("Error: ").append(e.getMessage()).append("\n");
             }
 
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+            if (sb.length() == 0) sb.append("No genre data found.\n");
+            return sb.toString();
+        });
     }
 
-    public void ratingByAgeGroup() {
-        String query = """
-                SELECT CASE
-                    WHEN u.age < 18 THEN 'Under 18'
-                    WHEN u.age BETWEEN 18 AND 35 THEN '18-35'
-                    WHEN u.age BETWEEN 36 AND 50 THEN '36-50'
-                    ELSE '50+'
-                END AS age_group,
-                r.rating,
-                COUNT(*) AS count
+    public String getAgeGroupText() {
+        return QueryMetrics.measure("getAgeGroupText", () -> {
+            StringBuilder sb = new StringBuilder();
+            InMemoryAnalytics mem = inMemory();
+            if (mem != null) {
+                sb.append(formatRatingCounts(mem.ageGroupRatingCounts(), "%-10s Rating %.1f → %d users%n"));
+                if (sb.length() == 0) sb.append("No age-group data found.\n");
+                return sb.toString();
+            }
+
+            String query = """
+                SELECT 
+                    CASE
+                        WHEN u.age < 18 THEN 'Under 18'
+                        WHEN u.age BETWEEN 18 AND 35 THEN '18-35'
+                        WHEN u.age BETWEEN 36 AND 50 THEN '36-50'
+                        ELSE '50+'
+                    END AS age_group,
+                    r.rating,
+                    COUNT(*) AS count
                 FROM ratings r
                 JOIN users u ON r.user_id = u.user_id
                 GROUP BY age_group, r.rating
                 ORDER BY age_group, r.rating;
                 """;
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = QueryCancellation.track(conn.prepareStatement(query));
+                 ResultSet rs = stmt.executeQuery()) {
+
+                while (rs.next()) {
+                    sb.append(String.format("%-10s Rating %.1f → %d users%n",
+                            rs.getString("age_group"),
+                            rs.getDouble("rating"),
+                            rs.getInt("count")));
+                }
 
-            System.out.println("\n👥 RATING BY AGE GROUP");
-            while (rs.next()) {
-                System.out.printf("%-10s Rating %.1f → %d users%n",
-                        rs.getString("age_group"),
-                        rs.getDouble("rating"),
-                        rs.getInt("count"));
+            } catch (Exception e) {
+                sb.append("Error: ").append(e.getMessage()).append("\n");
             }
 
-        } catch (SQLException e) {
-            e.printStackTrace();
+            if (sb.length() == 0) sb.append("No age-group data found.\n");
+            return sb.toString();
+        });
+    }
+
+    /** Average rating and votes per genre and age bucket (-Dmovies.ageBuckets, e.g. "18,30,45,60"). */
+    public String getGenreAgeGroupText() {
+        return getGenreAgeGroupText(AGE_BUCKETS);
+    }
+
+    public String getGenreAgeGroupText(RatingCube.AgeBuckets buckets) {
+        return QueryMetrics.measure("getGenreAgeGroupText", () -> {
+            StringBuilder sb = new StringBuilder();
+            try {
+                sb.append(RatingCube.formatBreakdown(ratingCube().byGenreAndAgeGroup(buckets)));
+            } catch (SQLException e) {
+                sb.append("Error: ").append(e.getMessage()).append("\n");
+            }
+            if (sb.length() == 0) sb.append("No genre/age data found.\n");
+            return sb.toString();
+        });
+    }
+
+    /**
+     * The genre × age × rating cube, built on first use from the SNAPSHOT engine's snapshot
+     * when it has one loaded (a mapped SnapshotFile is copied out of the mapping), else from
+     * a fresh RatingsSnapshot; after rating writes it is rebuilt in the background from a
+     * fresh one, and the old cube answers until then.
+     */
+    public RatingCube ratingCube() throws SQLException {
+        RatingCube c = cube.get();
+        if (c == null) throw new SQLException("Could not build the rating cube");
+        return c;
+    }
+
+    private RatingCube buildCube() throws SQLException {
+        InMemoryAnalytics loaded = snapshot.current();
+        return RatingCube.build(loaded instanceof RatingsSnapshot s ? s
+                : loaded instanceof SnapshotFile.Snapshot mapped ? columnsOf(mapped)
+                : RatingsSnapshot.load());
+    }
+
+    // the loaded snapshot may predate the write that made the cube stale
+    private static RatingCube buildFreshCube() throws SQLException {
+        return RatingCube.build(RatingsSnapshot.load());
+    }
+
+    // a damaged column reads as a failed build, like a failed load would
+    private static RatingsSnapshot columnsOf(SnapshotFile.Snapshot mapped) throws SQLException {
+        try {
+            return mapped.toRatingsSnapshot();
+        } catch (IOException e) {
+            throw new SQLException("Unreadable snapshot file: " + e.getMessage(), e);
         }
     }
 
-    public void recommendedMovies() {
-        String query = """
+    public String getRecommendedText() {
+        return QueryMetrics.measure("getRecommendedText", () -> {
+            StringBuilder sb = new StringBuilder();
+            InMemoryAnalytics mem = inMemory();
+            if (mem != null) {
+                sb.append(formatMovieStats(mem.topMovies(10, 5), "%s — ⭐ %.2f (%d votes)%n"));
+                if (sb.length() == 0) sb.append("No recommended movies found.\n");
+                return sb.toString();
+            }
+
+            String query = """
                 SELECT m.title, AVG(r.rating) AS avg_rating, COUNT(r.rating) AS votes
                 FROM ratings r
                 JOIN movies m ON r.movie_id = m.movie_id
@@ -115,190 +536,281 @@ public class MovieAnalysis {
                 LIMIT 10;
                 """;
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = QueryCancellation.track(conn.prepareStatement(query));
+                 ResultSet rs = stmt.executeQuery()) {
+
+                while (rs.next()) {
+                    sb.append(String.format("%s — ⭐ %.2f (%d votes)%n",
+                            rs.getString("title"),
+                            rs.getDouble("avg_rating"),
+                            rs.getInt("votes")));
+                }
 
-            System.out.println("\n⭐ RECOMMENDED MOVIES");
-            while (rs.next()) {
-                System.out.printf("%-40s ⭐ %.2f (%d votes)%n",
-                        rs.getString("title"),
-                        rs.getDouble("avg_rating"),
-                        rs.getInt("votes"));
+            } catch (Exception e) {
+                sb.append("Error: ").append(e.getMessage()).append("\n");
             }
 
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+            if (sb.length() == 0) sb.append("No recommended movies found.\n");
+            return sb.toString();
+        });
     }
 
-    // -------------------------
-    // Text-return methods for GUI
-    // -------------------------
-    public String getTopMoviesText() {
-        StringBuilder sb = new StringBuilder();
-        String query = """
-            SELECT m.title, AVG(r.rating) AS avg_rating, COUNT(r.rating) AS rating_count
-            FROM ratings r
-            JOIN movies m ON r.movie_id = m.movie_id
-            GROUP BY m.movie_id, m.title
-            HAVING COUNT(r.rating) >= 5
-            ORDER BY avg_rating DESC
-            LIMIT 10;
-            """;
-
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
-
-            while (rs.next()) {
-                sb.append(String.format("%s — ⭐ %.2f (%d ratings)%n",
-                        rs.getString("title"),
-                        rs.getDouble("avg_rating"),
-                        rs.getInt("rating_count")));
+    /**
+     * Personalized recommendations for {@code userId} from the item-item ItemBasedRecommender,
+     * or the MatrixFactorization with -Dmovies.recommender=factors.
+     * Blank or unknown users (no ratings yet) get the top-rated list of getRecommendedText(),
+     * and so does everyone while the model is first being built.
+     */
+    public String getRecommendedText(String userId) {
+        return QueryMetrics.measure("getRecommendedTextForUser", () -> {
+            if (userId == null || userId.isBlank()) return getRecommendedText();
+            Recommender model = personalRecommender();
+            if (model == null || !model.knowsUser(userId.trim())) return getRecommendedText();
+
+            StringBuilder sb = new StringBuilder();
+            List<ItemBasedRecommender.Recommendation> recs = model.recommend(userId.trim(), 10);
+            Map<String, Movies> movies = currentMovies(recs);
+            for (var r : recs) {
+                Movies m = movies.get(r.movieId());
+                sb.append(String.format("%s — ⭐ %.2f predicted%n", m == null ? r.title() : describe(m),
+                        r.predictedRating()));
             }
-
-        } catch (Exception e) {
-            sb.append("Error: ").append(e.getMessage()).append("\n");
-        }
-
-        if (sb.length() == 0) sb.append("No top movies found.\n");
-        return sb.toString();
+            if (sb.length() == 0) sb.append("No recommended movies found.\n");
+            return sb.toString();
+        });
     }
 
-    public String getGenreText() {
-        StringBuilder sb = new StringBuilder();
-        String query = """
-            SELECT m.genre, r.rating, COUNT(*) AS count
-            FROM ratings r
-            JOIN movies m ON r.movie_id = m.movie_id
-            GROUP BY m.genre, r.rating
-            ORDER BY m.genre, r.rating;
-            """;
-
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
-
-            while (rs.next()) {
-                sb.append(String.format("%-15s Rating %.1f → %d votes%n",
-                        rs.getString("genre"),
-                        rs.getDouble("rating"),
-                        rs.getInt("count")));
+    /**
+     * Top {@code n} personalized recommendations for {@code userId}; empty for blank or
+     * unknown users, who get getTopMoviesData instead, and while the model is first being built.
+     */
+    public List<ItemBasedRecommender.Recommendation> getRecommendationsData(String userId, int n) {
+        return QueryMetrics.measure("getRecommendationsData", () -> {
+            if (userId == null || userId.isBlank()) return new ArrayList<>();
+            Recommender model = personalRecommender();
+            if (model == null) return new ArrayList<>();
+            List<ItemBasedRecommender.Recommendation> recs = model.recommend(userId.trim(), n);
+            Map<String, Movies> movies = currentMovies(recs);
+            List<ItemBasedRecommender.Recommendation> current = new ArrayList<>(recs.size());
+            for (var r : recs) {
+                Movies m = movies.get(r.movieId());
+                current.add(m == null ? r : new ItemBasedRecommender.Recommendation(r.movieId(), m.getTitle(),
+                        r.predictedRating()));
             }
+            return current;
+        });
+    }
 
-        } catch (Exception e) {
-            sb.append("Error: ").append(e.getMessage()).append("\n");
+    // the recommended movies by id, one batched lookup; empty if it fails, so the model's titles show
+    private Map<String, Movies> currentMovies(List<ItemBasedRecommender.Recommendation> recs) {
+        try {
+            return entities.movies(recs.stream().map(ItemBasedRecommender.Recommendation::movieId).toList());
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return Map.of();
         }
-
-        if (sb.length() == 0) sb.append("No genre data found.\n");
-        return sb.toString();
     }
 
-    public String getAgeGroupText() {
-        StringBuilder sb = new StringBuilder();
-        String query = """
-            SELECT 
-                CASE
-                    WHEN u.age < 18 THEN 'Under 18'
-                    WHEN u.age BETWEEN 18 AND 35 THEN '18-35'
-                    WHEN u.age BETWEEN 36 AND 50 THEN '36-50'
-                    ELSE '50+'
-                END AS age_group,
-                r.rating,
-                COUNT(*) AS count
-            FROM ratings r
-            JOIN users u ON r.user_id = u.user_id
-            GROUP BY age_group, r.rating
-            ORDER BY age_group, r.rating;
-            """;
+    // "Title (Genre, Year)", leaving out what the movie doesn't have
+    private static String describe(Movies m) {
+        StringJoiner details = new StringJoiner(", ", " (", ")").setEmptyValue("");
+        if (m.getGenre() != null && !m.getGenre().isEmpty()) details.add(m.getGenre());
+        if (m.getYear() > 0) details.add(String.valueOf(m.getYear()));
+        return m.getTitle() + details;
+    }
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+    /**
+     * The {@code n} movies nearest to {@code movieId} in the MatrixFactorization's factor space;
+     * empty if the model has no vector for the movie. Null while the model is being trained:
+     * the first call starts that in the background.
+     */
+    public List<MatrixFactorization.Similar> getSimilarMovies(String movieId, int n) {
+        return QueryMetrics.measure("getSimilarMovies", () -> {
+            MatrixFactorization model = factors.getIfReady();
+            return model == null ? null : model.similar(movieId, n);
+        });
+    }
 
-            while (rs.next()) {
-                sb.append(String.format("%-10s Rating %.1f → %d users%n",
-                        rs.getString("age_group"),
-                        rs.getDouble("rating"),
-                        rs.getInt("count")));
-            }
+    /** Rebuild the recommendation model now. */
+    public void refreshRecommender() throws SQLException {
+        entities.clear();   // titles may have changed too
+        recommender.refresh();
+    }
 
-        } catch (Exception e) {
-            sb.append("Error: ").append(e.getMessage()).append("\n");
-        }
+    /** Retrain the factor model now, writing it to -Dmovies.mf.file when that is set. */
+    public void refreshFactors() throws SQLException {
+        entities.clear();
+        factors.refresh();
+    }
 
-        if (sb.length() == 0) sb.append("No age-group data found.\n");
-        return sb.toString();
+    // built in the background on first use (the factor model read from -Dmovies.mf.file when it
+    // can be) and null, so top-rated, until then; after rating writes the old model keeps
+    // serving while a new one is built
+    private Recommender personalRecommender() {
+        return FACTOR_RECOMMENDER ? factors.getIfReady() : recommender.getIfReady();
     }
 
-    public String getRecommendedText() {
-        StringBuilder sb = new StringBuilder();
-        String query = """
-            SELECT m.title, AVG(r.rating) AS avg_rating, COUNT(r.rating) AS votes
-            FROM ratings r
-            JOIN movies m ON r.movie_id = m.movie_id
-            GROUP BY m.movie_id, m.title
-            HAVING COUNT(r.rating) >= 5
+    public String searchMovie(String title) {
+        return QueryMetrics.measure("searchMovie", () -> {
+            StringBuilder sb = new StringBuilder();
+
+            String query = """
+            SELECT m.title, m.genre, AVG(r.rating) AS avg_rating, COUNT(r.rating) AS votes
+            FROM movies m
+            LEFT JOIN ratings r ON m.movie_id = r.movie_id
+            WHERE m.title LIKE ?
+            GROUP BY m.movie_id, m.title, m.genre
             ORDER BY avg_rating DESC
-            LIMIT 10;
+            LIMIT 50;
             """;
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = QueryCancellation.track(conn.prepareStatement(query))) {
+
+                stmt.setString(1, "%" + title + "%");
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        sb.append("🎬 ").append(rs.getString("title")).append("\n");
+                        sb.append("Genre: ").append(rs.getString("genre")).append("\n");
+                        double avg = rs.getDouble("avg_rating");
+                        if (rs.wasNull()) sb.append("⭐ Rating: N/A\n"); else sb.append("⭐ Rating: ").append(String.format("%.2f", avg)).append("\n");
+                        sb.append("🗳 Votes: ").append(rs.getInt("votes")).append("\n\n");
+                    }
+                }
 
-            while (rs.next()) {
-                sb.append(String.format("%s — ⭐ %.2f (%d votes)%n",
-                        rs.getString("title"),
-                        rs.getDouble("avg_rating"),
-                        rs.getInt("votes")));
-            }
+                if (sb.length() == 0) {
+                    return "❌ No movie found with name: " + title;
+                }
 
-        } catch (Exception e) {
-            sb.append("Error: ").append(e.getMessage()).append("\n");
-        }
+            } catch (Exception e) {
+                return "Error: " + e.getMessage();
+            }
 
-        if (sb.length() == 0) sb.append("No recommended movies found.\n");
-        return sb.toString();
+            return sb.toString();
+        });
     }
 
-    public String searchMovie(String title) {
-        StringBuilder sb = new StringBuilder();
+    /**
+     * One page of the movies whose title words start with every word of {@code title} (case and
+     * accents ignored, as in searchMovieIndexed), ordered by average rating (unrated last), then
+     * movie_id. Pass the previous page's next cursor to continue. Answered from the in-memory
+     * TitleSearchIndex, which seeks to the cursor and reads one hit past the page to tell
+     * whether another follows. Falls back to a LIKE substring query when the index can't be built.
+     */
+    public SearchPage searchMoviesPage(String title, SearchCursor after, int pageSize) {
+        return QueryMetrics.measure("searchMoviesPage", () -> {
+            TitleSearchIndex index = titleIndex.get();
+            if (index == null) return searchMoviesPageSql(title, after, pageSize);
+
+            var last = after == null ? null : new TitleSearchIndex.Hit(after.movieId(), null, null,
+                    after.avgRating() == null ? null : after.avgRating().doubleValue(), 0);
+            List<TitleSearchIndex.Hit> hits = index.pageByAverage(title, last, pageSize + 1);
+            if (pageSize <= 0) return new SearchPage(List.of(), null);
+            if (hits.size() <= pageSize) return new SearchPage(hits, null);
+            hits.remove(pageSize);
+            var end = hits.get(hits.size() - 1);
+            return new SearchPage(hits, new SearchCursor(
+                    end.avgRating() == null ? null : BigDecimal.valueOf(end.avgRating()), end.movieId()));
+        });
+    }
 
+    // substring match grouped per call; the keyset sits in HAVING, so every page aggregates
+    // all matching movies again
+    private SearchPage searchMoviesPageSql(String title, SearchCursor after, int pageSize) {
+        String keyset;
+        if (after == null) {
+            keyset = "";
+        } else if (after.avgRating() != null) {
+            keyset = "HAVING AVG(r.rating) < ? OR (AVG(r.rating) = ? AND m.movie_id > ?) OR AVG(r.rating) IS NULL";
+        } else {
+            keyset = "HAVING AVG(r.rating) IS NULL AND m.movie_id > ?";
+        }
         String query = """
-        SELECT m.title, m.genre, AVG(r.rating) AS avg_rating, COUNT(r.rating) AS votes
-        FROM movies m
-        LEFT JOIN ratings r ON m.movie_id = r.movie_id
-        WHERE m.title LIKE ?
-        GROUP BY m.movie_id, m.title, m.genre
-        ORDER BY avg_rating DESC
-        LIMIT 50;
-        """;
+            SELECT m.movie_id, m.title, m.genre, AVG(r.rating) AS avg_rating, COUNT(r.rating) AS votes
+            FROM movies m
+            LEFT JOIN ratings r ON m.movie_id = r.movie_id
+            WHERE m.title LIKE ?
+            GROUP BY m.movie_id, m.title, m.genre
+            %s
+            ORDER BY AVG(r.rating) IS NULL, AVG(r.rating) DESC, m.movie_id
+            LIMIT ?
+            """.formatted(keyset);
 
+        List<TitleSearchIndex.Hit> hits = new ArrayList<>();
+        SearchCursor next = null;
         try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+             PreparedStatement stmt = QueryCancellation.track(conn.prepareStatement(query))) {
+
+            int i = 1;
+            stmt.setString(i++, "%" + title + "%");
+            if (after != null && after.avgRating() != null) {
+                stmt.setBigDecimal(i++, after.avgRating());
+                stmt.setBigDecimal(i++, after.avgRating());
+            }
+            if (after != null) stmt.setString(i++, after.movieId());
+            stmt.setInt(i, pageSize);
 
-            stmt.setString(1, "%" + title + "%");
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    sb.append("🎬 ").append(rs.getString("title")).append("\n");
-                    sb.append("Genre: ").append(rs.getString("genre")).append("\n");
-                    double avg = rs.getDouble("avg_rating");
-                    if (rs.wasNull()) sb.append("⭐ Rating: N/A\n"); else sb.append("⭐ Rating: ").append(String.format("%.2f", avg)).append("\n");
-                    sb.append("🗳 Votes: ").append(rs.getInt("votes")).append("\n\n");
+                    BigDecimal avg = rs.getBigDecimal("avg_rating");
+                    String movieId = rs.getString("movie_id");
+                    hits.add(new TitleSearchIndex.Hit(movieId, rs.getString("title"), rs.getString("genre"),
+                            avg == null ? null : avg.doubleValue(), rs.getInt("votes")));
+                    next = new SearchCursor(avg, movieId);
                 }
             }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new SearchPage(List.of(), null);
+        }
+        return new SearchPage(hits, hits.size() < pageSize ? null : next);
+    }
 
+    /**
+     * searchMovie's text format, answered from the in-memory TitleSearchIndex. Unlike
+     * searchMovie (a substring of the title, best average first), every word of {@code title}
+     * must match the start of a title word, case and accents ignored, and hits are ranked by
+     * relevance, then votes. Falls back to searchMovie if the index can't be built.
+     */
+    public String searchMovieIndexed(String title) {
+        return QueryMetrics.measure("searchMovieIndexed", () -> {
+            TitleSearchIndex index = titleIndex.get();
+            if (index == null) return searchMovie(title);
+
+            StringBuilder sb = new StringBuilder();
+            for (TitleSearchIndex.Hit hit : index.search(title, 50)) {
+                sb.append("🎬 ").append(hit.title()).append("\n");
+                sb.append("Genre: ").append(hit.genre()).append("\n");
+                if (hit.avgRating() == null) sb.append("⭐ Rating: N/A\n"); else sb.append("⭐ Rating: ").append(String.format("%.2f", hit.avgRating())).append("\n");
+                sb.append("🗳 Votes: ").append(hit.votes()).append("\n\n");
+            }
             if (sb.length() == 0) {
                 return "❌ No movie found with name: " + title;
             }
+            return sb.toString();
+        });
+    }
 
-        } catch (Exception e) {
-            return "Error: " + e.getMessage();
-        }
+    /** Rebuild the title search index now. */
+    public void refreshTitleIndex() throws SQLException {
+        titleIndex.refresh();
+    }
 
-        return sb.toString();
+    /**
+     * Movies matching {@code filter}, best average first, with the facet counts for refining
+     * it; answered from the in-memory FacetIndex. Null if the index can't be built.
+     */
+    public FacetIndex.Result filterMovies(FacetIndex.Filter filter, int limit) {
+        return QueryMetrics.measure("filterMovies", () -> {
+            FacetIndex index = facetIndex.get();
+            return index == null ? null : index.filter(filter, limit);
+        });
+    }
+
+    /** Rebuild the facet index now. */
+    public void refreshFacetIndex() throws SQLException {
+        facetIndex.refresh();
     }
 
     // -------------------------
@@ -311,118 +823,130 @@ public class MovieAnalysis {
      * @param minVotes minimum number of votes to include a movie
      */
     public List<MovieStat> getTopMoviesData(int limit, int minVotes) {
-        List<MovieStat> list = new ArrayList<>();
-        String sql = """
-            SELECT m.title, AVG(r.rating) AS avg_rating, COUNT(r.rating) AS votes
-            FROM ratings r
-            JOIN movies m ON r.movie_id = m.movie_id
-            GROUP BY m.movie_id, m.title
-            HAVING COUNT(r.rating) >= ?
-            ORDER BY avg_rating DESC
-            LIMIT ?
-            """;
+        return QueryMetrics.measure("getTopMoviesData", () -> {
+            InMemoryAnalytics mem = inMemory();
+            if (mem != null) return mem.topMovies(limit, minVotes);
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+            List<MovieStat> list = new ArrayList<>();
+            String sql = """
+                SELECT m.title, AVG(r.rating) AS avg_rating, COUNT(r.rating) AS votes
+                FROM ratings r
+                JOIN movies m ON r.movie_id = m.movie_id
+                GROUP BY m.movie_id, m.title
+                HAVING COUNT(r.rating) >= ?
+                ORDER BY avg_rating DESC
+                LIMIT ?
+                """;
 
-            ps.setInt(1, minVotes);
-            ps.setInt(2, limit);
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement ps = QueryCancellation.track(conn.prepareStatement(sql))) {
 
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    String title = rs.getString("title");
-                    double avg = rs.getDouble("avg_rating");
-                    int votes = rs.getInt("votes");
-                    list.add(new MovieStat(title, avg, votes));
+                ps.setInt(1, minVotes);
+                ps.setInt(2, limit);
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        String title = rs.getString("title");
+                        double avg = rs.getDouble("avg_rating");
+                        int votes = rs.getInt("votes");
+                        list.add(new MovieStat(title, avg, votes));
+                    }
                 }
+            } catch (SQLException e) {
+                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return list;
+            return list;
+        });
     }
 
     /**
      * Return histogram data: rating -> count (ensures keys 1..10 exist)
      */
     public Map<Integer, Integer> getRatingHistogramData() {
-        Map<Integer, Integer> map = new TreeMap<>();
-        String sql = "SELECT rating, COUNT(*) AS cnt FROM ratings GROUP BY rating ORDER BY rating";
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
+        return QueryMetrics.measure("getRatingHistogramData", () -> {
+            InMemoryAnalytics mem = inMemory();
+            if (mem != null) {
+                Map<Integer, Integer> map = mem.ratingHistogram();
+                for (int i = 1; i <= 10; i++) map.putIfAbsent(i, 0);
+                return map;
+            }
+
+            Map<Integer, Integer> map = new TreeMap<>();
+            String sql = "SELECT rating, COUNT(*) AS cnt FROM ratings GROUP BY rating ORDER BY rating";
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement ps = QueryCancellation.track(conn.prepareStatement(sql));
+                 ResultSet rs = ps.executeQuery()) {
 
-            while (rs.next()) {
-                int rating = rs.getInt("rating");
-                int cnt = rs.getInt("cnt");
-                map.put(rating, cnt);
+                while (rs.next()) {
+                    int rating = rs.getInt("rating");
+                    int cnt = rs.getInt("cnt");
+                    map.put(rating, cnt);
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        for (int i = 1; i <= 10; i++) map.putIfAbsent(i, 0);
-        return map;
+            for (int i = 1; i <= 10; i++) map.putIfAbsent(i, 0);
+            return map;
+        });
     }
 
     /**
      * Return for each genre the five-number summary: [min, Q1, median, Q3, max]
+     * Aggregates to (genre, rating) counts in SQL, so memory is O(genres x distinct ratings).
      */
     public Map<String, double[]> getGenreFiveNumberSummary() {
-        Map<String, List<Integer>> genreRatings = new HashMap<>();
-        String sql = """
-            SELECT m.genre, r.rating
-            FROM ratings r
-            JOIN movies m ON r.movie_id = m.movie_id
-            """;
+        return QueryMetrics.measure("getGenreFiveNumberSummary", () -> {
+            InMemoryAnalytics mem = inMemory();
+            if (mem != null) return mem.genreFiveNumberSummary();
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
+            Map<String, RatingCounts> genreCounts = new HashMap<>();
+            String sql = """
+                SELECT m.genre, r.rating, COUNT(*) AS cnt
+                FROM ratings r
+                JOIN movies m ON r.movie_id = m.movie_id
+                GROUP BY m.genre, r.rating
+                """;
 
-            while (rs.next()) {
-                String genre = rs.getString("genre");
-                int rating = rs.getInt("rating");
-                genreRatings.computeIfAbsent(genre, k -> new ArrayList<>()).add(rating);
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement ps = QueryCancellation.track(StreamingQuery.prepare(conn, sql));
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String genre = rs.getString("genre");
+                    int rating = rs.getInt("rating");
+                    long cnt = rs.getLong("cnt");
+                    genreCounts.computeIfAbsent(genre, k -> new RatingCounts()).add(rating, cnt);
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
 
-        Map<String, double[]> result = new LinkedHashMap<>();
-        for (var entry : genreRatings.entrySet()) {
-            List<Integer> vals = entry.getValue();
-            Collections.sort(vals);
-            double[] summary = fiveNumberSummary(vals);
-            result.put(entry.getKey(), summary);
+            Map<String, double[]> result = new LinkedHashMap<>();
+            for (var entry : genreCounts.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().fiveNumberSummary());
+            }
+            return result;
+        });
+    }
+
+    // Helper: one formatted line per movie (title, average, votes)
+    static String formatMovieStats(List<MovieStat> stats, String format) {
+        StringBuilder sb = new StringBuilder();
+        for (MovieStat m : stats) {
+            sb.append(String.format(format, m.title(), m.avgRating(), m.votes()));
         }
-        return result;
-    }
-
-    // Helper: compute five-number summary
-    private double[] fiveNumberSummary(List<Integer> sorted) {
-        if (sorted == null || sorted.isEmpty()) return new double[]{0,0,0,0,0};
-        int n = sorted.size();
-        double min = sorted.get(0);
-        double max = sorted.get(n-1);
-        double median = medianOfList(sorted, 0, n - 1);
-        int loStart = 0;
-        int loEnd = (n % 2 == 0) ? (n/2 - 1) : (n/2 - 1);
-        int hiStart = (n % 2 == 0) ? (n/2) : (n/2 + 1);
-        int hiEnd = n - 1;
-        double q1 = medianOfList(sorted, loStart, Math.max(loEnd, loStart));
-        double q3 = medianOfList(sorted, Math.max(hiStart, loStart), hiEnd);
-        return new double[]{min, q1, median, q3, max};
-    }
-
-    // Helper: median for sorted[from..to] inclusive
-    private double medianOfList(List<Integer> sorted, int from, int to) {
-        if (from > to) return 0;
-        int len = to - from + 1;
-        int mid = from + (len - 1) / 2;
-        if (len % 2 == 1) {
-            return sorted.get(mid);
-        } else {
-            return (sorted.get(mid) + sorted.get(mid + 1)) / 2.0;
+        return sb.toString();
+    }
+
+    // Helper: one formatted line per (group, rating) with a non-zero count
+    static String formatRatingCounts(Map<String, RatingCounts> groups, String format) {
+        StringBuilder sb = new StringBuilder();
+        for (var entry : groups.entrySet()) {
+            RatingCounts counts = entry.getValue();
+            for (int r = counts.minRating(); r <= counts.maxRating(); r++) {
+                long cnt = counts.count(r);
+                if (cnt > 0) sb.append(String.format(format, entry.getKey(), (double) r, cnt));
+            }
         }
+        return sb.toString();
     }
 }
@@ -0,0 +1,129 @@
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * QueryCache - result cache for analysis queries, keyed by method name plus parameters.
+ * - bounded size with LRU eviction
+ * - per-entry time-to-live
+ * - single-flight: concurrent callers for the same key share one load
+ * - invalidateAll() for when the underlying ratings change
+ * - hit/miss/eviction counters
+ */
+public class QueryCache {
+
+    public record Stats(long hits, long misses, long evictions, int size) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d evictions=%d size=%d hitRate=%.1f%%",
+                    hits, misses, evictions, size, hitRate() * 100);
+        }
+    }
+
+    private record Key(String method, List<Object> params) {}
+
+    private static final class Entry {
+        final CompletableFuture<Object> value = new CompletableFuture<>();
+        volatile long expiresAt = Long.MAX_VALUE;   // set once the load finishes
+    }
+
+    private final int maxEntries;
+    private final long defaultTtlMillis;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public QueryCache(int maxEntries, long defaultTtlMillis) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be positive");
+        this.maxEntries = maxEntries;
+        this.defaultTtlMillis = defaultTtlMillis;
+    }
+
+    public <T> T get(String method, List<?> params, Supplier<T> loader) {
+        return get(method, params, defaultTtlMillis, loader, v -> true);
+    }
+
+    /**
+     * Return the cached result for (method, params), loading it with {@code loader} on a miss.
+     * Results rejected by {@code cacheable} (e.g. error text) are returned but not kept,
+     * and neither are results of a query that was cancelled mid-flight.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String method, List<?> params, long ttlMillis, Supplier<T> loader, Predicate<T> cacheable) {
+        Key key = new Key(method, Collections.unmodifiableList(new ArrayList<>(params)));
+        Entry entry;
+        boolean owner = false;
+
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && System.currentTimeMillis() < entry.expiresAt) {
+                hits++;
+            } else {
+                misses++;
+                entry = new Entry();
+                entries.put(key, entry);
+                owner = true;
+                evictOverflow();
+            }
+        }
+
+        if (!owner) {
+            try {
+                return (T) entry.value.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                throw e;
+            }
+        }
+
+        try {
+            T value = loader.get();
+            if (cacheable.test(value) && !QueryCancellation.isCancelled()) {
+                entry.expiresAt = System.currentTimeMillis() + ttlMillis;
+            } else {
+                remove(key, entry);
+            }
+            entry.value.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            remove(key, entry);
+            entry.value.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /** Drop every cached result, e.g. after ratings were written. */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    /** Drop the cached results of one method, for every parameter combination. */
+    public synchronized void invalidate(String method) {
+        entries.keySet().removeIf(k -> k.method().equals(method));
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, entries.size());
+    }
+
+    private synchronized void remove(Key key, Entry entry) {
+        entries.remove(key, entry);
+    }
+
+    private void evictOverflow() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions++;
+        }
+    }
+}
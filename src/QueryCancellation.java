@@ -0,0 +1,92 @@
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * QueryCancellation - lets a background query be cancelled while its JDBC statement is executing.
+ *
+ * A caller binds a {@link Ticket} to the worker thread; data-layer code wraps its statements
+ * with {@link #track}, and {@link Ticket#cancel()} then calls Statement.cancel() on whatever
+ * is currently running. Without a bound ticket, track() is a no-op.
+ */
+public final class QueryCancellation {
+
+    private static final ThreadLocal<Ticket> CURRENT = new ThreadLocal<>();
+
+    private QueryCancellation() {}
+
+    /** Run {@code work} with {@code ticket} bound to the current thread. */
+    public static <T> T runWith(Ticket ticket, java.util.function.Supplier<T> work) {
+        CURRENT.set(ticket);
+        try {
+            return work.get();
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    /** True if the query running on this thread has been cancelled. */
+    public static boolean isCancelled() {
+        Ticket ticket = CURRENT.get();
+        return ticket != null && ticket.isCancelled();
+    }
+
+    /**
+     * Register a statement with the ticket bound to this thread so it can be cancelled.
+     * Fails fast if the ticket was already cancelled.
+     */
+    public static PreparedStatement track(PreparedStatement ps) throws SQLException {
+        Ticket ticket = CURRENT.get();
+        if (ticket == null) return ps;
+        try {
+            ticket.begin(ps);
+        } catch (SQLException e) {
+            ps.close();
+            throw e;
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    // stop tracking before the statement (and then its connection) is handed back,
+                    // so a late cancel() can never hit a query that reused the connection
+                    if (method.getName().equals("close")) ticket.end(ps);
+                    try {
+                        return method.invoke(ps, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    /** Cancellation state for one submitted query. */
+    public static final class Ticket {
+        private boolean cancelled;
+        private Statement running;
+
+        synchronized void begin(Statement stmt) throws SQLException {
+            if (cancelled) throw new SQLException("Query cancelled");
+            running = stmt;
+        }
+
+        synchronized void end(Statement stmt) {
+            if (running == stmt) running = null;
+        }
+
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        public synchronized void cancel() {
+            cancelled = true;
+            if (running != null) {
+                try {
+                    running.cancel();
+                } catch (SQLException ignored) {
+                    // statement already finished or the driver can't cancel; the result is dropped anyway
+                }
+                running = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,375 @@
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.management.ObjectName;
+
+/**
+ * QueryMetrics - per-call latency breakdown for the MovieAnalysis entry points.
+ *
+ * An entry point runs its body through {@link #measure}; while it runs, the pool and its
+ * statements report into the call bound to the thread:
+ * - acquire: waiting for a pooled connection (DatabaseConnection)
+ * - execute: inside execute/executeQuery/executeUpdate/executeBatch
+ * - fetch:   inside ResultSet.next(), i.e. transferring rows; only next() is timed
+ * - build:   shared snapshot, index and model builds run through {@link #build}; their
+ *            statements are not instrumented, and the slow-query log leaves them out
+ * - format:  the rest - mapping rows, building strings, in-memory engines
+ *
+ * Each method gets LatencyHistograms for the total and each phase, plus rows fetched and
+ * errors (a JDBC exception, a thrown exception or "Error: ..." text), exposed as a
+ * QueryMetricsMXBean. Calls slower than -Dmovies.metrics.slowQueryMillis (default 1000) are
+ * logged to stderr with their SQL and bind parameters.
+ *
+ * Nested entry points (e.g. CachedMovieAnalysis calling MovieAnalysis) count once, under
+ * the outermost method.
+ */
+public final class QueryMetrics {
+
+    private static final long SLOW_QUERY_NANOS = Long.getLong("movies.metrics.slowQueryMillis", 1_000) * 1_000_000;
+    private static final int MAX_LOGGED_STATEMENTS = 20;
+
+    private static final ThreadLocal<Call> CURRENT = new ThreadLocal<>();
+    private static final Map<String, MethodMetrics> METHODS = new ConcurrentHashMap<>();
+    private static final MethodMetrics ALL = new MethodMetrics();
+    private static final ThreadLocal<CallSummary> LAST_ON_THREAD = new ThreadLocal<>();
+    private static volatile CallSummary last;
+
+    private QueryMetrics() {}
+
+    /** How one call split its time, in nanoseconds. */
+    public record CallSummary(String method, long totalNanos, long acquireNanos, long executeNanos,
+                              long fetchNanos, long buildNanos, long rows, boolean error) {
+
+        public long formatNanos() {
+            return Math.max(0, totalNanos - acquireNanos - executeNanos - fetchNanos - buildNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %.1f ms (acquire %.1f · execute %.1f · fetch %.1f%s · format %.1f) %d rows%s",
+                    method, totalNanos / 1e6, acquireNanos / 1e6, executeNanos / 1e6, fetchNanos / 1e6,
+                    buildNanos > 0 ? String.format(" · build %.1f", buildNanos / 1e6) : "",
+                    formatNanos() / 1e6, rows, error ? " ERROR" : "");
+        }
+    }
+
+    /** A shared build run by {@link #build}. */
+    @FunctionalInterface
+    public interface Build<T> {
+        T run() throws SQLException;
+    }
+
+    /** Run an entry point that returns a value, measuring it as {@code method}. */
+    public static <T> T measure(String method, Supplier<T> body) {
+        if (CURRENT.get() != null) return body.get();
+        Call call = new Call(method);
+        CURRENT.set(call);
+        try {
+            T result = body.get();
+            if (result instanceof String text && text.startsWith("Error: ")) call.error = true;
+            return result;
+        } catch (RuntimeException | Error e) {
+            call.error = true;
+            throw e;
+        } finally {
+            CURRENT.remove();
+            call.finish();
+        }
+    }
+
+    /** Run an entry point without a result (the console methods), measuring it as {@code method}. */
+    public static void measure(String method, Runnable body) {
+        measure(method, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    /**
+     * Run a shared snapshot, index or model build. Inside a measured call the build's own
+     * statements are not instrumented and its time counts as the build phase, not format.
+     */
+    public static <T> T build(Build<T> body) throws SQLException {
+        Call call = CURRENT.get();
+        if (call == null) return body.run();
+        CURRENT.remove();
+        long t0 = System.nanoTime();
+        try {
+            return body.run();
+        } finally {
+            call.buildNanos += System.nanoTime() - t0;
+            CURRENT.set(call);
+        }
+    }
+
+    /** Metrics of every measured method so far, by name. */
+    public static Map<String, QueryMetricsMXBean> methods() {
+        return new TreeMap<>(METHODS);
+    }
+
+    /** Metrics over all methods together. */
+    public static QueryMetricsMXBean overall() {
+        return ALL;
+    }
+
+    /** The most recently finished call on any thread, or null. */
+    public static CallSummary lastCall() {
+        return last;
+    }
+
+    /** The most recently finished call on this thread, or null; e.g. to ask whether it failed. */
+    public static CallSummary lastCallOnThisThread() {
+        return LAST_ON_THREAD.get();
+    }
+
+    /**
+     * Whether the call running on this thread has failed so far (a JDBC exception, no
+     * connection); false outside a measured call. For deciding inside a call, e.g. whether
+     * a result that swallowed its SQLException may be cached.
+     */
+    public static boolean currentCallFailed() {
+        Call call = CURRENT.get();
+        return call != null && call.error;
+    }
+
+    /** Whether the most recently finished call on this thread failed. */
+    public static boolean lastCallFailed() {
+        CallSummary call = LAST_ON_THREAD.get();
+        return call != null && call.error();
+    }
+
+    // -------------------------
+    // Hooks for the data layer
+    // -------------------------
+
+    /** Time spent getting a connection; {@code failed} when none could be had. */
+    static void recordAcquire(long nanos, boolean failed) {
+        Call call = CURRENT.get();
+        if (call == null) return;
+        call.acquireNanos += nanos;
+        if (failed) call.error = true;
+    }
+
+    /** A connection call (e.g. prepareStatement) failed outside an instrumented statement. */
+    static void recordFailure() {
+        Call call = CURRENT.get();
+        if (call != null) call.error = true;
+    }
+
+    /**
+     * Wrap a statement so its executes, bind parameters and result rows are reported to the
+     * call bound to this thread. Without one the statement is returned as is.
+     */
+    static PreparedStatement instrument(PreparedStatement ps, String sql) {
+        Call call = CURRENT.get();
+        if (call == null) return ps;
+        Map<Integer, Object> params = new TreeMap<>();
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    String name = method.getName();
+                    if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer i) {
+                        params.put(i, args[1]);
+                    } else if (name.equals("clearParameters")) {
+                        params.clear();
+                    } else if (name.equals("equals")) {
+                        return proxy == args[0];
+                    } else if (name.equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    }
+                    boolean execute = name.startsWith("execute");
+                    long t0 = execute ? System.nanoTime() : 0;
+                    try {
+                        Object result = method.invoke(ps, args);
+                        if (result instanceof ResultSet rs) result = instrument(rs, call);
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        call.error = true;
+                        throw e.getCause();
+                    } finally {
+                        if (execute) {
+                            long took = System.nanoTime() - t0;
+                            call.executeNanos += took;
+                            call.statement(sql, params, took);
+                        }
+                    }
+                });
+    }
+
+    // only next() is timed: the getters read the row next() already transferred
+    private static ResultSet instrument(ResultSet rs, Call call) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    boolean next = method.getName().equals("next");
+                    long t0 = next ? System.nanoTime() : 0;
+                    try {
+                        Object result = method.invoke(rs, args);
+                        if (next && Boolean.TRUE.equals(result)) call.rows++;
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        call.error = true;
+                        throw e.getCause();
+                    } finally {
+                        if (next) call.fetchNanos += System.nanoTime() - t0;
+                    }
+                });
+    }
+
+    // -------------------------
+    // Per-call and per-method state
+    // -------------------------
+
+    /** One measured entry-point call; only touched by the thread it is bound to. */
+    private static final class Call {
+        final String method;
+        final long start = System.nanoTime();
+        long acquireNanos;
+        long executeNanos;
+        long fetchNanos;
+        long buildNanos;
+        long rows;
+        boolean error;
+        final List<String> statements = new ArrayList<>();
+
+        Call(String method) {
+            this.method = method;
+        }
+
+        void statement(String sql, Map<Integer, Object> params, long nanos) {
+            if (statements.size() == MAX_LOGGED_STATEMENTS) return;
+            String line = String.format("  %.1f ms  %s", nanos / 1e6, sql.replaceAll("\\s+", " ").trim());
+            if (!params.isEmpty()) line += "  " + params;
+            statements.add(line);
+        }
+
+        void finish() {
+            CallSummary summary = new CallSummary(method, System.nanoTime() - start, acquireNanos, executeNanos,
+                    fetchNanos, buildNanos, rows, error);
+            last = summary;
+            LAST_ON_THREAD.set(summary);
+            METHODS.computeIfAbsent(method, QueryMetrics::register).record(summary);
+            ALL.record(summary);
+            if (summary.totalNanos() - summary.buildNanos() >= SLOW_QUERY_NANOS) {
+                StringBuilder sb = new StringBuilder("Slow query: ").append(summary).append('\n');
+                for (String s : statements) sb.append(s).append('\n');
+                System.err.print(sb);
+            }
+        }
+    }
+
+    private static MethodMetrics register(String method) {
+        MethodMetrics metrics = new MethodMetrics();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+                    new ObjectName("movies:type=QueryMetrics,name=" + ObjectName.quote(method)));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return metrics;
+    }
+
+    private static final class MethodMetrics implements QueryMetricsMXBean {
+        final LatencyHistogram total = new LatencyHistogram();
+        final LatencyHistogram acquire = new LatencyHistogram();
+        final LatencyHistogram execute = new LatencyHistogram();
+        final LatencyHistogram fetch = new LatencyHistogram();
+        final LatencyHistogram build = new LatencyHistogram();
+        final LatencyHistogram format = new LatencyHistogram();
+        final LongAdder rows = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        void record(CallSummary s) {
+            total.record(s.totalNanos());
+            acquire.record(s.acquireNanos());
+            execute.record(s.executeNanos());
+            fetch.record(s.fetchNanos());
+            build.record(s.buildNanos());
+            format.record(s.formatNanos());
+            rows.add(s.rows());
+            if (s.error()) errors.increment();
+        }
+
+        @Override
+        public long getCalls() {
+            return total.count();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public long getRowsFetched() {
+            return rows.sum();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return total.meanNanos() / 1e6;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return total.percentileNanos(50) / 1e6;
+        }
+
+        @Override
+        public double getP95Millis() {
+            return total.percentileNanos(95) / 1e6;
+        }
+
+        @Override
+        public double getP99Millis() {
+            return total.percentileNanos(99) / 1e6;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return total.maxNanos() / 1e6;
+        }
+
+        @Override
+        public double getAcquireP95Millis() {
+            return acquire.percentileNanos(95) / 1e6;
+        }
+
+        @Override
+        public double getExecuteP95Millis() {
+            return execute.percentileNanos(95) / 1e6;
+        }
+
+        @Override
+        public double getFetchP95Millis() {
+            return fetch.percentileNanos(95) / 1e6;
+        }
+
+        @Override
+        public double getBuildP95Millis() {
+            return build.percentileNanos(95) / 1e6;
+        }
+
+        @Override
+        public double getFormatP95Millis() {
+            return format.percentileNanos(95) / 1e6;
+        }
+
+        @Override
+        public void reset() {
+            total.reset();
+            acquire.reset();
+            execute.reset();
+            fetch.reset();
+            build.reset();
+            format.reset();
+            rows.reset();
+            errors.reset();
+        }
+    }
+}
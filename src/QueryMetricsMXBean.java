@@ -0,0 +1,39 @@
+/**
+ * JMX view of one MovieAnalysis entry point, registered by QueryMetrics as
+ * movies:type=QueryMetrics,name=&lt;method&gt;. Times are in milliseconds.
+ */
+public interface QueryMetricsMXBean {
+
+    long getCalls();
+
+    long getErrors();
+
+    long getRowsFetched();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP95Millis();
+
+    double getP99Millis();
+
+    double getMaxMillis();
+
+    /** p95 of the time spent waiting for a pooled connection. */
+    double getAcquireP95Millis();
+
+    /** p95 of the time spent in execute/executeQuery/executeUpdate. */
+    double getExecuteP95Millis();
+
+    /** p95 of the time spent reading result rows. */
+    double getFetchP95Millis();
+
+    /** p95 of the time spent in shared snapshot, index and model builds. */
+    double getBuildP95Millis();
+
+    /** p95 of everything else: mapping rows, formatting text, in-memory work. */
+    double getFormatP95Millis();
+
+    void reset();
+}
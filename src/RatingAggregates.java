@@ -0,0 +1,275 @@
+import java.sql.*;
+import java.util.*;
+
+/**
+ * RatingAggregates - running totals behind the dashboard, kept current on every rating write.
+ * - per movie: rating sum and count (plus title and genre)
+ * - per genre: rating histogram
+ * - per age group: rating histogram
+ * - global rating histogram
+ *
+ * Loaded once with GROUP BY queries; after that each write is applied as a delta, so
+ * reads never rescan the ratings table. Writes through this process's MovieAnalysis are
+ * applied directly; when the database has a RatingChangeLog, catchUp() instead applies
+ * every change logged since the load, from any process, and the cost of a refresh
+ * follows the number of changes rather than the number of ratings.
+ */
+public class RatingAggregates implements InMemoryAnalytics {
+
+    private static final Comparator<String> SQL_ORDER = Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER);
+
+    private static final class MovieAgg {
+        final String title;
+        final String genre;
+        long sum;
+        long count;
+
+        MovieAgg(String title, String genre) {
+            this.title = title;
+            this.genre = genre;
+        }
+    }
+
+    // sorted by id, so topMovies can break ties on position like the snapshot does
+    private final Map<String, MovieAgg> movies = new TreeMap<>();
+    private final Map<String, RatingCounts> byGenre = new TreeMap<>(SQL_ORDER);
+    private final Map<String, RatingCounts> byAgeGroup = new TreeMap<>();
+    private final RatingCounts global = new RatingCounts();
+
+    private static final int DELTA_BATCH = Integer.getInteger("movies.delta.batchSize", 1000);
+
+    // id of the last RatingChangeLog entry included, -1 if not following the log; guarded by catchUpLock
+    private long watermark = -1;
+    private final Object catchUpLock = new Object();
+
+    /** Build the aggregates through a pooled connection. */
+    public static RatingAggregates load() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) throw new SQLException("No database connection");
+            return load(conn);
+        }
+    }
+
+    /**
+     * With a change log, the watermark and the tables are read in one repeatable-read
+     * transaction, so the aggregates include exactly the changes up to the watermark.
+     */
+    public static RatingAggregates load(Connection conn) throws SQLException {
+        RatingAggregates agg = new RatingAggregates();
+        if (!RatingChangeLog.available()) {
+            agg.loadTables(conn);
+            return agg;
+        }
+
+        int isolation = conn.getTransactionIsolation();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        conn.setAutoCommit(false);
+        try {
+            agg.watermark = RatingChangeLog.lastId(conn);
+            agg.loadTables(conn);
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+            conn.setTransactionIsolation(isolation);
+        }
+        return agg;
+    }
+
+    private void loadTables(Connection conn) throws SQLException {
+        String movieSql = """
+            SELECT m.movie_id, m.title, m.genre, SUM(r.rating) AS total, COUNT(r.rating) AS votes
+            FROM movies m
+            LEFT JOIN ratings r ON m.movie_id = r.movie_id
+            GROUP BY m.movie_id, m.title, m.genre
+            """;
+        try (PreparedStatement ps = StreamingQuery.prepare(conn, movieSql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                MovieAgg m = new MovieAgg(rs.getString("title"), rs.getString("genre"));
+                m.sum = rs.getLong("total");
+                m.count = rs.getLong("votes");
+                movies.put(rs.getString("movie_id"), m);
+            }
+        }
+
+        String genreSql = """
+            SELECT m.genre, r.rating, COUNT(*) AS cnt
+            FROM ratings r
+            JOIN movies m ON r.movie_id = m.movie_id
+            GROUP BY m.genre, r.rating
+            """;
+        try (PreparedStatement ps = conn.prepareStatement(genreSql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                byGenre.computeIfAbsent(rs.getString("genre"), k -> new RatingCounts())
+                        .add(rs.getInt("rating"), rs.getLong("cnt"));
+            }
+        }
+
+        String ageSql = """
+            SELECT u.age, r.rating, COUNT(*) AS cnt
+            FROM ratings r
+            JOIN users u ON r.user_id = u.user_id
+            GROUP BY u.age, r.rating
+            """;
+        try (PreparedStatement ps = conn.prepareStatement(ageSql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                int age = rs.getInt("age");
+                String group = RatingsSnapshot.ageGroup(rs.wasNull() ? null : age);
+                byAgeGroup.computeIfAbsent(group, k -> new RatingCounts())
+                        .add(rs.getInt("rating"), rs.getLong("cnt"));
+            }
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement("SELECT rating, COUNT(*) AS cnt FROM ratings GROUP BY rating");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                global.add(rs.getInt("rating"), rs.getLong("cnt"));
+            }
+        }
+    }
+
+    /**
+     * Apply one committed rating change.
+     * @param movieId     rated movie
+     * @param userKnown   whether the user exists in users (the age aggregates join on it)
+     * @param age         the user's age, null if unknown or NULL
+     * @param oldRating   the rating being replaced, or null for a new rating
+     * @param newRating   the rating now stored
+     */
+    public synchronized void apply(String movieId, boolean userKnown, Integer age, Integer oldRating, int newRating) {
+        if (oldRating != null) shift(movieId, userKnown, age, oldRating, -1);
+        shift(movieId, userKnown, age, newRating, +1);
+    }
+
+    private void shift(String movieId, boolean userKnown, Integer age, int rating, int sign) {
+        global.add(rating, sign);
+        MovieAgg m = movies.get(movieId);
+        if (m != null) {
+            m.sum += (long) sign * rating;
+            m.count += sign;
+            byGenre.computeIfAbsent(m.genre, k -> new RatingCounts()).add(rating, sign);
+        }
+        if (userKnown) {
+            byAgeGroup.computeIfAbsent(RatingsSnapshot.ageGroup(age), k -> new RatingCounts()).add(rating, sign);
+        }
+    }
+
+    // -------------------------
+    // Following the change log
+    // -------------------------
+
+    /** Whether catchUp() can bring these aggregates up to date. */
+    public boolean following() {
+        synchronized (catchUpLock) {
+            return watermark >= 0;
+        }
+    }
+
+    /**
+     * Apply the changes logged since the load or the last catch-up, read in batches of
+     * -Dmovies.delta.batchSize. Returns false, and stops following, when the log cannot
+     * be applied (a reload marker or pruned entries); the aggregates must then be reloaded.
+     */
+    public boolean catchUp() throws SQLException {
+        synchronized (catchUpLock) {
+            if (watermark < 0) return false;
+            try (Connection conn = DatabaseConnection.getConnection()) {
+                if (conn == null) throw new SQLException("No database connection");
+                long upTo = RatingChangeLog.lastId(conn);
+                while (watermark < upTo) {
+                    List<RatingChangeLog.Entry> batch = RatingChangeLog.read(conn, watermark, upTo, DELTA_BATCH);
+                    // ids are gap-free, so any gap means pruned entries
+                    if (batch.isEmpty() || batch.get(batch.size() - 1).id() != watermark + batch.size()) {
+                        watermark = -1;
+                        return false;
+                    }
+                    addMissingMovies(conn, batch);
+                    synchronized (this) {
+                        for (RatingChangeLog.Entry e : batch) {
+                            if (e.isReload()) {
+                                watermark = -1;
+                                return false;
+                            }
+                            var c = e.change();
+                            apply(c.movieId(), c.userKnown(), c.age(), c.oldRating(), c.newRating());
+                            watermark = e.id();
+                        }
+                    }
+                }
+                return true;
+            }
+        }
+    }
+
+    // movies added since the load, so their ratings count like in the SQL joins
+    private void addMissingMovies(Connection conn, List<RatingChangeLog.Entry> batch) throws SQLException {
+        Set<String> missing = new TreeSet<>();
+        synchronized (this) {
+            for (RatingChangeLog.Entry e : batch) {
+                if (!e.isReload() && !movies.containsKey(e.change().movieId())) missing.add(e.change().movieId());
+            }
+        }
+        if (missing.isEmpty()) return;
+
+        String sql = "SELECT movie_id, title, genre FROM movies WHERE movie_id IN ("
+                + String.join(", ", Collections.nCopies(missing.size(), "?")) + ")";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 1;
+            for (String id : missing) ps.setString(i++, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                synchronized (this) {
+                    while (rs.next()) {
+                        movies.putIfAbsent(rs.getString("movie_id"), new MovieAgg(rs.getString("title"), rs.getString("genre")));
+                    }
+                }
+            }
+        }
+    }
+
+    // -------------------------
+    // Reads
+    // -------------------------
+
+    @Override
+    public synchronized List<MovieAnalysis.MovieStat> topMovies(int limit, int minVotes) {
+        MovieAgg[] byId = movies.values().toArray(new MovieAgg[0]);
+        return RatingsSnapshot.topByAverage(byId.length, m -> byId[m].sum, m -> byId[m].count, m -> byId[m].title,
+                limit, minVotes);
+    }
+
+    @Override
+    public synchronized Map<String, RatingCounts> genreRatingCounts() {
+        return copyNonEmpty(byGenre);
+    }
+
+    @Override
+    public synchronized Map<String, RatingCounts> ageGroupRatingCounts() {
+        return copyNonEmpty(byAgeGroup);
+    }
+
+    @Override
+    public synchronized Map<Integer, Integer> ratingHistogram() {
+        Map<Integer, Integer> map = new TreeMap<>();
+        for (int r = global.minRating(); r <= global.maxRating(); r++) {
+            if (global.count(r) > 0) map.put(r, (int) global.count(r));
+        }
+        return map;
+    }
+
+    private static Map<String, RatingCounts> copyNonEmpty(Map<String, RatingCounts> source) {
+        Map<String, RatingCounts> copy = new LinkedHashMap<>();
+        for (var entry : source.entrySet()) {
+            if (entry.getValue().total() == 0) continue;
+            RatingCounts counts = new RatingCounts();
+            counts.addAll(entry.getValue());
+            copy.put(entry.getKey(), counts);
+        }
+        return copy;
+    }
+}
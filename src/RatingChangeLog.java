@@ -0,0 +1,184 @@
+import java.sql.*;
+import java.util.*;
+
+/**
+ * RatingChangeLog - every rating write as a numbered row in rating_changes (SchemaMigrations V4).
+ * - RatingWriter appends its changes in the writing transaction, with the user's age and
+ *   the replaced rating, so a reader can apply them as deltas without looking anything up
+ * - change ids are gap-free and commit in order: each writer takes its ids from the single
+ *   rating_change_seq row and keeps it locked until commit. Readers can therefore follow the
+ *   log with a plain high-water mark (the last id they applied) and never miss a row.
+ * - writes that bypass RatingWriter (BulkImporter) append a reload marker instead of one
+ *   row per rating; readers rebuild from the tables when they reach it
+ * - pruned rows leave a gap in front of a reader's watermark, which also means reload
+ *
+ * Following the log costs one primary-key lookup when nothing changed and a range scan
+ * over the new rows otherwise, however large the ratings table is.
+ *
+ * Usage: RatingChangeLog [--status | --prune DAYS]
+ */
+public class RatingChangeLog {
+
+    /** One logged change; a reload marker has no change. */
+    public record Entry(long id, RatingWriter.RatingChange change) {
+        public boolean isReload() {
+            return change == null;
+        }
+    }
+
+    private static final String RESERVE = "UPDATE rating_change_seq SET last_id = last_id + ? WHERE id = 1";
+    private static final String LAST_ID = "SELECT last_id FROM rating_change_seq WHERE id = 1";
+    private static final String APPEND = """
+        INSERT INTO rating_changes (change_id, user_id, movie_id, user_known, age, old_rating, new_rating, changed_at)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+        """;
+    private static final String APPEND_RELOAD = "INSERT INTO rating_changes (change_id, changed_at) VALUES (?, ?)";
+    private static final String READ = """
+        SELECT change_id, user_id, movie_id, user_known, age, old_rating, new_rating
+        FROM rating_changes
+        WHERE change_id > ? AND change_id <= ?
+        ORDER BY change_id
+        LIMIT ?
+        """;
+
+    private RatingChangeLog() {}
+
+    /** True if the configured database has been migrated to SchemaMigrations.CHANGE_LOG_VERSION. */
+    public static boolean available() {
+        return SchemaMigrations.installed(SchemaMigrations.CHANGE_LOG_VERSION);
+    }
+
+    // -------------------------
+    // Writes
+    // -------------------------
+
+    /** Append {@code changes} inside the writer's transaction; the caller commits. */
+    static void append(Connection conn, List<RatingWriter.RatingChange> changes) throws SQLException {
+        if (changes.isEmpty()) return;
+        long last = reserve(conn, changes.size());
+        long id = last - changes.size();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        try (PreparedStatement ps = conn.prepareStatement(APPEND)) {
+            for (RatingWriter.RatingChange c : changes) {
+                ps.setLong(1, ++id);
+                ps.setString(2, c.userId());
+                ps.setString(3, c.movieId());
+                ps.setBoolean(4, c.userKnown());
+                setInteger(ps, 5, c.age());
+                setInteger(ps, 6, c.oldRating());
+                ps.setInt(7, c.newRating());
+                ps.setTimestamp(8, now);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /** Tell readers to rebuild from the tables, after writes that were not logged row by row. */
+    public static void appendReload() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) throw new SQLException("No database connection");
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(APPEND_RELOAD)) {
+                ps.setLong(1, reserve(conn, 1));
+                ps.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+                ps.executeUpdate();
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    // locks the sequence row until the caller commits; returns the last reserved id
+    private static long reserve(Connection conn, int count) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(RESERVE)) {
+            ps.setInt(1, count);
+            if (ps.executeUpdate() != 1) throw new SQLException("rating_change_seq has no row");
+        }
+        return lastId(conn);
+    }
+
+    private static void setInteger(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value == null) ps.setNull(index, Types.INTEGER);
+        else ps.setInt(index, value);
+    }
+
+    // -------------------------
+    // Reads
+    // -------------------------
+
+    /** Id of the last committed change (as of the caller's transaction); 0 for an empty log. */
+    public static long lastId(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(LAST_ID);
+             ResultSet rs = ps.executeQuery()) {
+            if (!rs.next()) throw new SQLException("rating_change_seq has no row");
+            return rs.getLong(1);
+        }
+    }
+
+    /** Up to {@code limit} changes with afterId < id <= upToId, in id order. */
+    public static List<Entry> read(Connection conn, long afterId, long upToId, int limit) throws SQLException {
+        List<Entry> entries = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(READ)) {
+            ps.setLong(1, afterId);
+            ps.setLong(2, upToId);
+            ps.setInt(3, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    long id = rs.getLong("change_id");
+                    int newRating = rs.getInt("new_rating");
+                    if (rs.wasNull()) {
+                        entries.add(new Entry(id, null));
+                        continue;
+                    }
+                    int age = rs.getInt("age");
+                    Integer ageOrNull = rs.wasNull() ? null : age;
+                    int old = rs.getInt("old_rating");
+                    Integer oldOrNull = rs.wasNull() ? null : old;
+                    entries.add(new Entry(id, new RatingWriter.RatingChange(rs.getString("user_id"),
+                            rs.getString("movie_id"), rs.getBoolean("user_known"), ageOrNull, oldOrNull, newRating)));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /** Delete changes older than {@code days}; readers behind them reload. Returns the rows deleted. */
+    public static int prune(Connection conn, int days) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM rating_changes WHERE changed_at < ?")) {
+            ps.setTimestamp(1, new Timestamp(System.currentTimeMillis() - days * 86_400_000L));
+            return ps.executeUpdate();
+        }
+    }
+
+    public static void main(String[] args) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) throw new SQLException("No database connection");
+            if (!available()) throw new SQLException("No change log; run SchemaMigrations first");
+            String mode = args.length > 0 ? args[0] : "--status";
+            switch (mode) {
+                case "--status" -> {
+                    try (PreparedStatement ps = conn.prepareStatement(
+                            "SELECT COUNT(*), MIN(change_id) FROM rating_changes");
+                         ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                        System.out.printf("Last change %d, %,d changes kept (from %d)%n",
+                                lastId(conn), rs.getLong(1), rs.getLong(2));
+                    }
+                }
+                case "--prune" -> {
+                    if (args.length < 2) throw new IllegalArgumentException("--prune needs DAYS");
+                    System.out.printf("Pruned %,d changes%n", prune(conn, Integer.parseInt(args[1])));
+                }
+                default -> throw new IllegalArgumentException("Unknown option " + mode);
+            }
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * RatingCounts - frequency histogram of integer ratings.
+ *
+ * Stores one counter per distinct rating value instead of one entry per rating,
+ * so memory is O(distinct ratings) however many ratings are added. Quantiles are
+ * read straight off the cumulative counts; nothing is ever sorted.
+ */
+public class RatingCounts {
+
+    private int offset;        // rating value stored at counts[0]
+    private long[] counts;
+    private long total;
+
+    public RatingCounts() {
+        this(1, 10);
+    }
+
+    public RatingCounts(int minRating, int maxRating) {
+        offset = minRating;
+        counts = new long[Math.max(1, maxRating - minRating + 1)];
+    }
+
+    /** Add {@code count} occurrences of {@code rating} (negative to remove). */
+    public void add(int rating, long count) {
+        ensureRange(rating);
+        int i = rating - offset;
+        if (counts[i] + count < 0) {
+            throw new IllegalArgumentException("Count for rating " + rating + " would become negative");
+        }
+        counts[i] += count;
+        total += count;
+    }
+
+    public void add(int rating) {
+        add(rating, 1);
+    }
+
+    /** Merge another histogram into this one. */
+    public void addAll(RatingCounts other) {
+        for (int i = 0; i < other.counts.length; i++) {
+            if (other.counts[i] != 0) add(other.offset + i, other.counts[i]);
+        }
+    }
+
+    public long count(int rating) {
+        int i = rating - offset;
+        return (i < 0 || i >= counts.length) ? 0 : counts[i];
+    }
+
+    public long total() {
+        return total;
+    }
+
+    /** Smallest and largest rating values this histogram can hold without growing. */
+    public int minRating() {
+        return offset;
+    }
+
+    public int maxRating() {
+        return offset + counts.length - 1;
+    }
+
+    /** The rating at position {@code index} of the sorted sequence of all ratings. */
+    public int valueAt(long index) {
+        if (index < 0 || index >= total) throw new IndexOutOfBoundsException("index " + index + ", size " + total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (index < seen) return offset + i;
+        }
+        throw new IllegalStateException("counts out of sync with total");
+    }
+
+    /**
+     * Five-number summary [min, Q1, median, Q3, max] of all ratings. Q1 and Q3 are the
+     * medians of the lower and upper halves, which leave out the middle rating when the
+     * count is odd.
+     */
+    public double[] fiveNumberSummary() {
+        if (total == 0) return new double[]{0, 0, 0, 0, 0};
+        long n = total;
+        double min = valueAt(0);
+        double max = valueAt(n - 1);
+        double median = medianOfRange(0, n - 1);
+        long loStart = 0;
+        long loEnd = n / 2 - 1;
+        long hiStart = (n % 2 == 0) ? (n / 2) : (n / 2 + 1);
+        long hiEnd = n - 1;
+        double q1 = medianOfRange(loStart, Math.max(loEnd, loStart));
+        double q3 = medianOfRange(Math.max(hiStart, loStart), hiEnd);
+        return new double[]{min, q1, median, q3, max};
+    }
+
+    // median of sorted[from..to] inclusive
+    private double medianOfRange(long from, long to) {
+        if (from > to) return 0;
+        long len = to - from + 1;
+        long mid = from + (len - 1) / 2;
+        if (len % 2 == 1) {
+            return valueAt(mid);
+        } else {
+            return (valueAt(mid) + valueAt(mid + 1)) / 2.0;
+        }
+    }
+
+    private void ensureRange(int rating) {
+        if (rating >= offset && rating < offset + counts.length) return;
+        int newMin = Math.min(offset, rating);
+        int newMax = Math.max(offset + counts.length - 1, rating);
+        long[] grown = new long[newMax - newMin + 1];
+        System.arraycopy(counts, 0, grown, offset - newMin, counts.length);
+        counts = grown;
+        offset = newMin;
+    }
+}
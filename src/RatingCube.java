@@ -0,0 +1,344 @@
+import java.sql.SQLException;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * RatingCube - pre-aggregated rating counts over (genre, exact age, rating).
+ * - built from a RatingsSnapshot in one parallel fork-join pass over the rating columns
+ * - stored as primitive long arrays, cumulative along the age axis, so any age range
+ *   of one genre is a subtraction per rating value
+ * - age buckets are an AgeBuckets value chosen per query, not a SQL CASE
+ *
+ * Operations, none of which touch the database:
+ * - dice(genres, fromAge, toAge): one histogram for a sub-cube
+ * - sliceGenre(genre, buckets): one genre's histograms per age bucket
+ * - byGenre(), byAgeGroup(buckets): roll-ups over every age or every genre
+ * - byGenreAndAgeGroup(buckets): the full genre × age bucket breakdown
+ *
+ * Ratings of a missing movie or user are kept in their own cells, so the roll-ups equal
+ * the SQL inner joins: byGenre() matches genreRatingCounts() and byAgeGroup(AgeBuckets.SQL)
+ * matches ageGroupRatingCounts(). Ages are clamped to 0..MAX_AGE; ratings outside
+ * 0..MAX_RATING (RatingWriter accepts 1..10) are only counted in outOfScale().
+ */
+public final class RatingCube {
+
+    static final int MAX_RATING = 10;
+    static final int MAX_AGE = 120;
+
+    private static final int RATINGS = MAX_RATING + 1;
+    private static final int AGES = MAX_AGE + 1;
+    // age slots of a leaf cube: exact ages, then NULL age, then no such user
+    private static final int NULL_AGE = AGES;
+    private static final int NO_USER = AGES + 1;
+    private static final int AGE_SLOTS = AGES + 2;
+
+    private static final Comparator<String> SQL_ORDER = Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER);
+
+    /**
+     * Age bucket boundaries: bucket i holds ages from bounds[i - 1] (inclusive) up to
+     * bounds[i] (exclusive), so n bounds make n + 1 buckets. Users without an age go to
+     * their own unknownLabel bucket, or into the last bucket when it is null, which is
+     * what the SQL CASE ... ELSE does.
+     */
+    public record AgeBuckets(int[] bounds, String[] labels, String unknownLabel) {
+
+        /** The buckets of the SQL age-group query. */
+        public static final AgeBuckets SQL = new AgeBuckets(new int[]{18, 36, 51},
+                new String[]{"Under 18", "18-35", "36-50", "50+"}, null);
+
+        public AgeBuckets {
+            if (labels.length != bounds.length + 1) {
+                throw new IllegalArgumentException(bounds.length + " bounds need " + (bounds.length + 1) + " labels");
+            }
+            for (int i = 1; i < bounds.length; i++) {
+                if (bounds[i] <= bounds[i - 1]) throw new IllegalArgumentException("Bounds must increase: " + Arrays.toString(bounds));
+            }
+            bounds = bounds.clone();
+            labels = labels.clone();
+        }
+
+        /** Buckets split at {@code bounds}, labelled "Under 18", "18-35", "51+"; unknown ages apart. */
+        public static AgeBuckets of(int... bounds) {
+            String[] labels = new String[bounds.length + 1];
+            for (int i = 0; i <= bounds.length; i++) {
+                if (i == 0) labels[i] = bounds.length == 0 ? "All ages" : "Under " + bounds[0];
+                else if (i == bounds.length) labels[i] = bounds[i - 1] + "+";
+                else if (bounds[i] - 1 == bounds[i - 1]) labels[i] = String.valueOf(bounds[i - 1]);
+                else labels[i] = bounds[i - 1] + "-" + (bounds[i] - 1);
+            }
+            return new AgeBuckets(bounds, labels, "Unknown");
+        }
+
+        /** Parse "18,36,51" into of(18, 36, 51); a blank spec means AgeBuckets.SQL. */
+        public static AgeBuckets parse(String spec) {
+            if (spec == null || spec.isBlank()) return SQL;
+            String[] parts = spec.split(",");
+            int[] bounds = new int[parts.length];
+            try {
+                for (int i = 0; i < parts.length; i++) bounds[i] = Integer.parseInt(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Age buckets must be comma-separated ages: " + spec);
+            }
+            return of(bounds);
+        }
+    }
+
+    // genre slot -> name; slot genres.length collects ratings of missing movies
+    private final String[] genres;
+    private final int[] sqlOrder;
+    private final Map<String, Integer> genreSlots = new HashMap<>();
+    // [genre slot][age 0..AGES][rating]: counts of ratings by users younger than age
+    private final long[] cumulative;
+    // [genre slot][rating]
+    private final long[] nullAge;
+    private final long[] noUser;
+    private final long outOfScale;
+    private final long builtAt = System.currentTimeMillis();
+
+    private RatingCube(String[] genres, long[] cells, long outOfScale) {
+        this.genres = genres;
+        this.outOfScale = outOfScale;
+        for (int g = 0; g < genres.length; g++) genreSlots.put(genres[g], g);
+        sqlOrder = IntStream.range(0, genres.length).boxed()
+                .sorted((x, y) -> Objects.compare(genres[x], genres[y], SQL_ORDER))
+                .mapToInt(Integer::intValue).toArray();
+
+        int slots = genres.length + 1;
+        cumulative = new long[slots * (AGES + 1) * RATINGS];
+        nullAge = new long[slots * RATINGS];
+        noUser = new long[slots * RATINGS];
+        for (int g = 0; g < slots; g++) {
+            int cell = g * AGE_SLOTS * RATINGS;
+            int cum = g * (AGES + 1) * RATINGS;
+            for (int a = 0; a < AGES; a++) {
+                for (int r = 0; r < RATINGS; r++) {
+                    cumulative[cum + (a + 1) * RATINGS + r] = cumulative[cum + a * RATINGS + r] + cells[cell + a * RATINGS + r];
+                }
+            }
+            System.arraycopy(cells, cell + NULL_AGE * RATINGS, nullAge, g * RATINGS, RATINGS);
+            System.arraycopy(cells, cell + NO_USER * RATINGS, noUser, g * RATINGS, RATINGS);
+        }
+    }
+
+    /** Load a fresh RatingsSnapshot and build the cube from it. */
+    public static RatingCube load() throws SQLException {
+        return build(RatingsSnapshot.load());
+    }
+
+    /** Build the cube in one parallel pass over the snapshot's rating columns. */
+    public static RatingCube build(RatingsSnapshot snapshot) {
+        String[] genres = snapshot.genreNames();
+        int[] movieGenre = snapshot.movieGenres();
+        short[] userAge = snapshot.userAges();
+        int[] ratingMovie = snapshot.ratingMovies();
+        int[] ratingUser = snapshot.ratingUsers();
+        byte[] ratingValue = snapshot.ratingValues();
+
+        int noMovie = genres.length;
+        int size = (genres.length + 1) * AGE_SLOTS * RATINGS;
+        // each leaf fills a partial cube; the extra last cell counts ratings outside the scale
+        long[] cells = snapshot.scan(() -> new long[size + 1], (a, from, to) -> {
+            for (int i = from; i < to; i++) {
+                int r = ratingValue[i] & 0xFF;
+                if (r > MAX_RATING) {
+                    a[size]++;
+                    continue;
+                }
+                int m = ratingMovie[i];
+                int u = ratingUser[i];
+                int g = m < 0 ? noMovie : movieGenre[m];
+                int age = u < 0 ? NO_USER : ageSlot(userAge[u]);
+                a[(g * AGE_SLOTS + age) * RATINGS + r]++;
+            }
+        }, (x, y) -> {
+            for (int i = 0; i < x.length; i++) x[i] += y[i];
+            return x;
+        });
+        return new RatingCube(genres, cells, cells[size]);
+    }
+
+    private static int ageSlot(short age) {
+        if (age == RatingsSnapshot.NO_AGE) return NULL_AGE;
+        return Math.clamp(age, 0, MAX_AGE);
+    }
+
+    public long builtAt() {
+        return builtAt;
+    }
+
+    /** Ratings outside 0..MAX_RATING, which no query includes. */
+    public long outOfScale() {
+        return outOfScale;
+    }
+
+    /** Genre names in SQL ORDER BY order (NULL first, case-insensitive). */
+    public List<String> genres() {
+        List<String> list = new ArrayList<>(genres.length);
+        for (int g : sqlOrder) list.add(genres[g]);
+        return list;
+    }
+
+    // -------------------------
+    // Queries
+    // -------------------------
+
+    /**
+     * Ratings of movies in {@code genres} (null for every genre) by users aged
+     * fromAge..toAge inclusive; users without an age are left out.
+     */
+    public RatingCounts dice(Collection<String> genres, int fromAge, int toAge) {
+        long[] acc = new long[RATINGS];
+        int from = Math.clamp(fromAge, 0, AGES);
+        int to = Math.clamp((long) toAge + 1, from, AGES);
+        if (genres == null) {
+            for (int g = 0; g < this.genres.length; g++) addAges(acc, g, from, to);
+        } else {
+            for (String genre : new HashSet<>(genres)) {
+                Integer g = genreSlots.get(genre);
+                if (g != null) addAges(acc, g, from, to);
+            }
+        }
+        return RatingsSnapshot.toCounts(acc);
+    }
+
+    /** One genre's ratings per age bucket, buckets in order; empty if the genre is unknown. */
+    public Map<String, RatingCounts> sliceGenre(String genre, AgeBuckets buckets) {
+        Integer g = genreSlots.get(genre);
+        return g == null ? new LinkedHashMap<>() : ageGroups(new int[]{g}, buckets);
+    }
+
+    /** Roll-up over ages: ratings per genre in SQL order, like genreRatingCounts(). */
+    public Map<String, RatingCounts> byGenre() {
+        Map<String, RatingCounts> result = new LinkedHashMap<>();
+        for (int g : sqlOrder) {
+            long[] acc = new long[RATINGS];
+            addAges(acc, g, 0, AGES);
+            addRatings(acc, nullAge, g);
+            addRatings(acc, noUser, g);
+            RatingCounts counts = RatingsSnapshot.toCounts(acc);
+            if (counts.total() > 0) result.put(genres[g], counts);
+        }
+        return result;
+    }
+
+    /**
+     * Roll-up over genres: ratings per age bucket, buckets in order. Ratings of missing
+     * movies are included, so byAgeGroup(AgeBuckets.SQL) equals ageGroupRatingCounts().
+     */
+    public Map<String, RatingCounts> byAgeGroup(AgeBuckets buckets) {
+        int[] all = new int[genres.length + 1];
+        for (int g = 0; g < all.length; g++) all[g] = g;
+        return ageGroups(all, buckets);
+    }
+
+    /** genre -> age bucket -> ratings, genres in SQL order; empty cells are left out. */
+    public Map<String, Map<String, RatingCounts>> byGenreAndAgeGroup(AgeBuckets buckets) {
+        Map<String, Map<String, RatingCounts>> result = new LinkedHashMap<>();
+        for (int g : sqlOrder) {
+            Map<String, RatingCounts> row = ageGroups(new int[]{g}, buckets);
+            if (!row.isEmpty()) result.put(genres[g], row);
+        }
+        return result;
+    }
+
+    // per-bucket histograms summed over the genre slots
+    private Map<String, RatingCounts> ageGroups(int[] slots, AgeBuckets buckets) {
+        int[] bounds = buckets.bounds();
+        int last = bounds.length;
+        long[][] acc = new long[last + 2][RATINGS];   // slot last + 1: unknown ages
+        for (int g : slots) {
+            for (int b = 0; b <= last; b++) {
+                int from = b == 0 ? 0 : Math.clamp(bounds[b - 1], 0, AGES);
+                int to = b == last ? AGES : Math.clamp(bounds[b], from, AGES);
+                addAges(acc[b], g, from, to);
+            }
+            addRatings(acc[buckets.unknownLabel() == null ? last : last + 1], nullAge, g);
+        }
+
+        Map<String, RatingCounts> result = new LinkedHashMap<>();
+        for (int b = 0; b <= last + 1; b++) {
+            RatingCounts counts = RatingsSnapshot.toCounts(acc[b]);
+            if (counts.total() == 0) continue;
+            String label = b <= last ? buckets.labels()[b] : buckets.unknownLabel();
+            result.merge(label, counts, (x, y) -> {
+                x.addAll(y);
+                return x;
+            });
+        }
+        return result;
+    }
+
+    // ratings of genre slot g by users aged from..to-1
+    private void addAges(long[] acc, int g, int from, int to) {
+        int base = g * (AGES + 1) * RATINGS;
+        int hi = base + to * RATINGS;
+        int lo = base + from * RATINGS;
+        for (int r = 0; r < RATINGS; r++) acc[r] += cumulative[hi + r] - cumulative[lo + r];
+    }
+
+    private static void addRatings(long[] acc, long[] byGenre, int g) {
+        for (int r = 0; r < RATINGS; r++) acc[r] += byGenre[g * RATINGS + r];
+    }
+
+    // -------------------------
+    // Command line
+    // -------------------------
+
+    // Usage: RatingCube [--buckets 18,36,51] [--genre GENRE] [--ages FROM-TO]
+    // Prints the genre × age bucket breakdown, or with --genre/--ages one diced histogram.
+    public static void main(String[] args) throws Exception {
+        AgeBuckets buckets = AgeBuckets.SQL;
+        String genre = null;
+        String ages = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--buckets" -> buckets = AgeBuckets.parse(args[++i]);
+                case "--genre" -> genre = args[++i];
+                case "--ages" -> ages = args[++i];
+                default -> {
+                    System.err.println("Usage: RatingCube [--buckets 18,36,51] [--genre GENRE] [--ages FROM-TO]");
+                    System.exit(2);
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        RatingCube cube = load();
+        System.out.printf("Built cube over %d genres in %d ms%n",
+                cube.genres.length, (System.nanoTime() - start) / 1_000_000);
+
+        start = System.nanoTime();
+        String text;
+        if (genre != null || ages != null) {
+            int from = 0, to = MAX_AGE;
+            if (ages != null) {
+                String[] range = ages.split("-", 2);
+                from = Integer.parseInt(range[0].trim());
+                to = range.length > 1 ? Integer.parseInt(range[1].trim()) : from;
+            }
+            RatingCounts counts = cube.dice(genre == null ? null : List.of(genre), from, to);
+            text = MovieAnalysis.formatRatingCounts(Map.of(genre == null ? "All genres" : genre, counts),
+                    "%-15s Rating %.1f → %d votes%n");
+        } else {
+            text = formatBreakdown(cube.byGenreAndAgeGroup(buckets));
+        }
+        long micros = (System.nanoTime() - start) / 1_000;
+        System.out.print(text.isEmpty() ? "No ratings found.\n" : text);
+        System.out.printf("Answered in %d µs%n", micros);
+    }
+
+    /** One line per (genre, age bucket): vote count and average rating. */
+    static String formatBreakdown(Map<String, Map<String, RatingCounts>> breakdown) {
+        StringBuilder sb = new StringBuilder();
+        for (var genre : breakdown.entrySet()) {
+            for (var group : genre.getValue().entrySet()) {
+                RatingCounts counts = group.getValue();
+                long sum = 0;
+                for (int r = counts.minRating(); r <= counts.maxRating(); r++) sum += r * counts.count(r);
+                sb.append(String.format("%-15s %-10s ⭐ %.2f (%d votes)%n",
+                        genre.getKey(), group.getKey(), (double) sum / counts.total(), counts.total()));
+            }
+        }
+        return sb.toString();
+    }
+}
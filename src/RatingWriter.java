@@ -0,0 +1,155 @@
+import java.sql.*;
+import java.util.*;
+
+/**
+ * RatingWriter - write path for ratings.
+ * - a user rating a movie they already rated replaces the old rating: rows are written
+ *   with INSERT ... ON DUPLICATE KEY UPDATE on the unique (user_id, movie_id) key
+ *   (SchemaMigrations V2), which H2 runs in its MySQL mode too
+ * - a batch is written in one transaction with JDBC batching; its users and old ratings
+ *   are read with a few IN (...) queries (BatchLookup), not one query per row
+ * - returns the committed changes so in-memory aggregates can apply them as deltas
+ * - once SchemaMigrations has created them, the summary tables are updated in the
+ *   same transaction (SummaryTables.apply), and so is the change log (RatingChangeLog)
+ */
+public class RatingWriter {
+
+    /** One committed rating change; oldRating is null when the rating is new. */
+    public record RatingChange(String userId, String movieId, boolean userKnown, Integer age,
+                               Integer oldRating, int newRating) {}
+
+    private record UserInfo(boolean known, Integer age) {}
+
+    private static final UserInfo UNKNOWN_USER = new UserInfo(false, null);
+
+    // the old ratings, for the deltas; locks the rows so no other writer changes them before commit.
+    // MySQL reads the pairs straight off the unique key, locking them and the gaps of missing ones;
+    // H2 would test each row of the users x movies range against the whole IN list, and lock it,
+    // so there the pairs are joined in as a VALUES table, one key lookup each
+    private static final String FIND_EXISTING =
+            "SELECT user_id, movie_id, rating FROM ratings WHERE (user_id, movie_id) IN (%s) FOR UPDATE";
+    private static final String FIND_EXISTING_JOINED =
+            "SELECT r.user_id, r.movie_id, r.rating FROM (VALUES %s) v (user_id, movie_id)"
+            + " JOIN ratings r ON r.user_id = v.user_id AND r.movie_id = v.movie_id FOR UPDATE";
+    private static final String FIND_USERS = "SELECT user_id, age FROM users WHERE user_id IN (%s)";
+    private static final String UPSERT_WITH_ID =
+            "INSERT INTO ratings (rating_id, user_id, movie_id, rating) VALUES (?, ?, ?, ?)"
+            + " ON DUPLICATE KEY UPDATE rating = VALUES(rating)";
+    private static final String UPSERT =
+            "INSERT INTO ratings (user_id, movie_id, rating) VALUES (?, ?, ?)"
+            + " ON DUPLICATE KEY UPDATE rating = VALUES(rating)";
+
+    private RatingWriter() {}
+
+    /**
+     * Upsert {@code ratings} in one transaction. If the same user rates the same movie
+     * more than once in the batch (ids compared as the database does, see BatchLookup),
+     * the last rating wins. A null rating_id lets the database assign one.
+     *
+     * The old ratings are read with a locking read first. That cannot lock a pair that
+     * has no row yet: when another writer inserts it before this write commits, the upsert
+     * finds that row, the changes would count a new vote that isn't one, and so the whole
+     * write is rolled back and fails with SQLState 40001; retry it.
+     */
+    public static List<RatingChange> write(Connection conn, List<Ratings> ratings) throws SQLException {
+        BatchLookup lookup = BatchLookup.on(conn);
+        Map<String, Ratings> latest = new LinkedHashMap<>();
+        for (Ratings r : ratings) {
+            if (r.getUser_id() == null || r.getMovie_id() == null) {
+                throw new IllegalArgumentException("Rating needs a user_id and a movie_id");
+            }
+            if (r.getRating() < 1 || r.getRating() > 10) {
+                throw new IllegalArgumentException("Rating must be between 1 and 10: " + r.getRating());
+            }
+            latest.put(lookup.key(r.getUser_id(), r.getMovie_id()), r);
+        }
+        if (latest.isEmpty()) return new ArrayList<>();
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement upsertWithId = conn.prepareStatement(UPSERT_WITH_ID);
+             PreparedStatement upsert = conn.prepareStatement(UPSERT)) {
+
+            Map<String, UserInfo> users = lookupUsers(lookup, latest.values());
+            Map<String, Integer> existing = lookupExisting(lookup, latest);
+            List<RatingChange> changes = new ArrayList<>(latest.size());
+            List<RatingChange> withId = new ArrayList<>(), withoutId = new ArrayList<>();
+
+            for (var entry : latest.entrySet()) {
+                Ratings r = entry.getValue();
+                UserInfo user = users.getOrDefault(lookup.key(r.getUser_id()), UNKNOWN_USER);
+                Integer oldRating = existing.get(entry.getKey());
+
+                RatingChange change = new RatingChange(r.getUser_id(), r.getMovie_id(), user.known(), user.age(),
+                        oldRating, r.getRating());
+                // an existing row keeps its rating_id; only new rows take the given one
+                if (oldRating == null && r.getRating_id() != null) {
+                    upsertWithId.setString(1, r.getRating_id());
+                    upsertWithId.setString(2, r.getUser_id());
+                    upsertWithId.setString(3, r.getMovie_id());
+                    upsertWithId.setInt(4, r.getRating());
+                    upsertWithId.addBatch();
+                    withId.add(change);
+                } else {
+                    upsert.setString(1, r.getUser_id());
+                    upsert.setString(2, r.getMovie_id());
+                    upsert.setInt(3, r.getRating());
+                    upsert.addBatch();
+                    withoutId.add(change);
+                }
+                changes.add(change);
+            }
+
+            if (!withId.isEmpty()) requireInserted(withId, upsertWithId.executeBatch());
+            if (!withoutId.isEmpty()) requireInserted(withoutId, upsert.executeBatch());
+            if (SummaryTables.available()) SummaryTables.apply(conn, changes);
+            if (RatingChangeLog.available()) RatingChangeLog.append(conn, changes);   // last: holds the sequence lock
+            conn.commit();
+            return changes;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    // an upsert counts 1 for an inserted row and 2 for an updated one; a change read as new must
+    // have inserted. An unchanged row counts 0, except on MySQL with CLIENT_FOUND_ROWS (Connector/J's
+    // default), where it counts 1; there the locking read's gap lock (REPEATABLE READ) makes the
+    // other writer wait or deadlock instead
+    private static void requireInserted(List<RatingChange> changes, int[] counts) throws SQLException {
+        for (int i = 0; i < counts.length; i++) {
+            RatingChange c = changes.get(i);
+            if (c.oldRating() == null && counts[i] != 1 && counts[i] != Statement.SUCCESS_NO_INFO) {
+                throw new SQLException("Rating of " + c.movieId() + " by " + c.userId()
+                        + " was written concurrently; retry", "40001");
+            }
+        }
+    }
+
+    // lookup.key(user_id) -> the user; users not found are left out
+    private static Map<String, UserInfo> lookupUsers(BatchLookup lookup, Collection<Ratings> ratings) throws SQLException {
+        Set<String> ids = new LinkedHashSet<>();
+        for (Ratings r : ratings) ids.add(r.getUser_id());
+        Map<String, UserInfo> users = new HashMap<>();
+        lookup.forEach(FIND_USERS, ids.stream().map(id -> new String[]{id}).toList(), rs -> {
+            int age = rs.getInt("age");
+            users.put(lookup.key(rs.getString("user_id")), new UserInfo(true, rs.wasNull() ? null : age));
+            return true;
+        });
+        return users;
+    }
+
+    // lookup.key(user_id, movie_id) -> the rating stored now, for the pairs in latest
+    private static Map<String, Integer> lookupExisting(BatchLookup lookup, Map<String, Ratings> latest) throws SQLException {
+        List<String[]> pairs = new ArrayList<>(latest.size());
+        for (Ratings r : latest.values()) pairs.add(new String[]{r.getUser_id(), r.getMovie_id()});
+        Map<String, Integer> existing = new HashMap<>();
+        lookup.forEach(lookup.isMySql() ? FIND_EXISTING : FIND_EXISTING_JOINED, pairs, rs -> {
+            existing.put(lookup.key(rs.getString("user_id"), rs.getString("movie_id")), rs.getInt("rating"));
+            return true;
+        });
+        return existing;
+    }
+}
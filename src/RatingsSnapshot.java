@@ -0,0 +1,402 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+import java.util.function.Supplier;
+
+/**
+ * RatingsSnapshot - in-memory, column-oriented copy of ratings, movies and users.
+ *
+ * Loaded once from the database, then answers the MovieAnalysis aggregates with
+ * parallel fork-join scans over primitive arrays instead of a GROUP BY per click:
+ * - movies and users are dictionary-encoded to dense int ids
+ * - genres are dictionary-encoded per distinct genre string
+ * - ratings are three parallel columns: movie id, user id, byte rating
+ * - user ages are a short column (NO_AGE when NULL)
+ *
+ * Rows whose movie or user is missing get id -1, so joins behave like the SQL
+ * inner joins while the plain histogram still counts every rating.
+ */
+public class RatingsSnapshot implements InMemoryAnalytics {
+
+    static final short NO_AGE = Short.MIN_VALUE;
+
+    // age groups in the order the SQL path sorts its age_group labels
+    static final String[] AGE_GROUPS = {"18-35", "36-50", "50+", "Under 18"};
+
+    private static final int MIN_SPLIT = 1 << 16;
+
+    // movies
+    private final String[] movieTitles;
+    private final int[] movieGenre;
+    // genres
+    private final String[] genreNames;
+    // users
+    private final short[] userAge;
+    // ratings
+    private final int[] ratingMovie;
+    private final int[] ratingUser;
+    private final byte[] ratingValue;
+
+    private final long loadedAt = System.currentTimeMillis();
+
+    RatingsSnapshot(String[] movieTitles, int[] movieGenre, String[] genreNames, short[] userAge,
+                            int[] ratingMovie, int[] ratingUser, byte[] ratingValue) {
+        this.movieTitles = movieTitles;
+        this.movieGenre = movieGenre;
+        this.genreNames = genreNames;
+        this.userAge = userAge;
+        this.ratingMovie = ratingMovie;
+        this.ratingUser = ratingUser;
+        this.ratingValue = ratingValue;
+    }
+
+    /** Load the three tables through a pooled connection. */
+    public static RatingsSnapshot load() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) throw new SQLException("No database connection");
+            return load(conn);
+        }
+    }
+
+    public static RatingsSnapshot load(Connection conn) throws SQLException {
+        // movies + genre dictionary; in id order, which topByAverage breaks ties on
+        Map<String, Integer> movieIds = new HashMap<>();
+        Map<String, Integer> genreIds = new HashMap<>();
+        List<String> genres = new ArrayList<>();
+        List<String> titles = new ArrayList<>();
+        IntColumn movieGenre = new IntColumn();
+        StreamingQuery.forEach(conn, "SELECT movie_id, title, genre FROM movies ORDER BY movie_id", rs -> {
+            movieIds.put(rs.getString("movie_id"), titles.size());
+            titles.add(rs.getString("title"));
+            String genre = rs.getString("genre");
+            Integer g = genreIds.get(genre);
+            if (g == null) {
+                g = genres.size();
+                genreIds.put(genre, g);
+                genres.add(genre);
+            }
+            movieGenre.add(g);
+            return true;
+        });
+
+        // users
+        Map<String, Integer> userIds = new HashMap<>();
+        ShortColumn ages = new ShortColumn();
+        StreamingQuery.forEach(conn, "SELECT user_id, age FROM users", rs -> {
+            userIds.put(rs.getString("user_id"), ages.size());
+            int age = rs.getInt("age");
+            ages.add(rs.wasNull() ? NO_AGE : (short) age);
+            return true;
+        });
+
+        // ratings
+        IntColumn rMovie = new IntColumn();
+        IntColumn rUser = new IntColumn();
+        ByteColumn rValue = new ByteColumn();
+        // streamed, so only the packed columns grow with the table, never a buffered result
+        StreamingQuery.forEach(conn, "SELECT movie_id, user_id, rating FROM ratings", rs -> {
+            rMovie.add(movieIds.getOrDefault(rs.getString("movie_id"), -1));
+            rUser.add(userIds.getOrDefault(rs.getString("user_id"), -1));
+            rValue.add((byte) rs.getInt("rating"));
+            return true;
+        });
+
+        return new RatingsSnapshot(titles.toArray(new String[0]), movieGenre.toArray(),
+                genres.toArray(new String[0]), ages.toArray(),
+                rMovie.toArray(), rUser.toArray(), rValue.toArray());
+    }
+
+    public long loadedAt() {
+        return loadedAt;
+    }
+
+    public int ratingCount() {
+        return ratingValue.length;
+    }
+
+    // -------------------------
+    // Columns, for SnapshotFile and RatingCube (shared, not copied: do not modify)
+    // -------------------------
+
+    String[] movieTitles() {
+        return movieTitles;
+    }
+
+    int[] movieGenres() {
+        return movieGenre;
+    }
+
+    String[] genreNames() {
+        return genreNames;
+    }
+
+    short[] userAges() {
+        return userAge;
+    }
+
+    int[] ratingMovies() {
+        return ratingMovie;
+    }
+
+    int[] ratingUsers() {
+        return ratingUser;
+    }
+
+    byte[] ratingValues() {
+        return ratingValue;
+    }
+
+    // -------------------------
+    // Analyses
+    // -------------------------
+
+    /** Same result as MovieAnalysis.getTopMoviesData; ties on the average go to the lower movie id. */
+    @Override
+    public List<MovieAnalysis.MovieStat> topMovies(int limit, int minVotes) {
+        int movies = movieTitles.length;
+        long[][] acc = scan(() -> new long[2][movies], (a, from, to) -> {
+            long[] sum = a[0], cnt = a[1];
+            for (int i = from; i < to; i++) {
+                int m = ratingMovie[i];
+                if (m < 0) continue;
+                sum[m] += ratingValue[i];
+                cnt[m]++;
+            }
+        }, (x, y) -> {
+            for (int m = 0; m < movies; m++) {
+                x[0][m] += y[0][m];
+                x[1][m] += y[1][m];
+            }
+            return x;
+        });
+        return topByAverage(movies, m -> acc[0][m], m -> acc[1][m], m -> movieTitles[m], limit, minVotes);
+    }
+
+    /** (genre, rating) counts, genres in SQL ORDER BY order (NULL first, case-insensitive). */
+    @Override
+    public Map<String, RatingCounts> genreRatingCounts() {
+        int genres = genreNames.length;
+        long[][] acc = scan(() -> new long[genres][256], (a, from, to) -> {
+            for (int i = from; i < to; i++) {
+                int m = ratingMovie[i];
+                if (m < 0) continue;
+                a[movieGenre[m]][ratingValue[i] & 0xFF]++;
+            }
+        }, RatingsSnapshot::mergeCounts);
+
+        Integer[] order = new Integer[genres];
+        for (int g = 0; g < genres; g++) order[g] = g;
+        Arrays.sort(order, (x, y) -> Objects.compare(genreNames[x], genreNames[y],
+                Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER)));
+
+        Map<String, RatingCounts> result = new LinkedHashMap<>();
+        for (int g : order) {
+            RatingCounts counts = toCounts(acc[g]);
+            if (counts.total() > 0) result.put(genreNames[g], counts);
+        }
+        return result;
+    }
+
+    /** (age group, rating) counts, groups in SQL ORDER BY order, using the SQL CASE buckets. */
+    @Override
+    public Map<String, RatingCounts> ageGroupRatingCounts() {
+        long[][] acc = scan(() -> new long[AGE_GROUPS.length][256], (a, from, to) -> {
+            for (int i = from; i < to; i++) {
+                int u = ratingUser[i];
+                if (u < 0) continue;
+                a[ageGroupIndex(userAge[u])][ratingValue[i] & 0xFF]++;
+            }
+        }, RatingsSnapshot::mergeCounts);
+
+        Map<String, RatingCounts> result = new LinkedHashMap<>();
+        for (int g = 0; g < AGE_GROUPS.length; g++) {
+            RatingCounts counts = toCounts(acc[g]);
+            if (counts.total() > 0) result.put(AGE_GROUPS[g], counts);
+        }
+        return result;
+    }
+
+    /** rating -> count over all ratings, like the SQL histogram query (no join). */
+    @Override
+    public Map<Integer, Integer> ratingHistogram() {
+        long[] acc = scan(() -> new long[256], (a, from, to) -> {
+            for (int i = from; i < to; i++) a[ratingValue[i] & 0xFF]++;
+        }, (x, y) -> {
+            for (int r = 0; r < x.length; r++) x[r] += y[r];
+            return x;
+        });
+        Map<Integer, Integer> map = new TreeMap<>();
+        for (int r = 0; r < acc.length; r++) {
+            if (acc[r] > 0) map.put(r, (int) acc[r]);
+        }
+        return map;
+    }
+
+    // -------------------------
+    // Helpers
+    // -------------------------
+
+    /** Bucket index into AGE_GROUPS, mirroring the CASE expression in MovieAnalysis. */
+    static int ageGroupIndex(short age) {
+        if (age == NO_AGE) return 2;          // NULL age falls through to ELSE '50+'
+        if (age < 18) return 3;
+        if (age <= 35) return 0;
+        if (age <= 50) return 1;
+        return 2;
+    }
+
+    /** Age-group label for a nullable age, mirroring the CASE expression in MovieAnalysis. */
+    static String ageGroup(Integer age) {
+        return AGE_GROUPS[ageGroupIndex(age == null ? NO_AGE : age.shortValue())];
+    }
+
+    /**
+     * Best {@code limit} of {@code movies} movies by sum/count; ties go to the lower movie id.
+     * Averages are reported rounded half up to 4 decimals, like the SQL and SummaryTables ones.
+     */
+    static List<MovieAnalysis.MovieStat> topByAverage(int movies, IntToLongFunction sum, IntToLongFunction cnt,
+                                                      IntFunction<String> title, int limit, int minVotes) {
+        if (limit <= 0) return new ArrayList<>();
+        // min-heap of the best `limit` movies: lowest average (then highest id) on top
+        Comparator<Integer> worstFirst = (a, b) -> {
+            int c = Double.compare((double) sum.applyAsLong(a) / cnt.applyAsLong(a),
+                    (double) sum.applyAsLong(b) / cnt.applyAsLong(b));
+            return c != 0 ? c : Integer.compare(b, a);
+        };
+        PriorityQueue<Integer> heap = new PriorityQueue<>(limit + 1, worstFirst);
+        for (int m = 0; m < movies; m++) {
+            long c = cnt.applyAsLong(m);
+            if (c == 0 || c < minVotes) continue;
+            heap.add(m);
+            if (heap.size() > limit) heap.poll();
+        }
+
+        List<MovieAnalysis.MovieStat> list = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            int m = heap.poll();
+            long c = cnt.applyAsLong(m);
+            double avg = BigDecimal.valueOf(sum.applyAsLong(m)).divide(BigDecimal.valueOf(c), 4, RoundingMode.HALF_UP)
+                    .doubleValue();
+            list.add(new MovieAnalysis.MovieStat(title.apply(m), avg, (int) c));
+        }
+        Collections.reverse(list);
+        return list;
+    }
+
+    static RatingCounts toCounts(long[] byRating) {
+        RatingCounts counts = new RatingCounts();
+        for (int r = 0; r < byRating.length; r++) {
+            if (byRating[r] != 0) counts.add(r, byRating[r]);
+        }
+        return counts;
+    }
+
+    private static long[][] mergeCounts(long[][] x, long[][] y) {
+        for (int g = 0; g < x.length; g++) {
+            for (int r = 0; r < x[g].length; r++) x[g][r] += y[g][r];
+        }
+        return x;
+    }
+
+    // -------------------------
+    // Parallel scan
+    // -------------------------
+
+    interface RangeBody<A> {
+        void accept(A acc, int from, int to);
+    }
+
+    /** Fork-join scan over all rating rows: each leaf fills its own accumulator, parents merge. */
+    <A> A scan(Supplier<A> identity, RangeBody<A> body, BinaryOperator<A> merge) {
+        int n = ratingValue.length;
+        int split = Math.max(MIN_SPLIT, n / (ForkJoinPool.getCommonPoolParallelism() * 4 + 1));
+        return ForkJoinPool.commonPool().invoke(new ScanTask<>(0, n, split, identity, body, merge));
+    }
+
+    @SuppressWarnings("serial")   // RecursiveTask is Serializable, but tasks never leave the pool
+    private static final class ScanTask<A> extends RecursiveTask<A> {
+        private final int from, to, split;
+        private final Supplier<A> identity;
+        private final RangeBody<A> body;
+        private final BinaryOperator<A> merge;
+
+        ScanTask(int from, int to, int split, Supplier<A> identity, RangeBody<A> body, BinaryOperator<A> merge) {
+            this.from = from;
+            this.to = to;
+            this.split = split;
+            this.identity = identity;
+            this.body = body;
+            this.merge = merge;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from <= split) {
+                A acc = identity.get();
+                body.accept(acc, from, to);
+                return acc;
+            }
+            int mid = (from + to) >>> 1;
+            ScanTask<A> left = new ScanTask<>(from, mid, split, identity, body, merge);
+            left.fork();
+            A right = new ScanTask<>(mid, to, split, identity, body, merge).compute();
+            return merge.apply(left.join(), right);
+        }
+    }
+
+    // -------------------------
+    // Growable primitive columns used while loading
+    // -------------------------
+
+    private static final class IntColumn {
+        private int[] data = new int[1024];
+        private int size;
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    private static final class ShortColumn {
+        private short[] data = new short[1024];
+        private int size;
+
+        void add(short v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        int size() {
+            return size;
+        }
+
+        short[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    private static final class ByteColumn {
+        private byte[] data = new byte[1024];
+        private int size;
+
+        void add(byte v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
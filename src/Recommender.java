@@ -0,0 +1,16 @@
+import java.util.List;
+
+/**
+ * Recommender - a trained personalized-recommendation model MovieAnalysis can serve from:
+ * the item-item ItemBasedRecommender or the latent-factor MatrixFactorization.
+ */
+public interface Recommender {
+
+    /** Whether the model has ratings for this user. */
+    boolean knowsUser(String userId);
+
+    /** Top {@code n} movies the user has not rated, best predicted rating first; empty for unknown users. */
+    List<ItemBasedRecommender.Recommendation> recommend(String userId, int n);
+
+    long builtAt();
+}
@@ -0,0 +1,284 @@
+import java.sql.*;
+import java.util.*;
+
+/**
+ * SchemaMigrations - versioned schema for the movies database.
+ * - each migration has a version number and runs once; applied versions are recorded
+ *   in schema_version, so rerunning only applies the new ones
+ * - V1 creates movies, users and ratings (left alone if they already exist)
+ * - V2 adds covering indexes for the joins, and the unique (user, movie) key the rating upsert
+ *   needs; duplicate ratings of one movie by one user are removed first (see V2)
+ * - V3 adds the summary tables behind SummaryTables and fills them from ratings
+ * - V4 adds the rating change log behind RatingChangeLog
+ * - V5 adds import_chunks, where BulkImporter records the chunks it has committed
+ *
+ * Each migration runs in one transaction. MySQL commits DDL implicitly, so there a
+ * migration that fails halfway has to be finished by hand before rerunning.
+ *
+ * Usage: SchemaMigrations [--status | --rebuild-summaries]
+ */
+public class SchemaMigrations {
+
+    /** First version with the summary tables. */
+    public static final int SUMMARY_TABLES_VERSION = 3;
+
+    /** First version with the rating change log. */
+    public static final int CHANGE_LOG_VERSION = 4;
+
+    /** First version with BulkImporter's checkpoint table. */
+    public static final int IMPORT_CHECKPOINT_VERSION = 5;
+
+    private static final String USER_MOVIE_KEY = "CREATE UNIQUE INDEX idx_ratings_user_movie ON ratings (user_id, movie_id)";
+
+    @FunctionalInterface
+    interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    record Migration(int version, String description, Step step) {}
+
+    static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "movies, users and ratings tables", sql(
+                    """
+                    CREATE TABLE IF NOT EXISTS movies (
+                        movie_id VARCHAR(50) NOT NULL PRIMARY KEY,
+                        title    VARCHAR(255),
+                        genre    VARCHAR(50),
+                        year     INT
+                    )""",
+                    """
+                    CREATE TABLE IF NOT EXISTS users (
+                        user_id    VARCHAR(50) NOT NULL PRIMARY KEY,
+                        first_name VARCHAR(100),
+                        last_name  VARCHAR(100),
+                        age        INT
+                    )""",
+                    // RatingWriter inserts without a rating_id and lets the database pick one
+                    """
+                    CREATE TABLE IF NOT EXISTS ratings (
+                        rating_id VARCHAR(50) NOT NULL DEFAULT (UUID()) PRIMARY KEY,
+                        user_id   VARCHAR(50) NOT NULL,
+                        movie_id  VARCHAR(50) NOT NULL,
+                        rating    INT NOT NULL
+                    )""")),
+
+            // ratings(movie_id, rating) answers per-movie averages and the movie joins from the
+            // index alone; the unique ratings(user_id, movie_id) is the key RatingWriter's
+            // INSERT ... ON DUPLICATE KEY UPDATE hits, and serves per-user scans;
+            // movies(title) lets title searches scan the narrow index.
+            // ratings has no timestamp, so which of a user's duplicate ratings of a movie came
+            // last is unknown: V2 keeps the highest one (ties: the lowest rating_id). Duplicates
+            // mostly come from importing the same file twice, where the rows agree anyway.
+            new Migration(2, "covering indexes", sql(
+                    "CREATE INDEX idx_ratings_movie_rating ON ratings (movie_id, rating)",
+                    """
+                    DELETE FROM ratings WHERE rating_id IN (
+                        SELECT rating_id FROM (
+                            SELECT rating_id, ROW_NUMBER() OVER (
+                                PARTITION BY user_id, movie_id ORDER BY rating DESC, rating_id) AS n
+                            FROM ratings
+                        ) ranked WHERE n > 1
+                    )""",
+                    USER_MOVIE_KEY,
+                    "CREATE INDEX idx_movies_title ON movies (title)",
+                    "CREATE INDEX idx_movies_genre ON movies (genre, movie_id)")),
+
+            new Migration(SUMMARY_TABLES_VERSION, "summary tables", conn -> {
+                sql("""
+                    CREATE TABLE movie_stats (
+                        movie_id     VARCHAR(50) NOT NULL PRIMARY KEY,
+                        rating_sum   BIGINT NOT NULL,
+                        rating_count BIGINT NOT NULL
+                    )""",
+                    """
+                    CREATE TABLE genre_rating_counts (
+                        genre  VARCHAR(50) NOT NULL,
+                        rating INT NOT NULL,
+                        cnt    BIGINT NOT NULL,
+                        PRIMARY KEY (genre, rating)
+                    )""",
+                    """
+                    CREATE TABLE age_rating_counts (
+                        age    INT NOT NULL,
+                        rating INT NOT NULL,
+                        cnt    BIGINT NOT NULL,
+                        PRIMARY KEY (age, rating)
+                    )""",
+                    """
+                    CREATE TABLE rating_counts (
+                        rating INT NOT NULL PRIMARY KEY,
+                        cnt    BIGINT NOT NULL
+                    )""").apply(conn);
+                SummaryTables.rebuild(conn);
+            }),
+
+            // change_id comes from the single rating_change_seq row, which each writer keeps locked
+            // until it commits, so ids are gap-free and become visible in order
+            new Migration(CHANGE_LOG_VERSION, "rating change log", sql(
+                    """
+                    CREATE TABLE rating_changes (
+                        change_id  BIGINT NOT NULL PRIMARY KEY,
+                        user_id    VARCHAR(50),
+                        movie_id   VARCHAR(50),
+                        user_known BOOLEAN,
+                        age        INT,
+                        old_rating INT,
+                        new_rating INT,
+                        changed_at TIMESTAMP NOT NULL
+                    )""",
+                    """
+                    CREATE TABLE rating_change_seq (
+                        id      INT NOT NULL PRIMARY KEY,
+                        last_id BIGINT NOT NULL
+                    )""",
+                    "INSERT INTO rating_change_seq (id, last_id) VALUES (1, 0)")),
+
+            // one row per committed chunk of an import that hasn't finished yet
+            new Migration(IMPORT_CHECKPOINT_VERSION, "import checkpoints", sql(
+                    """
+                    CREATE TABLE import_chunks (
+                        source_file  VARCHAR(255) NOT NULL,
+                        target_table VARCHAR(20) NOT NULL,
+                        chunk_lines  INT NOT NULL,
+                        chunk_seq    BIGINT NOT NULL,
+                        PRIMARY KEY (source_file, chunk_seq)
+                    )""")));
+
+    // highest applied version of the pool's database; checked once per pool
+    private static volatile ConnectionPool checkedPool;
+    private static volatile int installedVersion;
+
+    private SchemaMigrations() {}
+
+    /** True if the configured database has been migrated to {@code version} or later. */
+    public static boolean installed(int version) {
+        ConnectionPool pool = DatabaseConnection.getPool();
+        if (checkedPool != pool) {
+            synchronized (SchemaMigrations.class) {
+                if (checkedPool != pool) {
+                    try (Connection conn = DatabaseConnection.getConnection()) {
+                        if (conn == null) return false;   // try again next time
+                        installedVersion = currentVersion(conn);
+                        checkedPool = pool;
+                    } catch (SQLException e) {
+                        e.printStackTrace();
+                        return false;
+                    }
+                }
+            }
+        }
+        return installedVersion >= version;
+    }
+
+    /** Check again on the next installed() call, e.g. after a migration. */
+    static synchronized void forget() {
+        checkedPool = null;
+    }
+
+    /** Apply every pending migration through a pooled connection; returns how many ran. */
+    public static int migrate() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) throw new SQLException("No database connection");
+            return migrate(conn);
+        }
+    }
+
+    public static int migrate(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("""
+                CREATE TABLE IF NOT EXISTS schema_version (
+                    version     INT NOT NULL PRIMARY KEY,
+                    description VARCHAR(200) NOT NULL,
+                    applied_at  TIMESTAMP NOT NULL
+                )""");
+        }
+
+        int current = currentVersion(conn);
+        int applied = 0;
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            for (Migration m : MIGRATIONS) {
+                if (m.version() <= current) continue;
+                long start = System.nanoTime();
+                try {
+                    m.step().apply(conn);
+                    try (PreparedStatement ps = conn.prepareStatement(
+                            "INSERT INTO schema_version (version, description, applied_at) VALUES (?, ?, ?)")) {
+                        ps.setInt(1, m.version());
+                        ps.setString(2, m.description());
+                        ps.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+                        ps.executeUpdate();
+                    }
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw new SQLException("Migration V" + m.version() + " (" + m.description() + ") failed", e);
+                }
+                System.out.printf("Applied V%d %s in %.1f s%n", m.version(), m.description(),
+                        (System.nanoTime() - start) / 1e9);
+                applied++;
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+            forget();
+        }
+        return applied;
+    }
+
+    /** Highest applied version; 0 for a database that was never migrated. */
+    public static int currentVersion(Connection conn) throws SQLException {
+        if (!hasTable(conn, "schema_version")) return 0;
+        try (PreparedStatement ps = conn.prepareStatement("SELECT MAX(version) FROM schema_version");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // identifier case differs per database (H2 upper-cases unquoted names), so look for both
+    private static boolean hasTable(Connection conn, String name) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        for (String n : List.of(name, name.toUpperCase())) {
+            try (ResultSet rs = meta.getTables(conn.getCatalog(), null, n, new String[]{"TABLE"})) {
+                if (rs.next()) return true;
+            }
+        }
+        return false;
+    }
+
+    private static Step sql(String... statements) {
+        return conn -> {
+            try (Statement st = conn.createStatement()) {
+                for (String s : statements) st.execute(s);
+            }
+        };
+    }
+
+    public static void main(String[] args) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) throw new SQLException("No database connection");
+            String mode = args.length > 0 ? args[0] : "";
+            switch (mode) {
+                case "" -> {
+                    int applied = migrate(conn);
+                    System.out.println(applied == 0 ? "Schema is up to date (V" + currentVersion(conn) + ")"
+                            : "Schema is now at V" + currentVersion(conn));
+                }
+                case "--status" -> {
+                    int current = currentVersion(conn);
+                    for (Migration m : MIGRATIONS) {
+                        System.out.printf("V%d %-35s %s%n", m.version(), m.description(),
+                                m.version() <= current ? "applied" : "pending");
+                    }
+                }
+                case "--rebuild-summaries" -> {
+                    SummaryTables.rebuild();
+                    System.out.println("Rebuilt summary tables");
+                }
+                default -> throw new IllegalArgumentException("Unknown option " + mode);
+            }
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableRow;
+import javafx.scene.control.TableView;
+
+/**
+ * SearchResultsTable - search hits in a virtualized TableView.
+ * - only the rows on screen get cells, however many titles match
+ * - starts with the first page; when a row near the end is laid out, the next page is
+ *   fetched in the background via MovieAnalysis.searchMoviesPage and appended
+ */
+public final class SearchResultsTable extends TableView<TitleSearchIndex.Hit> {
+
+    public static final int PAGE_SIZE = 100;
+    private static final int PREFETCH_ROWS = 25;   // fetch once this close to the end
+
+    private final MovieAnalysis analysis;
+    private final AsyncQueryExecutor queries;
+    private final String query;
+    private MovieAnalysis.SearchCursor next;
+    private boolean loading;
+
+    public SearchResultsTable(MovieAnalysis analysis, AsyncQueryExecutor queries, String query,
+                              MovieAnalysis.SearchPage firstPage) {
+        this.analysis = analysis;
+        this.queries = queries;
+        this.query = query;
+
+        TableColumn<TitleSearchIndex.Hit, String> title = new TableColumn<>("🎬 Title");
+        title.setCellValueFactory(c -> new SimpleStringProperty(c.getValue().title()));
+        title.setPrefWidth(420);
+
+        TableColumn<TitleSearchIndex.Hit, String> genre = new TableColumn<>("Genre");
+        genre.setCellValueFactory(c -> new SimpleStringProperty(c.getValue().genre()));
+        genre.setPrefWidth(150);
+
+        TableColumn<TitleSearchIndex.Hit, String> rating = new TableColumn<>("⭐ Rating");
+        rating.setCellValueFactory(c -> new SimpleStringProperty(c.getValue().avgRating() == null
+                ? "N/A" : String.format("%.2f", c.getValue().avgRating())));
+        rating.setPrefWidth(100);
+
+        TableColumn<TitleSearchIndex.Hit, Integer> votes = new TableColumn<>("🗳 Votes");
+        votes.setCellValueFactory(c -> new SimpleObjectProperty<>(c.getValue().votes()));
+        votes.setPrefWidth(100);
+
+        getColumns().add(title);
+        getColumns().add(genre);
+        getColumns().add(rating);
+        getColumns().add(votes);
+        setColumnResizePolicy(CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+        setSortPolicy(t -> false);   // order comes from the query; sorting a partial list would mislead
+        setPlaceholder(new Label("❌ No movie found with name: " + query));
+        setPrefHeight(480);
+
+        setRowFactory(t -> new TableRow<>() {
+            @Override
+            public void updateIndex(int i) {
+                super.updateIndex(i);
+                if (i >= 0 && i >= getItems().size() - PREFETCH_ROWS) loadNextPage();
+            }
+        });
+
+        append(firstPage);
+    }
+
+    private void append(MovieAnalysis.SearchPage page) {
+        getItems().addAll(page.hits());
+        next = page.next();
+    }
+
+    private void loadNextPage() {
+        if (loading || next == null) return;
+        loading = true;
+        MovieAnalysis.SearchCursor after = next;
+        queries.submit(() -> analysis.searchMoviesPage(query, after, PAGE_SIZE),
+                page -> {
+                    loading = false;
+                    append(page);
+                },
+                err -> loading = false);
+    }
+}
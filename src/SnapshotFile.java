@@ -0,0 +1,626 @@
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+/**
+ * SnapshotFile - RatingsSnapshot on disk, in a binary format that is mapped, not parsed.
+ *
+ * Layout (little-endian, sections 8-byte aligned):
+ * - header: magic, format version, creation time, the database Marker it was taken at,
+ *   CRC32C of the header and directory, row counts
+ * - section directory: offset, length and CRC32C of each section
+ * - string table: every distinct title and genre once, as offsets into UTF-8 bytes
+ * - columns: movie title/genre (string and genre ids), genre names, user ages,
+ *   and the rating movie/user/value columns
+ * - precomputed aggregates: per-movie rating sum and count, genre × rating,
+ *   age group × rating and global rating counts
+ *
+ * write() goes to a temporary file that is forced to disk and then atomically renamed
+ * over the target, so readers see the old file or the new one, never half of one.
+ * open() maps each section with FileChannel.map and verifies the header, the directory
+ * and the sections sized by movies and genres; the rating and user columns, which grow
+ * with the table, are verified the first time they are read (toRatingsSnapshot). The
+ * mapped Snapshot answers the dashboard aggregates from the precomputed sections without
+ * copying the columns to the heap, so a warm start costs page-cache reads only.
+ *
+ * Usage: SnapshotFile write FILE | info FILE | check FILE
+ *   check writes the database's snapshot to FILE, maps it back and compares the two
+ */
+public final class SnapshotFile {
+
+    private static final long MAGIC = 0x31_50_41_4E_53_56_4F_4DL;   // "MOVSNAP1"
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = 104;
+    private static final int RATING_SLOTS = 256;                     // byte ratings, as in RatingsSnapshot
+
+    // sections, in file order
+    private static final int STRING_OFFSETS = 0, STRING_BYTES = 1, MOVIE_TITLE = 2, MOVIE_GENRE = 3,
+            GENRE_NAME = 4, USER_AGE = 5, RATING_MOVIE = 6, RATING_USER = 7, RATING_VALUE = 8,
+            MOVIE_SUM = 9, MOVIE_COUNT = 10, GENRE_COUNTS = 11, AGE_COUNTS = 12, GLOBAL_COUNTS = 13;
+    private static final int SECTIONS = 14;
+    private static final int DIRECTORY_BYTES = SECTIONS * 24;
+    private static final int HEADER_CRC = 40;                        // header offset of the header/directory CRC
+    // columns that grow with ratings or users: verified on first read, not on open
+    private static final Set<Integer> LAZY_SECTIONS = Set.of(USER_AGE, RATING_MOVIE, RATING_USER, RATING_VALUE);
+
+    private SnapshotFile() {}
+
+    /**
+     * Where the database stood when a snapshot was taken.
+     * - ratings and ratingSum: number of ratings and their sum; new ratings change the count
+     * - lastChange: RatingChangeLog.lastId, -1 without the change log. Every RatingWriter write
+     *   and every bulk import moves it, so edits that cancel out in the sum still show
+     * - movies/users and their checksums: row counts and the sum of a CRC32C per row over the
+     *   columns the snapshot holds (title and genre, age), for edits made outside the writers
+     */
+    public record Marker(long ratings, long ratingSum, long lastChange,
+                         long movies, long movieChecksum, long users, long userChecksum) {
+
+        /** Ratings from rating_counts when the database has SummaryTables, else from ratings. */
+        public static Marker read(Connection conn) throws SQLException {
+            long lastChange = RatingChangeLog.available() ? RatingChangeLog.lastId(conn) : -1;
+            String sql = SummaryTables.available()
+                    ? "SELECT COALESCE(SUM(cnt), 0), COALESCE(SUM(rating * cnt), 0) FROM rating_counts"
+                    : "SELECT COUNT(rating), COALESCE(SUM(rating), 0) FROM ratings";
+            long ratings, ratingSum;
+            try (PreparedStatement ps = conn.prepareStatement(sql);
+                 ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                ratings = rs.getLong(1);
+                ratingSum = rs.getLong(2);
+            }
+            long[] movies = checksum(conn, "SELECT movie_id, title, genre FROM movies");
+            long[] users = checksum(conn, "SELECT user_id, age FROM users");
+            return new Marker(ratings, ratingSum, lastChange, movies[0], movies[1], users[0], users[1]);
+        }
+
+        // row count and order-independent checksum of every column of sql
+        private static long[] checksum(Connection conn, String sql) throws SQLException {
+            CRC32C crc = new CRC32C();
+            long[] sum = new long[1];
+            long rows = StreamingQuery.forEach(conn, sql, rs -> {
+                crc.reset();
+                for (int c = 1; c <= rs.getMetaData().getColumnCount(); c++) {
+                    String v = rs.getString(c);
+                    crc.update(v == null ? new byte[] {0} : (v + '\u0001').getBytes(StandardCharsets.UTF_8));
+                }
+                sum[0] += crc.getValue();
+                return true;
+            });
+            return new long[] {rows, sum[0]};
+        }
+    }
+
+    // -------------------------
+    // Loading with the file as a cache
+    // -------------------------
+
+    /**
+     * The snapshot in {@code file} if it matches the database, else a fresh RatingsSnapshot,
+     * which is written to {@code file} for the next start. Without a database connection an
+     * existing file is used as is.
+     */
+    public static InMemoryAnalytics openOrLoad(Path file) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) {
+                if (!Files.exists(file)) throw new SQLException("No database connection");
+                try {
+                    return open(file);
+                } catch (IOException e) {
+                    throw new SQLException("No database connection, and " + file + " is unreadable", e);
+                }
+            }
+            Marker marker = Marker.read(conn);
+            if (Files.exists(file)) {
+                try {
+                    Snapshot mapped = open(file);
+                    if (mapped.marker().equals(marker)) return mapped;
+                } catch (IOException e) {
+                    System.err.println("Ignoring snapshot " + file + ": " + e.getMessage());
+                }
+            }
+            return loadAndWrite(conn, marker, file);
+        }
+    }
+
+    /** Load a RatingsSnapshot from the database and write it to {@code file}. */
+    public static RatingsSnapshot loadAndWrite(Path file) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) throw new SQLException("No database connection");
+            return loadAndWrite(conn, Marker.read(conn), file);
+        }
+    }
+
+    // the marker is read before the load, so writes racing with it make the file look stale, not current
+    private static RatingsSnapshot loadAndWrite(Connection conn, Marker marker, Path file) throws SQLException {
+        RatingsSnapshot snapshot = RatingsSnapshot.load(conn);
+        try {
+            write(snapshot, marker, file);
+        } catch (IOException e) {
+            System.err.println("Could not write snapshot " + file + ": " + e.getMessage());
+        }
+        return snapshot;
+    }
+
+    // -------------------------
+    // Writing
+    // -------------------------
+
+    public static void write(RatingsSnapshot snapshot, Marker marker, Path file) throws IOException {
+        String[] titles = snapshot.movieTitles();
+        int[] movieGenre = snapshot.movieGenres();
+        String[] genres = snapshot.genreNames();
+        short[] ages = snapshot.userAges();
+        int[] rMovie = snapshot.ratingMovies();
+        int[] rUser = snapshot.ratingUsers();
+        byte[] rValue = snapshot.ratingValues();
+
+        // string table: each distinct title and genre once
+        Map<String, Integer> stringIds = new LinkedHashMap<>();
+        int[] titleIds = new int[titles.length];
+        for (int m = 0; m < titles.length; m++) titleIds[m] = stringId(stringIds, titles[m]);
+        int[] genreIds = new int[genres.length];
+        for (int g = 0; g < genres.length; g++) genreIds[g] = stringId(stringIds, genres[g]);
+
+        // precomputed aggregates, one pass over the ratings
+        long[] movieSum = new long[titles.length];
+        long[] movieCount = new long[titles.length];
+        long[] genreCounts = new long[genres.length * RATING_SLOTS];
+        long[] ageCounts = new long[RatingsSnapshot.AGE_GROUPS.length * RATING_SLOTS];
+        long[] globalCounts = new long[RATING_SLOTS];
+        for (int i = 0; i < rValue.length; i++) {
+            int r = rValue[i] & 0xFF;
+            globalCounts[r]++;
+            int m = rMovie[i];
+            if (m >= 0) {
+                movieSum[m] += rValue[i];
+                movieCount[m]++;
+                genreCounts[movieGenre[m] * RATING_SLOTS + r]++;
+            }
+            int u = rUser[i];
+            if (u >= 0) ageCounts[RatingsSnapshot.ageGroupIndex(ages[u]) * RATING_SLOTS + r]++;
+        }
+
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                SectionWriter w = new SectionWriter(ch, HEADER_BYTES + DIRECTORY_BYTES);
+
+                w.begin(STRING_OFFSETS);
+                int offset = 0;
+                List<byte[]> utf8 = new ArrayList<>(stringIds.size());
+                for (String s : stringIds.keySet()) {
+                    w.putInt(offset);
+                    byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                    utf8.add(b);
+                    offset += b.length;
+                }
+                w.putInt(offset);
+                w.begin(STRING_BYTES);
+                for (byte[] b : utf8) w.put(b);
+                w.begin(MOVIE_TITLE);
+                for (int id : titleIds) w.putInt(id);
+                w.begin(MOVIE_GENRE);
+                for (int g : movieGenre) w.putInt(g);
+                w.begin(GENRE_NAME);
+                for (int id : genreIds) w.putInt(id);
+                w.begin(USER_AGE);
+                for (short a : ages) w.putShort(a);
+                w.begin(RATING_MOVIE);
+                for (int m : rMovie) w.putInt(m);
+                w.begin(RATING_USER);
+                for (int u : rUser) w.putInt(u);
+                w.begin(RATING_VALUE);
+                w.put(rValue);
+                w.begin(MOVIE_SUM);
+                for (long v : movieSum) w.putLong(v);
+                w.begin(MOVIE_COUNT);
+                for (long v : movieCount) w.putLong(v);
+                w.begin(GENRE_COUNTS);
+                for (long v : genreCounts) w.putLong(v);
+                w.begin(AGE_COUNTS);
+                for (long v : ageCounts) w.putLong(v);
+                w.begin(GLOBAL_COUNTS);
+                for (long v : globalCounts) w.putLong(v);
+                w.finish();
+
+                ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES + DIRECTORY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                head.putLong(MAGIC).putInt(VERSION).putInt(SECTIONS)
+                        .putLong(System.currentTimeMillis())
+                        .putLong(marker.ratings()).putLong(marker.ratingSum())
+                        .putLong(0)   // HEADER_CRC, filled in below
+                        .putInt(titles.length).putInt(genres.length).putInt(ages.length).putInt(stringIds.size())
+                        .putLong(marker.lastChange()).putLong(marker.movies()).putLong(marker.movieChecksum())
+                        .putLong(marker.users()).putLong(marker.userChecksum());
+                head.position(HEADER_BYTES);
+                for (int s = 0; s < SECTIONS; s++) head.putLong(w.offsets[s]).putLong(w.lengths[s]).putLong(w.crcs[s]);
+                head.putLong(HEADER_CRC, headCrc(head));
+                head.flip();
+                writeFully(ch, head, 0);
+                ch.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static int stringId(Map<String, Integer> ids, String s) {
+        if (s == null) return -1;
+        return ids.computeIfAbsent(s, k -> ids.size());
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) position += ch.write(buf, position);
+    }
+
+    // CRC32C of the header (without its CRC field) and the directory
+    private static long headCrc(ByteBuffer head) {
+        CRC32C crc = new CRC32C();
+        crc.update(head.duplicate().position(0).limit(HEADER_CRC));
+        crc.update(head.duplicate().position(HEADER_CRC + 8).limit(HEADER_BYTES + DIRECTORY_BYTES));
+        return crc.getValue();
+    }
+
+    private static long crc(ByteBuffer section) {
+        CRC32C crc = new CRC32C();
+        crc.update(section.duplicate());
+        return crc.getValue();
+    }
+
+    /** Appends sections through a direct buffer, tracking their offsets and checksums. */
+    private static final class SectionWriter {
+        final FileChannel ch;
+        final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        final CRC32C crc = new CRC32C();
+        final long[] offsets = new long[SECTIONS];
+        final long[] lengths = new long[SECTIONS];
+        final long[] crcs = new long[SECTIONS];
+        long position;          // file position of buf's first byte
+        int current = -1;
+
+        SectionWriter(FileChannel ch, long start) {
+            this.ch = ch;
+            this.position = start;
+        }
+
+        void begin(int section) throws IOException {
+            finish();
+            long aligned = (position + 7) & ~7L;   // padding is not part of any section or the checksum
+            position = aligned;
+            offsets[section] = aligned;
+            current = section;
+            crc.reset();
+        }
+
+        void finish() throws IOException {
+            flush();
+            if (current >= 0) {
+                lengths[current] = position - offsets[current];
+                crcs[current] = crc.getValue();
+            }
+        }
+
+        void putShort(short v) throws IOException {
+            if (buf.remaining() < 2) flush();
+            buf.putShort(v);
+        }
+
+        void putInt(int v) throws IOException {
+            if (buf.remaining() < 4) flush();
+            buf.putInt(v);
+        }
+
+        void putLong(long v) throws IOException {
+            if (buf.remaining() < 8) flush();
+            buf.putLong(v);
+        }
+
+        void put(byte[] b) throws IOException {
+            for (int i = 0; i < b.length; ) {
+                if (!buf.hasRemaining()) flush();
+                int n = Math.min(buf.remaining(), b.length - i);
+                buf.put(b, i, n);
+                i += n;
+            }
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            crc.update(buf.duplicate());
+            int n = buf.remaining();
+            writeFully(ch, buf, position);
+            position += n;
+            buf.clear();
+        }
+    }
+
+    // -------------------------
+    // Reading
+    // -------------------------
+
+    /** Map {@code file} and check its header, directory and movie-sized sections. */
+    public static Snapshot open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER_BYTES + DIRECTORY_BYTES) throw new IOException("Not a snapshot file: " + file);
+            ByteBuffer head = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES + DIRECTORY_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (head.getLong(0) != MAGIC) throw new IOException("Not a snapshot file: " + file);
+            if (head.getInt(8) != VERSION || head.getInt(12) != SECTIONS) {
+                throw new IOException("Unsupported snapshot version " + head.getInt(8) + ": " + file);
+            }
+
+            if (headCrc(head) != head.getLong(HEADER_CRC)) throw new IOException("Snapshot checksum mismatch: " + file);
+
+            ByteBuffer[] sections = new ByteBuffer[SECTIONS];
+            long[] crcs = new long[SECTIONS];
+            for (int s = 0; s < SECTIONS; s++) {
+                long offset = head.getLong(HEADER_BYTES + s * 24);
+                long length = head.getLong(HEADER_BYTES + s * 24 + 8);
+                crcs[s] = head.getLong(HEADER_BYTES + s * 24 + 16);
+                if (offset < 0 || length < 0 || offset + length > size) throw new IOException("Truncated snapshot: " + file);
+                sections[s] = ch.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+                if (!LAZY_SECTIONS.contains(s) && crc(sections[s]) != crcs[s]) {
+                    throw new IOException("Snapshot checksum mismatch in section " + s + ": " + file);
+                }
+            }
+
+            return new Snapshot(file, head.getLong(16), new Marker(head.getLong(24), head.getLong(32),
+                            head.getLong(64), head.getLong(72), head.getLong(80), head.getLong(88), head.getLong(96)),
+                    head.getInt(48), head.getInt(52), head.getInt(56), sections, crcs);
+        }
+    }
+
+    /** A mapped snapshot file; columns stay in the mapping, only genre names are decoded up front. */
+    public static final class Snapshot implements InMemoryAnalytics {
+        private final Path file;
+        private final long createdAt;
+        private final Marker marker;
+        private final int movies;
+        private final ByteBuffer[] sections;
+        private final long[] crcs;
+        private volatile boolean columnsVerified;
+        private final IntBuffer stringOffsets;
+        private final ByteBuffer stringBytes;
+        private final IntBuffer movieTitle;
+        private final IntBuffer movieGenre;
+        private final ShortBuffer userAge;
+        private final IntBuffer ratingMovie;
+        private final IntBuffer ratingUser;
+        private final ByteBuffer ratingValue;
+        private final LongBuffer movieSum;
+        private final LongBuffer movieCount;
+        private final LongBuffer genreCounts;
+        private final LongBuffer ageCounts;
+        private final LongBuffer globalCounts;
+        private final String[] genreNames;
+
+        private Snapshot(Path file, long createdAt, Marker marker, int movies, int genres, int users,
+                         ByteBuffer[] s, long[] crcs) {
+            this.file = file;
+            this.createdAt = createdAt;
+            this.marker = marker;
+            this.movies = movies;
+            this.sections = s;
+            this.crcs = crcs;
+            this.stringOffsets = s[STRING_OFFSETS].asIntBuffer();
+            this.stringBytes = s[STRING_BYTES];
+            this.movieTitle = s[MOVIE_TITLE].asIntBuffer();
+            this.movieGenre = s[MOVIE_GENRE].asIntBuffer();
+            this.userAge = s[USER_AGE].asShortBuffer();
+            this.ratingMovie = s[RATING_MOVIE].asIntBuffer();
+            this.ratingUser = s[RATING_USER].asIntBuffer();
+            this.ratingValue = s[RATING_VALUE];
+            this.movieSum = s[MOVIE_SUM].asLongBuffer();
+            this.movieCount = s[MOVIE_COUNT].asLongBuffer();
+            this.genreCounts = s[GENRE_COUNTS].asLongBuffer();
+            this.ageCounts = s[AGE_COUNTS].asLongBuffer();
+            this.globalCounts = s[GLOBAL_COUNTS].asLongBuffer();
+
+            IntBuffer genreName = s[GENRE_NAME].asIntBuffer();
+            genreNames = new String[genres];
+            for (int g = 0; g < genres; g++) genreNames[g] = string(genreName.get(g));
+            if (movieTitle.limit() != movies || movieGenre.limit() != movies || userAge.limit() != users) {
+                throw new IllegalStateException("Snapshot sections do not match the header");
+            }
+        }
+
+        public long createdAt() {
+            return createdAt;
+        }
+
+        public Marker marker() {
+            return marker;
+        }
+
+        public int ratingCount() {
+            return ratingValue.limit();
+        }
+
+        /**
+         * The columns copied to the heap as a RatingsSnapshot, e.g. to build a RatingCube,
+         * without going back to the database. Verifies the rating and user columns first.
+         */
+        public RatingsSnapshot toRatingsSnapshot() throws IOException {
+            verifyColumns();
+            String[] titles = new String[movies];
+            for (int m = 0; m < movies; m++) titles[m] = string(movieTitle.get(m));
+            int[] genres = new int[movies];
+            movieGenre.get(0, genres);
+            short[] ages = new short[userAge.limit()];
+            userAge.get(0, ages);
+            int[] rMovie = new int[ratingMovie.limit()];
+            ratingMovie.get(0, rMovie);
+            int[] rUser = new int[ratingUser.limit()];
+            ratingUser.get(0, rUser);
+            byte[] rValue = new byte[ratingValue.limit()];
+            ratingValue.get(0, rValue);
+            return new RatingsSnapshot(titles, genres, genreNames.clone(), ages, rMovie, rUser, rValue);
+        }
+
+        /** Check the rating and user columns open() left unverified; once per mapping. */
+        public void verifyColumns() throws IOException {
+            if (columnsVerified) return;
+            for (int s : LAZY_SECTIONS) {
+                if (crc(sections[s]) != crcs[s]) {
+                    throw new IOException("Snapshot checksum mismatch in section " + s + ": " + file);
+                }
+            }
+            columnsVerified = true;
+        }
+
+        private String string(int id) {
+            if (id < 0) return null;
+            int from = stringOffsets.get(id), to = stringOffsets.get(id + 1);
+            byte[] b = new byte[to - from];
+            stringBytes.get(from, b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public List<MovieAnalysis.MovieStat> topMovies(int limit, int minVotes) {
+            return RatingsSnapshot.topByAverage(movies, movieSum::get, movieCount::get,
+                    m -> string(movieTitle.get(m)), limit, minVotes);
+        }
+
+        @Override
+        public Map<String, RatingCounts> genreRatingCounts() {
+            Integer[] order = new Integer[genreNames.length];
+            for (int g = 0; g < order.length; g++) order[g] = g;
+            Arrays.sort(order, (x, y) -> Objects.compare(genreNames[x], genreNames[y],
+                    Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER)));
+
+            Map<String, RatingCounts> result = new LinkedHashMap<>();
+            for (int g : order) {
+                RatingCounts counts = counts(genreCounts, g * RATING_SLOTS);
+                if (counts.total() > 0) result.put(genreNames[g], counts);
+            }
+            return result;
+        }
+
+        @Override
+        public Map<String, RatingCounts> ageGroupRatingCounts() {
+            Map<String, RatingCounts> result = new LinkedHashMap<>();
+            for (int g = 0; g < RatingsSnapshot.AGE_GROUPS.length; g++) {
+                RatingCounts counts = counts(ageCounts, g * RATING_SLOTS);
+                if (counts.total() > 0) result.put(RatingsSnapshot.AGE_GROUPS[g], counts);
+            }
+            return result;
+        }
+
+        @Override
+        public Map<Integer, Integer> ratingHistogram() {
+            Map<Integer, Integer> map = new TreeMap<>();
+            for (int r = 0; r < RATING_SLOTS; r++) {
+                long c = globalCounts.get(r);
+                if (c > 0) map.put(r, (int) c);
+            }
+            return map;
+        }
+
+        private static RatingCounts counts(LongBuffer column, int from) {
+            long[] byRating = new long[RATING_SLOTS];
+            column.get(from, byRating);
+            return RatingsSnapshot.toCounts(byRating);
+        }
+    }
+
+    // -------------------------
+    // Round-trip check
+    // -------------------------
+
+    /**
+     * Write {@code snapshot} to {@code file}, map it back and compare the aggregates and
+     * columns of the two; returns the differences, empty when the file reproduces it.
+     */
+    static List<String> roundTrip(RatingsSnapshot snapshot, Marker marker, Path file) throws IOException {
+        write(snapshot, marker, file);
+        Snapshot mapped = open(file);
+        RatingsSnapshot copy = mapped.toRatingsSnapshot();
+
+        List<String> diffs = new ArrayList<>();
+        compare(diffs, "markers", marker, mapped.marker());
+        int all = snapshot.movieTitles().length;
+        compare(diffs, "topMovies", snapshot.topMovies(all, 0), mapped.topMovies(all, 0));
+        compare(diffs, "genreRatingCounts", countsByKey(snapshot.genreRatingCounts()),
+                countsByKey(mapped.genreRatingCounts()));
+        compare(diffs, "ageGroupRatingCounts", countsByKey(snapshot.ageGroupRatingCounts()),
+                countsByKey(mapped.ageGroupRatingCounts()));
+        compare(diffs, "ratingHistogram", snapshot.ratingHistogram(), mapped.ratingHistogram());
+        compare(diffs, "movie titles", List.of(snapshot.movieTitles()), List.of(copy.movieTitles()));
+        compare(diffs, "genre names", List.of(snapshot.genreNames()), List.of(copy.genreNames()));
+        if (!Arrays.equals(snapshot.movieGenres(), copy.movieGenres())) diffs.add("movie genres differ");
+        if (!Arrays.equals(snapshot.userAges(), copy.userAges())) diffs.add("user ages differ");
+        if (!Arrays.equals(snapshot.ratingMovies(), copy.ratingMovies())) diffs.add("rating movies differ");
+        if (!Arrays.equals(snapshot.ratingUsers(), copy.ratingUsers())) diffs.add("rating users differ");
+        if (!Arrays.equals(snapshot.ratingValues(), copy.ratingValues())) diffs.add("rating values differ");
+        return diffs;
+    }
+
+    private static void compare(List<String> diffs, String what, Object expected, Object actual) {
+        if (!expected.equals(actual)) diffs.add(what + " differ:\n  database: " + expected + "\n  file:     " + actual);
+    }
+
+    // RatingCounts has no equals: compare the count of every rating value
+    private static Map<String, List<Long>> countsByKey(Map<String, RatingCounts> map) {
+        Map<String, List<Long>> result = new LinkedHashMap<>();
+        for (var e : map.entrySet()) {
+            List<Long> counts = new ArrayList<>(RATING_SLOTS);
+            for (int r = 0; r < RATING_SLOTS; r++) counts.add(e.getValue().count(r));
+            result.put(e.getKey(), counts);
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2 || !Set.of("write", "info", "check").contains(args[0])) {
+            System.err.println("Usage: SnapshotFile write FILE | info FILE | check FILE");
+            System.exit(2);
+        }
+        Path file = Path.of(args[1]);
+        int status = 0;
+        try {
+            switch (args[0]) {
+                case "write" -> {
+                    long start = System.nanoTime();
+                    RatingsSnapshot snapshot = loadAndWrite(file);
+                    System.out.printf("Wrote %,d ratings to %s (%,d bytes) in %.1f s%n", snapshot.ratingCount(), file,
+                            Files.size(file), (System.nanoTime() - start) / 1e9);
+                }
+                case "info" -> {
+                    long start = System.nanoTime();
+                    Snapshot snapshot = open(file);
+                    snapshot.verifyColumns();
+                    System.out.printf("%s: %,d ratings, taken %s at %s, opened and verified in %.1f ms%n", file,
+                            snapshot.ratingCount(), new java.util.Date(snapshot.createdAt()), snapshot.marker(),
+                            (System.nanoTime() - start) / 1e6);
+                }
+                default -> {
+                    List<String> diffs;
+                    try (Connection conn = DatabaseConnection.getConnection()) {
+                        if (conn == null) throw new SQLException("No database connection");
+                        Marker marker = Marker.read(conn);
+                        diffs = roundTrip(RatingsSnapshot.load(conn), marker, file);
+                    }
+                    if (diffs.isEmpty()) {
+                        System.out.println("OK: " + file + " reads back the same as the database snapshot");
+                    } else {
+                        diffs.forEach(System.err::println);
+                        status = 1;
+                    }
+                }
+            }
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+        if (status != 0) System.exit(status);
+    }
+}
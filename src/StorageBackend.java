@@ -0,0 +1,50 @@
+/**
+ * StorageBackend - which database the app runs on, picked with -Dmovies.db.backend.
+ * - mysql (default): the MySQL server on localhost
+ * - h2: embedded H2 in a file (-Dmovies.db.path, default ./data/movies), in-process,
+ *   so queries cost no socket round trip and no server is needed
+ * - h2-mem: embedded H2 in memory, gone when the JVM exits (tests, benchmarks, demos)
+ *
+ * The H2 backends run in MySQL compatibility mode, with case-insensitive text like
+ * MySQL's default collation (title searches and genre grouping rely on it) and YEAR
+ * usable as a column name, so the MovieAnalysis SQL runs unchanged. Embedded databases
+ * belong to the app, so their schema is created and migrated on first connection.
+ *
+ * -Dmovies.db.url/user/password still override the backend's defaults.
+ */
+public enum StorageBackend {
+
+    MYSQL("jdbc:mysql://localhost:3306/movieratings_db?useServerPrepStmts=true&useCursorFetch=true", "root", false),
+    H2("jdbc:h2:" + System.getProperty("movies.db.path", "./data/movies") + StorageBackend.H2_OPTIONS, "sa", true),
+    H2_MEM("jdbc:h2:mem:movies;DB_CLOSE_DELAY=-1" + StorageBackend.H2_OPTIONS, "sa", true);
+
+    private static final String H2_OPTIONS = ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;IGNORECASE=TRUE;NON_KEYWORDS=YEAR";
+
+    private final String defaultUrl;
+    private final String defaultUser;
+    private final boolean migrateOnStart;
+
+    StorageBackend(String defaultUrl, String defaultUser, boolean migrateOnStart) {
+        this.defaultUrl = defaultUrl;
+        this.defaultUser = defaultUser;
+        this.migrateOnStart = migrateOnStart;
+    }
+
+    public static StorageBackend fromSystemProperties() {
+        String name = System.getProperty("movies.db.backend", "mysql");
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+
+    public String defaultUrl() {
+        return defaultUrl;
+    }
+
+    public String defaultUser() {
+        return defaultUser;
+    }
+
+    /** Whether DatabaseConnection applies SchemaMigrations when it opens the pool. */
+    public boolean migrateOnStart() {
+        return migrateOnStart;
+    }
+}
@@ -0,0 +1,81 @@
+import java.sql.*;
+
+/**
+ * StreamingQuery - reads large results a batch of rows at a time instead of buffering
+ * the whole result in the driver before the first row is seen.
+ *
+ * Two modes, picked with -Dmovies.stream.mode:
+ * - cursor (default): a forward-only, read-only statement with a fetch size of
+ *   -Dmovies.stream.fetchSize rows (default 1000); MySQL serves it from a server-side
+ *   cursor (useCursorFetch=true on the DatabaseConnection URL), other drivers page it
+ * - row: MySQL's row-by-row streaming (fetch size Integer.MIN_VALUE); the fastest, but
+ *   the connection can run nothing else until the result is closed
+ *
+ * Rows are pulled: {@link #forEach} reads the next batch only after the handler has
+ * processed the last one, so a slow handler never makes rows pile up in memory.
+ */
+public final class StreamingQuery {
+
+    public enum Mode { CURSOR, ROW }
+
+    public static final Mode MODE = Mode.valueOf(System.getProperty("movies.stream.mode", "cursor").toUpperCase());
+    public static final int FETCH_SIZE = Integer.getInteger("movies.stream.fetchSize", 1000);
+
+    @FunctionalInterface
+    public interface Binder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    /** Called once per row; return false to stop reading. */
+    @FunctionalInterface
+    public interface RowHandler {
+        boolean row(ResultSet rs) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    private StreamingQuery() {}
+
+    /**
+     * Prepare a statement whose results will be streamed. It bypasses the pool's statement
+     * cache (that only holds plain prepareStatement(sql)), which suits one-off full scans.
+     * The statement is not tracked by QueryCancellation: shared lazy builds scan through here and
+     * must not be cancelled by the next click, so per-request callers wrap it themselves.
+     */
+    public static PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try {
+            ps.setFetchSize(MODE == Mode.ROW && isMySql(conn) ? Integer.MIN_VALUE : FETCH_SIZE);
+        } catch (SQLException e) {
+            ps.close();
+            throw e;
+        }
+        return ps;
+    }
+
+    /** Run {@code sql} on {@code conn} and hand every row to {@code handler}; returns rows read. */
+    public static long forEach(Connection conn, String sql, RowHandler handler) throws SQLException {
+        return forEach(conn, sql, ps -> {}, handler);
+    }
+
+    public static long forEach(Connection conn, String sql, Binder binder, RowHandler handler) throws SQLException {
+        long rows = 0;
+        try (PreparedStatement ps = prepare(conn, sql)) {
+            binder.bind(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows++;
+                    if (!handler.row(rs)) break;
+                }
+            }
+        }
+        return rows;
+    }
+
+    static boolean isMySql(Connection conn) throws SQLException {
+        return conn.getMetaData().getDatabaseProductName().toLowerCase().contains("mysql");
+    }
+}
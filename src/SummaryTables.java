@@ -0,0 +1,274 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * SummaryTables - pre-aggregated tables behind the dashboard, created by SchemaMigrations V3.
+ * - movie_stats: rating sum and count per movie
+ * - genre_rating_counts: (genre, rating) counts
+ * - age_rating_counts: (exact age, rating) counts, grouped into age groups on read
+ * - rating_counts: the global rating histogram
+ *
+ * Like the SQL joins they replace, movie and genre rows only count ratings of existing
+ * movies, age rows only ratings of existing users. NULL genres and ages are stored as ''
+ * and -1, since they are key columns.
+ *
+ * RatingWriter applies each write as a delta in the same transaction; bulk loads call
+ * {@link #rebuild()}. Reads are a few hundred rows at most, however many ratings there are.
+ */
+public class SummaryTables implements InMemoryAnalytics {
+
+    private static final Comparator<String> SQL_ORDER = Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER);
+    private static final int NO_AGE = -1;
+
+    /** True if the configured database has been migrated to SchemaMigrations.SUMMARY_TABLES_VERSION. */
+    public static boolean available() {
+        return SchemaMigrations.installed(SchemaMigrations.SUMMARY_TABLES_VERSION);
+    }
+
+    // -------------------------
+    // Writes
+    // -------------------------
+
+    /** Recompute every summary table from ratings, in one transaction. */
+    public static void rebuild() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) throw new SQLException("No database connection");
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                rebuild(conn);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /** Recompute every summary table on {@code conn}; the caller commits. */
+    static void rebuild(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate("DELETE FROM movie_stats");
+            st.executeUpdate("DELETE FROM genre_rating_counts");
+            st.executeUpdate("DELETE FROM age_rating_counts");
+            st.executeUpdate("DELETE FROM rating_counts");
+            st.executeUpdate("""
+                INSERT INTO movie_stats (movie_id, rating_sum, rating_count)
+                SELECT r.movie_id, SUM(r.rating), COUNT(r.rating)
+                FROM ratings r
+                JOIN movies m ON r.movie_id = m.movie_id
+                WHERE r.rating IS NOT NULL
+                GROUP BY r.movie_id
+                """);
+            st.executeUpdate("""
+                INSERT INTO genre_rating_counts (genre, rating, cnt)
+                SELECT COALESCE(m.genre, ''), r.rating, COUNT(*)
+                FROM ratings r
+                JOIN movies m ON r.movie_id = m.movie_id
+                WHERE r.rating IS NOT NULL
+                GROUP BY COALESCE(m.genre, ''), r.rating
+                """);
+            st.executeUpdate("""
+                INSERT INTO age_rating_counts (age, rating, cnt)
+                SELECT COALESCE(u.age, -1), r.rating, COUNT(*)
+                FROM ratings r
+                JOIN users u ON r.user_id = u.user_id
+                WHERE r.rating IS NOT NULL
+                GROUP BY COALESCE(u.age, -1), r.rating
+                """);
+            st.executeUpdate("""
+                INSERT INTO rating_counts (rating, cnt)
+                SELECT rating, COUNT(*) FROM ratings WHERE rating IS NOT NULL GROUP BY rating
+                """);
+        }
+    }
+
+    /**
+     * Apply committed-to-be rating changes as deltas, inside the writer's transaction.
+     * Rows are updated in key order, so concurrent writers lock them in the same order.
+     */
+    static void apply(Connection conn, List<RatingWriter.RatingChange> changes) throws SQLException {
+        Map<String, long[]> movieDelta = new TreeMap<>();   // movie_id -> {sum, count}
+        Map<String, long[]> genreDelta = new TreeMap<>();   // genre -> count delta per rating
+        Map<Integer, long[]> ageDelta = new TreeMap<>();    // age -> count delta per rating
+        long[] globalDelta = new long[11];
+
+        // lookup.key(movie_id) -> genre key, "" for a NULL genre; absent movies are left out
+        BatchLookup lookup = BatchLookup.on(conn);
+        Map<String, String> genres = new HashMap<>();
+        Set<String> movieIds = new LinkedHashSet<>();
+        for (var c : changes) movieIds.add(c.movieId());
+        lookup.forEach("SELECT movie_id, genre FROM movies WHERE movie_id IN (%s)",
+                movieIds.stream().map(id -> new String[]{id}).toList(), rs -> {
+                    String genre = rs.getString("genre");
+                    genres.put(lookup.key(rs.getString("movie_id")), genre == null ? "" : genre);
+                    return true;
+                });
+
+        for (var c : changes) {
+            int oldRating = c.oldRating() == null ? 0 : c.oldRating();   // slot 0 is never written
+            globalDelta[oldRating]--;
+            globalDelta[c.newRating()]++;
+            String genre = genres.get(lookup.key(c.movieId()));
+            if (genre != null) {
+                long[] m = movieDelta.computeIfAbsent(c.movieId(), k -> new long[2]);
+                m[0] += c.newRating() - oldRating;
+                if (c.oldRating() == null) m[1]++;
+                long[] g = genreDelta.computeIfAbsent(genre, k -> new long[11]);
+                g[oldRating]--;
+                g[c.newRating()]++;
+            }
+            if (c.userKnown()) {
+                long[] a = ageDelta.computeIfAbsent(c.age() == null ? NO_AGE : c.age(), k -> new long[11]);
+                a[oldRating]--;
+                a[c.newRating()]++;
+            }
+        }
+
+        try (PreparedStatement update = conn.prepareStatement(
+                     "UPDATE movie_stats SET rating_sum = rating_sum + ?, rating_count = rating_count + ? WHERE movie_id = ?");
+             PreparedStatement insert = conn.prepareStatement(
+                     "INSERT INTO movie_stats (movie_id, rating_sum, rating_count) VALUES (?, ?, ?)")) {
+            for (var e : movieDelta.entrySet()) {
+                long[] d = e.getValue();
+                if (d[0] != 0 || d[1] != 0) bump(update, insert, new Object[]{e.getKey()}, d);
+            }
+        }
+        try (PreparedStatement update = conn.prepareStatement(
+                     "UPDATE genre_rating_counts SET cnt = cnt + ? WHERE genre = ? AND rating = ?");
+             PreparedStatement insert = conn.prepareStatement(
+                     "INSERT INTO genre_rating_counts (genre, rating, cnt) VALUES (?, ?, ?)")) {
+            for (var e : genreDelta.entrySet()) bumpCounts(update, insert, e.getKey(), e.getValue());
+        }
+        try (PreparedStatement update = conn.prepareStatement(
+                     "UPDATE age_rating_counts SET cnt = cnt + ? WHERE age = ? AND rating = ?");
+             PreparedStatement insert = conn.prepareStatement(
+                     "INSERT INTO age_rating_counts (age, rating, cnt) VALUES (?, ?, ?)")) {
+            for (var e : ageDelta.entrySet()) bumpCounts(update, insert, e.getKey(), e.getValue());
+        }
+        try (PreparedStatement update = conn.prepareStatement(
+                     "UPDATE rating_counts SET cnt = cnt + ? WHERE rating = ?");
+             PreparedStatement insert = conn.prepareStatement(
+                     "INSERT INTO rating_counts (rating, cnt) VALUES (?, ?)")) {
+            for (int r = 1; r < globalDelta.length; r++) {
+                if (globalDelta[r] != 0) bump(update, insert, new Object[]{r}, globalDelta[r]);
+            }
+        }
+    }
+
+    private static void bumpCounts(PreparedStatement update, PreparedStatement insert, Object key, long[] perRating)
+            throws SQLException {
+        for (int r = 1; r < perRating.length; r++) {
+            if (perRating[r] != 0) bump(update, insert, new Object[]{key, r}, perRating[r]);
+        }
+    }
+
+    // UPDATE ... SET col = col + delta WHERE key, or INSERT the row if there is none yet;
+    // update: deltas then keys, insert: keys then deltas
+    private static void bump(PreparedStatement update, PreparedStatement insert, Object[] keys, long... deltas)
+            throws SQLException {
+        int i = 1;
+        for (long d : deltas) update.setLong(i++, d);
+        for (Object k : keys) update.setObject(i++, k);
+        if (update.executeUpdate() > 0) return;
+
+        i = 1;
+        for (Object k : keys) insert.setObject(i++, k);
+        for (long d : deltas) insert.setLong(i++, d);
+        try {
+            insert.executeUpdate();
+        } catch (SQLIntegrityConstraintViolationException e) {
+            update.executeUpdate();   // another writer inserted it first
+        }
+    }
+
+    // -------------------------
+    // Reads
+    // -------------------------
+
+    /** Ties on the average go to the lower movie id; averages are rounded like MySQL's AVG over an INT column. */
+    @Override
+    public List<MovieAnalysis.MovieStat> topMovies(int limit, int minVotes) {
+        List<MovieAnalysis.MovieStat> list = new ArrayList<>();
+        String sql = """
+            SELECT m.title, s.rating_sum, s.rating_count
+            FROM movie_stats s
+            JOIN movies m ON m.movie_id = s.movie_id
+            WHERE s.rating_count > 0 AND s.rating_count >= ?
+            ORDER BY CAST(s.rating_sum AS DECIMAL(20, 4)) / s.rating_count DESC, s.movie_id
+            LIMIT ?
+            """;
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = QueryCancellation.track(conn.prepareStatement(sql))) {
+            ps.setInt(1, minVotes);
+            ps.setInt(2, Math.max(limit, 0));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    long count = rs.getLong("rating_count");
+                    double avg = BigDecimal.valueOf(rs.getLong("rating_sum"))
+                            .divide(BigDecimal.valueOf(count), 4, RoundingMode.HALF_UP).doubleValue();
+                    list.add(new MovieAnalysis.MovieStat(rs.getString("title"), avg, (int) count));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return list;
+    }
+
+    @Override
+    public Map<String, RatingCounts> genreRatingCounts() {
+        Map<String, RatingCounts> result = new TreeMap<>(SQL_ORDER);
+        String sql = "SELECT genre, rating, cnt FROM genre_rating_counts WHERE cnt > 0";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = QueryCancellation.track(conn.prepareStatement(sql));
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                String genre = rs.getString("genre");
+                result.computeIfAbsent(genre.isEmpty() ? null : genre, k -> new RatingCounts())
+                        .add(rs.getInt("rating"), rs.getLong("cnt"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, RatingCounts> ageGroupRatingCounts() {
+        Map<String, RatingCounts> result = new TreeMap<>();
+        String sql = "SELECT age, rating, cnt FROM age_rating_counts WHERE cnt > 0";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = QueryCancellation.track(conn.prepareStatement(sql));
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                int age = rs.getInt("age");
+                result.computeIfAbsent(RatingsSnapshot.ageGroup(age == NO_AGE ? null : age), k -> new RatingCounts())
+                        .add(rs.getInt("rating"), rs.getLong("cnt"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    @Override
+    public Map<Integer, Integer> ratingHistogram() {
+        Map<Integer, Integer> map = new TreeMap<>();
+        String sql = "SELECT rating, cnt FROM rating_counts WHERE cnt > 0";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = QueryCancellation.track(conn.prepareStatement(sql));
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                map.put(rs.getInt("rating"), rs.getInt("cnt"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return map;
+    }
+}
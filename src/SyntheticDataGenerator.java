@@ -0,0 +1,243 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * SyntheticDataGenerator - writes realistic movies/users/ratings CSV files for capacity planning.
+ * - movie popularity is Zipfian: the k-th most popular movie gets ratings in proportion to 1/k^s
+ * - user activity is skewed the same way, so a few heavy raters sit next to a long tail
+ * - genres and release years follow fixed weighted distributions, ages a clipped normal
+ * - each movie has a hidden quality and each user a bias, so ratings correlate sensibly
+ * - a user never rates the same movie twice
+ * - the same seed and sizes always produce byte-identical files
+ *
+ * The files have BulkImporter headers; --load imports them right away.
+ *
+ * Usage: SyntheticDataGenerator DIR [--movies N] [--users N] [--ratings N] [--seed S]
+ *        [--movie-skew S] [--user-skew S] [--load]
+ */
+public class SyntheticDataGenerator {
+
+    public record Config(int movies, int users, long ratings, long seed, double movieSkew, double userSkew) {
+
+        public static Config defaults() {
+            return new Config(10_000, 50_000, 1_000_000, 42, 1.0, 0.6);
+        }
+    }
+
+    private static final String[] GENRES = {"Drama", "Comedy", "Action", "Thriller", "Romance", "Horror",
+            "Sci-Fi", "Documentary", "Animation", "Adventure"};
+    private static final double[] GENRE_WEIGHTS = {25, 20, 12, 10, 8, 7, 6, 5, 4, 3};
+
+    private static final String[] ADJECTIVES = {"Dark", "Last", "Silent", "Golden", "Lost", "Hidden", "Broken",
+            "Endless", "Wild", "Secret", "Crimson", "Frozen", "Burning", "Quiet", "Little", "Final"};
+    private static final String[] NOUNS = {"Night", "River", "Empire", "Garden", "Storm", "Kingdom", "Road",
+            "Dream", "Island", "Machine", "Heart", "Shadow", "City", "Summer", "Promise", "Horizon"};
+    private static final String[] FIRST_NAMES = {"James", "Mary", "Ahmed", "Sofia", "Wei", "Olga", "Carlos",
+            "Aisha", "Kenji", "Emma", "Liam", "Fatima", "Noah", "Priya", "Lucas", "Hana"};
+    private static final String[] LAST_NAMES = {"Smith", "Garcia", "Khan", "Chen", "Ivanova", "Silva", "Okafor",
+            "Tanaka", "Müller", "Rossi", "Kim", "Haddad", "Novak", "Patel", "Dubois", "Larsen"};
+
+    private final Config config;
+
+    public SyntheticDataGenerator(Config config) {
+        if (config.movies() < 1 || config.users() < 1) throw new IllegalArgumentException("need at least one movie and user");
+        if (config.ratings() > (long) config.movies() * config.users()) {
+            throw new IllegalArgumentException("more ratings than user/movie pairs");
+        }
+        this.config = config;
+    }
+
+    /** Write movies.csv, users.csv and ratings.csv into {@code dir}. */
+    public void writeTo(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Random random = new Random(config.seed());
+
+        double[] quality = writeMovies(dir.resolve("movies.csv"), random);
+        double[] bias = writeUsers(dir.resolve("users.csv"), random);
+        writeRatings(dir.resolve("ratings.csv"), random, quality, bias);
+    }
+
+    // -------------------------
+    // Tables
+    // -------------------------
+
+    private double[] writeMovies(Path file, Random random) throws IOException {
+        double[] genreCdf = cdf(GENRE_WEIGHTS);
+        double[] quality = new double[config.movies()];
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("movie_id,title,genre,year\n");
+            for (int i = 0; i < config.movies(); i++) {
+                quality[i] = clamp(6.5 + random.nextGaussian() * 1.2, 1, 10);
+                String title = "The " + ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " "
+                        + NOUNS[random.nextInt(NOUNS.length)] + " " + (i + 1);
+                // release years thin out exponentially into the past
+                int year = (int) Math.max(1920, 2025 - Math.floor(-Math.log(1 - random.nextDouble()) * 15));
+                out.write("m" + (i + 1) + "," + title + "," + GENRES[sample(genreCdf, random)] + "," + year + "\n");
+            }
+        }
+        return quality;
+    }
+
+    private double[] writeUsers(Path file, Random random) throws IOException {
+        double[] bias = new double[config.users()];
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("user_id,first_name,last_name,age\n");
+            for (int i = 0; i < config.users(); i++) {
+                bias[i] = random.nextGaussian() * 0.8;
+                int age = (int) Math.round(clamp(34 + random.nextGaussian() * 13, 13, 85));
+                out.write("u" + (i + 1) + "," + FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + ","
+                        + LAST_NAMES[random.nextInt(LAST_NAMES.length)] + "," + age + "\n");
+            }
+        }
+        return bias;
+    }
+
+    private void writeRatings(Path file, Random random, double[] quality, double[] bias) throws IOException {
+        // popularity rank -> movie, so the popular movies aren't simply the lowest ids
+        int[] movieByRank = permutation(config.movies(), random);
+        double[] movieCdf = zipfCdf(config.movies(), config.movieSkew());
+        long[] perUser = userActivity(random);
+
+        long ratingId = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("rating_id,user_id,movie_id,rating\n");
+            Set<Integer> rated = new HashSet<>();
+            for (int u = 0; u < config.users(); u++) {
+                rated.clear();
+                long n = perUser[u];
+                // heavy users reach deep into the tail; once Zipf draws mostly hit movies
+                // they already rated, fill the rest uniformly
+                long attempts = 0;
+                while (rated.size() < n) {
+                    boolean uniform = ++attempts > 4 * n;
+                    int movie = uniform ? random.nextInt(config.movies()) : movieByRank[sample(movieCdf, random)];
+                    if (!rated.add(movie)) continue;
+                    int rating = (int) Math.round(clamp(quality[movie] + bias[u] + random.nextGaussian() * 1.5, 1, 10));
+                    out.write("r" + (++ratingId) + ",u" + (u + 1) + ",m" + (movie + 1) + "," + rating + "\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Ratings per user: Zipf weights over a random ranking of users, scaled to the total,
+     * capped at one rating per movie, with the capped overflow spread over the others.
+     */
+    private long[] userActivity(Random random) {
+        int users = config.users();
+        int[] userByRank = permutation(users, random);
+        double[] weights = new double[users];
+        for (int r = 0; r < users; r++) weights[userByRank[r]] = 1 / Math.pow(r + 1, config.userSkew());
+
+        long[] counts = new long[users];
+        long remaining = config.ratings();
+        boolean[] full = new boolean[users];
+        while (remaining > 0) {
+            double total = 0;
+            for (int u = 0; u < users; u++) if (!full[u]) total += weights[u];
+            long assigned = 0;
+            for (int u = 0; u < users && assigned < remaining; u++) {
+                if (full[u]) continue;
+                long share = Math.max(1, (long) Math.floor(remaining * weights[u] / total));
+                share = Math.min(share, Math.min(config.movies() - counts[u], remaining - assigned));
+                counts[u] += share;
+                assigned += share;
+                if (counts[u] == config.movies()) full[u] = true;
+            }
+            remaining -= assigned;
+        }
+        return counts;
+    }
+
+    // -------------------------
+    // Distributions
+    // -------------------------
+
+    private static double[] zipfCdf(int n, double skew) {
+        double[] weights = new double[n];
+        for (int k = 0; k < n; k++) weights[k] = 1 / Math.pow(k + 1, skew);
+        return cdf(weights);
+    }
+
+    private static double[] cdf(double[] weights) {
+        double[] cdf = new double[weights.length];
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < cdf.length; i++) cdf[i] /= sum;
+        return cdf;
+    }
+
+    // index of the first cdf entry above a uniform draw
+    private static int sample(double[] cdf, Random random) {
+        int i = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(i >= 0 ? i + 1 : -i - 1, cdf.length - 1);
+    }
+
+    private static int[] permutation(int n, Random random) {
+        int[] p = new int[n];
+        for (int i = 0; i < n; i++) p[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = p[i];
+            p[i] = p[j];
+            p[j] = t;
+        }
+        return p;
+    }
+
+    private static double clamp(double v, double lo, double hi) {
+        return Math.max(lo, Math.min(hi, v));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: SyntheticDataGenerator DIR [--movies N] [--users N] [--ratings N] [--seed S]"
+                    + " [--movie-skew S] [--user-skew S] [--load]");
+            return;
+        }
+        Path dir = Paths.get(args[0]);
+
+        Config d = Config.defaults();
+        int movies = d.movies(), users = d.users();
+        long ratings = d.ratings(), seed = d.seed();
+        double movieSkew = d.movieSkew(), userSkew = d.userSkew();
+        boolean load = false;
+
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--movies" -> movies = Integer.parseInt(args[++i]);
+                case "--users" -> users = Integer.parseInt(args[++i]);
+                case "--ratings" -> ratings = Long.parseLong(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--movie-skew" -> movieSkew = Double.parseDouble(args[++i]);
+                case "--user-skew" -> userSkew = Double.parseDouble(args[++i]);
+                case "--load" -> load = true;
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        long start = System.nanoTime();
+        new SyntheticDataGenerator(new Config(movies, users, ratings, seed, movieSkew, userSkew)).writeTo(dir);
+        System.out.printf("Wrote %d movies, %d users, %d ratings to %s in %.1fs%n",
+                movies, users, ratings, dir, (System.nanoTime() - start) / 1e9);
+
+        if (load) {
+            try {
+                for (BulkImporter.Table table : BulkImporter.Table.values()) {
+                    Path file = dir.resolve(table.table + ".csv");
+                    new BulkImporter(table, file, BulkImporter.Options.defaults()).run();
+                }
+            } finally {
+                DatabaseConnection.shutdown();
+            }
+        }
+    }
+}
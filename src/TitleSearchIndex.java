@@ -0,0 +1,420 @@
+import java.sql.*;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * TitleSearchIndex - in-memory inverted index over movie titles for search-as-you-type.
+ * - titles are folded (lower case, diacritics removed) and split into word tokens
+ * - every query word matches as a prefix of a title word, so "dark kni" finds "The Dark Knight"
+ * - prefixes of up to 3 characters have their own posting lists; longer prefixes are
+ *   answered from a sorted term dictionary
+ * - doc ids are assigned in descending vote order, so posting lists are already ranked by
+ *   votes and intersecting them yields the most-voted matches first
+ * - hits are ranked by relevance (exact title, title prefix, whole-word match, word prefix)
+ *   and then by votes. Exact titles and title prefixes come from a binary search over the
+ *   sorted folded titles, so all of them are ranked; only the word-match tail is capped
+ * - a second copy of the posting lists numbers the docs by average rating instead, so
+ *   pageByAverage can seek to a page's first doc and stop once the page is full
+ *
+ * The index is immutable; rebuild it to pick up changed movies or vote counts.
+ */
+public class TitleSearchIndex {
+
+    /** One movie as returned by a search; avgRating is null for movies without ratings. */
+    public record Hit(String movieId, String title, String genre, Double avgRating, int votes) {}
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final int SHORT_PREFIX = 3;
+    // word-match candidates scored per query; they arrive in vote order, so a cap keeps the
+    // best-voted ones
+    private static final int MAX_CANDIDATES = 1_000;
+
+    private final Hit[] docs;                 // doc id -> movie, most votes first
+    private final String[] foldedTitles;     // folded words joined by single spaces
+    private final int[] byTitle;              // doc ids sorted by folded title, then doc id
+    private final String[] terms;             // sorted distinct title words
+    private final Postings byVotes;           // doc ids
+    private final Hit[] ranked;               // rank -> movie, BY_AVERAGE order
+    private final Postings byAverage;         // ranks
+    private final long builtAt = System.currentTimeMillis();
+
+    private TitleSearchIndex(Hit[] docs, String[] foldedTitles, int[] byTitle, String[] terms,
+                             Postings byVotes, Hit[] ranked, Postings byAverage) {
+        this.docs = docs;
+        this.foldedTitles = foldedTitles;
+        this.byTitle = byTitle;
+        this.terms = terms;
+        this.byVotes = byVotes;
+        this.ranked = ranked;
+        this.byAverage = byAverage;
+    }
+
+    /** Best average rating first, unrated movies last, then movie_id. */
+    static final Comparator<Hit> BY_AVERAGE = Comparator
+            .comparing(Hit::avgRating, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(Hit::movieId);
+
+    /** Build the index through a pooled connection. */
+    public static TitleSearchIndex load() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            if (conn == null) throw new SQLException("No database connection");
+            return load(conn);
+        }
+    }
+
+    public static TitleSearchIndex load(Connection conn) throws SQLException {
+        String sql = """
+            SELECT m.movie_id, m.title, m.genre, AVG(r.rating) AS avg_rating, COUNT(r.rating) AS votes
+            FROM movies m
+            LEFT JOIN ratings r ON m.movie_id = r.movie_id
+            GROUP BY m.movie_id, m.title, m.genre
+            """;
+        List<Hit> movies = new ArrayList<>();
+        try (PreparedStatement ps = StreamingQuery.prepare(conn, sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                double avg = rs.getDouble("avg_rating");
+                Double avgRating = rs.wasNull() ? null : avg;
+                movies.add(new Hit(rs.getString("movie_id"), rs.getString("title"), rs.getString("genre"),
+                        avgRating, rs.getInt("votes")));
+            }
+        }
+        return build(movies);
+    }
+
+    public static TitleSearchIndex build(Collection<Hit> movies) {
+        Hit[] docs = movies.stream()
+                .filter(h -> h.title() != null)
+                .sorted(Comparator.comparingInt(Hit::votes).reversed().thenComparing(Hit::title))
+                .toArray(Hit[]::new);
+
+        String[] folded = new String[docs.length];
+        Map<String, IntList> termMap = new HashMap<>();
+        Map<String, IntList> prefixMap = new HashMap<>();
+        for (int d = 0; d < docs.length; d++) {
+            List<String> words = tokens(fold(docs[d].title()));
+            folded[d] = String.join(" ", words);
+            for (String token : words) {
+                termMap.computeIfAbsent(token, k -> new IntList()).addOnce(d);
+                for (int len = 1; len <= Math.min(SHORT_PREFIX, token.length()); len++) {
+                    prefixMap.computeIfAbsent(token.substring(0, len), k -> new IntList()).addOnce(d);
+                }
+            }
+        }
+
+        String[] terms = termMap.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[][] postings = new int[terms.length][];
+        for (int i = 0; i < terms.length; i++) postings[i] = termMap.get(terms[i]).toArray();
+
+        Map<String, int[]> prefixes = new HashMap<>(prefixMap.size() * 2);
+        prefixMap.forEach((k, v) -> prefixes.put(k, v.toArray()));
+
+        // renumber every posting list by average rating
+        Integer[] order = new Integer[docs.length];
+        for (int d = 0; d < docs.length; d++) order[d] = d;
+        Arrays.sort(order, (a, b) -> BY_AVERAGE.compare(docs[a], docs[b]));
+        Hit[] ranked = new Hit[docs.length];
+        int[] rank = new int[docs.length];
+        for (int r = 0; r < order.length; r++) {
+            ranked[r] = docs[order[r]];
+            rank[order[r]] = r;
+        }
+        int[][] rankedPostings = new int[terms.length][];
+        for (int i = 0; i < terms.length; i++) rankedPostings[i] = renumber(postings[i], rank);
+        Map<String, int[]> rankedPrefixes = new HashMap<>(prefixes.size() * 2);
+        prefixes.forEach((k, v) -> rankedPrefixes.put(k, renumber(v, rank)));
+
+        int[] byTitle = IntStream.range(0, docs.length).boxed()
+                .sorted(Comparator.<Integer, String>comparing(d -> folded[d]).thenComparingInt(d -> d))
+                .mapToInt(Integer::intValue).toArray();
+
+        return new TitleSearchIndex(docs, folded, byTitle, terms, new Postings(postings, prefixes),
+                ranked, new Postings(rankedPostings, rankedPrefixes));
+    }
+
+    private static int[] renumber(int[] postings, int[] rank) {
+        int[] out = new int[postings.length];
+        for (int i = 0; i < postings.length; i++) out[i] = rank[postings[i]];
+        Arrays.sort(out);
+        return out;
+    }
+
+    public long builtAt() {
+        return builtAt;
+    }
+
+    public int size() {
+        return docs.length;
+    }
+
+    /** Up to {@code limit} movies whose title words start with every word of {@code query}. */
+    public List<Hit> search(String query, int limit) {
+        String foldedQuery = String.join(" ", tokens(fold(query)));
+        List<String> words = tokens(foldedQuery);
+        if (words.isEmpty() || limit <= 0) return new ArrayList<>();
+
+        Cursor[] cursors = new Cursor[words.size()];
+        int[][] exact = new int[words.size()][];
+        for (int i = 0; i < words.size(); i++) {
+            cursors[i] = prefixCursor(byVotes, words.get(i));
+            exact[i] = termPostings(words.get(i));
+        }
+
+        // relevance buckets: 3 exact title, 2 title prefix, 1 all words whole, 0 word prefixes
+        List<List<Hit>> buckets = new ArrayList<>();
+        for (int b = 0; b < 4; b++) buckets.add(new ArrayList<>());
+
+        // exact titles sort first among the titles starting with the query
+        int lo = titleBound(foldedQuery);
+        int hi = titleBound(foldedQuery + Character.MAX_VALUE);
+        int exactEnd = lo;
+        while (exactEnd < hi && foldedTitles[byTitle[exactEnd]].equals(foldedQuery)) exactEnd++;
+        for (int i = lo; i < exactEnd && buckets.get(3).size() < limit; i++) buckets.get(3).add(docs[byTitle[i]]);
+        for (int doc : mostVoted(byTitle, exactEnd, hi, limit - buckets.get(3).size())) {
+            buckets.get(2).add(docs[doc]);
+        }
+        int ranked = buckets.get(3).size() + buckets.get(2).size();
+
+        // leapfrog intersection for the word matches: docs come out in ascending id, i.e. most
+        // votes first; title prefixes among them are already in their buckets
+        int considered = 0;
+        int d = 0;
+        while (considered < MAX_CANDIDATES && ranked + buckets.get(1).size() < limit) {
+            boolean aligned = true;
+            for (Cursor c : cursors) {
+                c.advance(d);
+                if (c.doc() == Cursor.END) return collect(buckets, limit);
+                if (c.doc() > d) {
+                    d = c.doc();
+                    aligned = false;
+                    break;
+                }
+            }
+            if (!aligned) continue;
+
+            int relevance = relevance(d, foldedQuery, exact);
+            if (relevance < 2) {
+                List<Hit> bucket = buckets.get(relevance);
+                if (bucket.size() < limit) bucket.add(docs[d]);
+                considered++;
+            }
+            d++;
+        }
+        return collect(buckets, limit);
+    }
+
+    /**
+     * Up to {@code limit} movies whose title words start with every word of {@code query}, in
+     * BY_AVERAGE order, starting after {@code after} (null for the first page). Seeks to the
+     * first rank past {@code after}, so a page costs its own hits, not every match.
+     */
+    public List<Hit> pageByAverage(String query, Hit after, int limit) {
+        List<String> words = tokens(fold(query));
+        List<Hit> hits = new ArrayList<>();
+        if (words.isEmpty() || limit <= 0) return hits;
+
+        Cursor[] cursors = new Cursor[words.size()];
+        for (int i = 0; i < words.size(); i++) cursors[i] = prefixCursor(byAverage, words.get(i));
+        int r = 0;
+        if (after != null) {
+            int i = Arrays.binarySearch(ranked, after, BY_AVERAGE);
+            r = i >= 0 ? i + 1 : -i - 1;
+        }
+        while (hits.size() < limit) {
+            boolean aligned = true;
+            for (Cursor c : cursors) {
+                c.advance(r);
+                if (c.doc() == Cursor.END) return hits;
+                if (c.doc() > r) {
+                    r = c.doc();
+                    aligned = false;
+                    break;
+                }
+            }
+            if (aligned) hits.add(ranked[r++]);
+        }
+        return hits;
+    }
+
+    private static List<Hit> collect(List<List<Hit>> buckets, int limit) {
+        List<Hit> hits = new ArrayList<>(limit);
+        for (int b = 3; b >= 0 && hits.size() < limit; b--) {
+            List<Hit> bucket = buckets.get(b);
+            hits.addAll(bucket.subList(0, Math.min(bucket.size(), limit - hits.size())));
+        }
+        return hits;
+    }
+
+    private int relevance(int doc, String foldedQuery, int[][] exact) {
+        String title = foldedTitles[doc];
+        if (title.equals(foldedQuery)) return 3;
+        if (title.startsWith(foldedQuery)) return 2;
+        for (int[] p : exact) {
+            if (Arrays.binarySearch(p, doc) < 0) return 0;
+        }
+        return 1;
+    }
+
+    // docs with a word starting with prefix
+    private Cursor prefixCursor(Postings postings, String prefix) {
+        if (prefix.length() <= SHORT_PREFIX) {
+            return new ArrayCursor(postings.shortPrefixes().getOrDefault(prefix, new int[0]));
+        }
+        int lo = lowerBound(prefix);
+        int hi = lowerBound(prefix + Character.MAX_VALUE);
+        if (hi - lo == 1) return new ArrayCursor(postings.terms()[lo]);
+        return new UnionCursor(Arrays.copyOfRange(postings.terms(), lo, hi));
+    }
+
+    // docs with exactly this word
+    private int[] termPostings(String term) {
+        int i = Arrays.binarySearch(terms, term);
+        return i >= 0 ? byVotes.terms()[i] : new int[0];
+    }
+
+    // the k smallest doc ids in ids[from, to), ascending
+    private static int[] mostVoted(int[] ids, int from, int to, int k) {
+        if (k <= 0) return new int[0];
+        PriorityQueue<Integer> heap = new PriorityQueue<>(k, Comparator.reverseOrder());
+        for (int i = from; i < to; i++) {
+            if (heap.size() < k) heap.add(ids[i]);
+            else if (ids[i] < heap.peek()) {
+                heap.poll();
+                heap.add(ids[i]);
+            }
+        }
+        return heap.stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    private int titleBound(String key) {
+        int lo = 0;
+        int hi = byTitle.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (foldedTitles[byTitle[mid]].compareTo(key) < 0) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private int lowerBound(String key) {
+        int i = Arrays.binarySearch(terms, key);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    // -------------------------
+    // Text folding
+    // -------------------------
+
+    /** Lower-case and strip diacritics: "Amélie" -> "amelie". */
+    static String fold(String s) {
+        String decomposed = Normalizer.normalize(s, Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    static List<String> tokens(String folded) {
+        List<String> out = new ArrayList<>();
+        for (String t : NON_WORD.split(folded)) {
+            if (!t.isEmpty()) out.add(t);
+        }
+        return out;
+    }
+
+    // -------------------------
+    // Posting list cursors
+    // -------------------------
+
+    /** Posting lists in one numbering of the docs: per term (parallel to terms), per short prefix. */
+    private record Postings(int[][] terms, Map<String, int[]> shortPrefixes) {}
+
+    /** Ascending stream of doc ids that can skip forward. */
+    private interface Cursor {
+        int END = Integer.MAX_VALUE;
+
+        /** Current doc id, END when exhausted. */
+        int doc();
+
+        /** Move to the first doc id >= target. */
+        void advance(int target);
+    }
+
+    private static final class ArrayCursor implements Cursor {
+        private final int[] list;
+        private int pos;
+
+        ArrayCursor(int[] list) {
+            this.list = list;
+        }
+
+        @Override
+        public int doc() {
+            return pos < list.length ? list[pos] : END;
+        }
+
+        // exponential then binary search from the current position
+        @Override
+        public void advance(int target) {
+            if (pos >= list.length || list[pos] >= target) return;
+            int step = 1;
+            int lo = pos;
+            int hi = pos + 1;
+            while (hi < list.length && list[hi] < target) {
+                lo = hi;
+                hi += step;
+                step <<= 1;
+            }
+            int i = Arrays.binarySearch(list, lo + 1, Math.min(hi + 1, list.length), target);
+            pos = i >= 0 ? i : -i - 1;
+        }
+    }
+
+    /** Merged view of the posting lists of every word sharing a long prefix. */
+    private static final class UnionCursor implements Cursor {
+        private final PriorityQueue<ArrayCursor> heap;
+
+        UnionCursor(int[][] lists) {
+            heap = new PriorityQueue<>(Math.max(1, lists.length), Comparator.comparingInt(ArrayCursor::doc));
+            for (int[] list : lists) {
+                if (list.length > 0) heap.add(new ArrayCursor(list));
+            }
+        }
+
+        @Override
+        public int doc() {
+            ArrayCursor top = heap.peek();
+            return top == null ? END : top.doc();
+        }
+
+        @Override
+        public void advance(int target) {
+            while (!heap.isEmpty() && heap.peek().doc() < target) {
+                ArrayCursor c = heap.poll();
+                c.advance(target);
+                if (c.doc() != END) heap.add(c);
+            }
+        }
+    }
+
+    /** Growable int array for posting lists built in ascending doc order. */
+    private static final class IntList {
+        private int[] data = new int[4];
+        private int size;
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        // docs are added in ascending order, so a repeat can only be the last element
+        void addOnce(int v) {
+            if (size == 0 || data[size - 1] != v) add(v);
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}